@@ -18,7 +18,12 @@
 package it.feio.android.omninotes.async.upgrade
 
 
+import android.database.DatabaseUtils
+import android.database.sqlite.SQLiteDatabase
+import com.pixplicity.easyprefs.library.Prefs
 import it.feio.android.omninotes.testutils.BaseAndroidTestCase
+import it.feio.android.omninotes.utils.ConstantsBase.PREF_MIGRATED_VERSION
+import it.feio.android.omninotes.utils.ConstantsBase.PREF_MIGRATION_MARKER
 import it.feio.android.omninotes.utils.FileProviderHelper.getShareableUri
 import it.feio.android.omninotes.utils.StorageHelper.createAttachmentFromUri
 import org.junit.Assert.*
@@ -39,9 +44,62 @@ class UpgradeProcessorTest : BaseAndroidTestCase() {
 
         assertFalse(from(dbHelper.allAttachments).all { a -> a.uri.scheme != "content" }.toBlocking().single())
 
-        UpgradeProcessor.process(624, 625)
+        UpgradeProcessor.schedule(624)
+        UpgradeProcessor.runPendingMigrations()
 
         assertTrue(from(dbHelper.allAttachments).all { a -> a.uri.scheme != "content" }.toBlocking().single())
+        assertFalse(Prefs.contains(PREF_MIGRATED_VERSION))
+    }
+
+    @Test
+    fun interruptedMigrationIsResumedFromMarker() {
+        val note = createTestNote("t", "c", 2)
+        for (i in 0..1) {
+            val attachment = createAttachmentFromUri(testContext, note.attachmentsList[i].uri)
+            attachment?.uri = getShareableUri(attachment)
+            note.attachmentsList[i] = attachment
+        }
+        dbHelper.updateNote(note, false)
+        val attachments = dbHelper.allAttachments.sortedBy { a -> a.id }
+
+        // Process died after migrating first attachment
+        Prefs.edit().putInt(PREF_MIGRATED_VERSION, 624)
+            .putLong(PREF_MIGRATION_MARKER, attachments[0].id).commit()
+        UpgradeProcessor.runPendingMigrations()
+
+        val migrated = dbHelper.allAttachments.sortedBy { a -> a.id }
+        assertEquals("content", migrated[0].uri.scheme)
+        assertEquals("file", migrated[1].uri.scheme)
+    }
+
+    @Test
+    fun contentDerivedDataIsFilledInBackground() {
+        val note = createTestNote("#migrated", "some words", 0)
+        dbHelper.getDatabase(true).execSQL("DELETE FROM note_tags")
+        dbHelper.getDatabase(true).execSQL("DELETE FROM tags")
+        dbHelper.getDatabase(true).execSQL("UPDATE notes SET words = 0, chars = 0")
+
+        UpgradeProcessor.schedule(628)
+        UpgradeProcessor.runPendingMigrations()
+
+        assertEquals(1, dbHelper.tags.size)
+        assertTrue(DatabaseUtils.longForQuery(dbHelper.database,
+            "SELECT words FROM notes WHERE creation = " + note._id, null) > 0)
+    }
+
+    @Test
+    fun ensureUniqueCreations() {
+        val db = SQLiteDatabase.create(null)
+        db.execSQL("CREATE TABLE notes (note_id INTEGER PRIMARY KEY, creation INTEGER)")
+        db.execSQL("INSERT INTO notes (creation) VALUES (100), (100), (101), (100), (200)")
+
+        UpgradeProcessor.ensureUniqueCreations(db)
+
+        db.rawQuery("SELECT COUNT(DISTINCT creation) FROM notes", null).use { cursor ->
+            cursor.moveToFirst()
+            assertEquals(5, cursor.getInt(0))
+        }
+        db.close()
     }
 
 }
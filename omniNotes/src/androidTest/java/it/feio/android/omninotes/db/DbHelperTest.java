@@ -17,11 +17,42 @@
 
 package it.feio.android.omninotes.db;
 
+import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_IMAGE;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_KEY_VERSION;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_PREVIOUS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.pixplicity.easyprefs.library.Prefs;
+import it.feio.android.omninotes.helpers.NotesHelper;
 import it.feio.android.omninotes.testutils.BaseAndroidTestCase;
+import it.feio.android.omninotes.models.Attachment;
+import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.NoteSummary;
+import it.feio.android.omninotes.models.Stats;
+import it.feio.android.omninotes.utils.Navigation;
+import it.feio.android.omninotes.utils.Security;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Future;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -47,6 +78,57 @@ public class DbHelperTest extends BaseAndroidTestCase {
     assertEquals(1, dbHelper.getNotesByTag("#tagged").size());
   }
 
+  @Test
+  public void tagsIndexIsUpdatedOnSaveTrashAndDelete() {
+    Note note1 = new Note();
+    note1.setTitle("first #shared");
+    note1.setContent("content with #first");
+    dbHelper.updateNote(note1, true);
+    Note note2 = new Note();
+    note2.setTitle("second");
+    note2.setContent("#shared and #second");
+    dbHelper.updateNote(note2, true);
+
+    assertEquals(3, dbHelper.getTags().size());
+    assertEquals(2, (int) dbHelper.getTags().get(2).getCount());
+    assertEquals(2, dbHelper.getNotesByTag("#shared").size());
+    assertEquals(1, dbHelper.getNotesByTag("#shared,#second").size());
+
+    dbHelper.trashNote(note2, true);
+    assertEquals(2, dbHelper.getTags().size());
+    assertEquals(1, dbHelper.getNotesByTag("#shared").size());
+
+    dbHelper.trashNote(note2, false);
+    note1.setContent("content without tags");
+    dbHelper.updateNote(note1, true);
+    assertEquals(2, dbHelper.getTags().size());
+
+    dbHelper.deleteNote(note2);
+    assertEquals(1, dbHelper.getTags().size());
+    assertEquals(0, dbHelper.getNotesByTag("#second").size());
+  }
+
+  @Test
+  public void todayRemindersAreWithinCurrentUtcDay() {
+    Calendar utcNoon = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    utcNoon.set(Calendar.HOUR_OF_DAY, 12);
+    utcNoon.set(Calendar.MINUTE, 0);
+    Note today = new Note();
+    today.setTitle("today");
+    today.setAlarm(utcNoon.getTimeInMillis());
+    dbHelper.updateNote(today, false);
+    utcNoon.add(Calendar.DAY_OF_MONTH, 1);
+    Note tomorrow = new Note();
+    tomorrow.setTitle("tomorrow");
+    tomorrow.setAlarm(utcNoon.getTimeInMillis());
+    dbHelper.updateNote(tomorrow, false);
+
+    List<Note> reminders = dbHelper.getTodayReminders();
+
+    assertEquals(1, reminders.size());
+    assertEquals("today", reminders.get(0).getTitle());
+  }
+
   @Test
   public void getNotesByPatternEscaped() {
     Note note1 = new Note();
@@ -65,4 +147,552 @@ public class DbHelperTest extends BaseAndroidTestCase {
     assertEquals(1, dbHelper.getNotesByPattern("%").size());
   }
 
+  @Test
+  public void getNotesByPatternUsesFullTextIndex() {
+    Note note1 = new Note();
+    note1.setTitle("groceries");
+    note1.setContent("buy apples and bananas");
+    dbHelper.updateNote(note1, true);
+    Note note2 = new Note();
+    note2.setTitle("secret apples");
+    note2.setContent("bananas recipe");
+    note2.setLocked(true);
+    dbHelper.updateNote(note2, true);
+    assertEquals(2, dbHelper.getNotesByPattern("appl").size());
+    assertEquals(1, dbHelper.getNotesByPattern("banan").size());
+    assertEquals(1, dbHelper.getNotesByPattern("apples bananas").size());
+
+    note1.setContent("buy pears");
+    dbHelper.updateNote(note1, true);
+    assertEquals(0, dbHelper.getNotesByPattern("banan").size());
+
+    dbHelper.deleteNote(note1);
+    assertEquals(1, dbHelper.getNotesByPattern("appl").size());
+  }
+
+  @Test
+  public void getNotesLoadsAttachmentsOfEachNote() {
+    for (int i = 0; i < 3; i++) {
+      Note note = new Note();
+      note.setCreation(1000L + i);
+      note.setTitle("note " + i);
+      for (int j = 0; j < i; j++) {
+        note.addAttachment(createTestAttachment("attachment" + i + j));
+      }
+      dbHelper.updateNote(note, true);
+    }
+    for (int i = 0; i < 3; i++) {
+      assertEquals(i, dbHelper.getNote(1000L + i).getAttachmentsList().size());
+    }
+    int attachments = 0;
+    for (Note note : dbHelper.getAllNotes(false)) {
+      attachments += note.getAttachmentsList().size();
+    }
+    assertEquals(3, attachments);
+  }
+
+  @Test
+  public void deletedCategoryNotesAreUncategorized() {
+    Category category = new Category();
+    category.setId(1L);
+    category.setName("category");
+    dbHelper.updateCategory(category);
+    Note note = new Note();
+    note.setTitle("categorized");
+    note.setCategory(category);
+    dbHelper.updateNote(note, true);
+    assertEquals(0, dbHelper.getNotesUncategorized().size());
+
+    dbHelper.deleteCategory(category);
+    assertEquals(1, dbHelper.getNotesUncategorized().size());
+    assertEquals(1, dbHelper.getNotesActive().size());
+  }
+
+  @Test
+  public void navigationCountersFollowNotesChanges() {
+    Category category = new Category();
+    category.setId(1L);
+    category.setName("category");
+    dbHelper.updateCategory(category);
+    Note note = new Note();
+    note.setTitle("counted");
+    note.setCategory(category);
+    dbHelper.updateNote(note, true);
+    Note uncategorized = new Note();
+    uncategorized.setTitle("uncategorized");
+    uncategorized.setArchived(true);
+    dbHelper.updateNote(uncategorized, true);
+
+    assertEquals(1, (int) dbHelper.getCategories().get(0).getCount());
+    assertEquals(1, dbHelper.getCounters().get(DbHelper.COUNTER_ARCHIVED).intValue());
+    assertEquals(1, dbHelper.getCounters().get(DbHelper.COUNTER_UNCATEGORIZED).intValue());
+
+    dbHelper.trashNote(note, true);
+    category.setName("renamed");
+    dbHelper.updateCategory(category);
+    assertEquals(0, (int) dbHelper.getCategories().get(0).getCount());
+    assertEquals(1, dbHelper.getCounters().get(DbHelper.COUNTER_TRASHED).intValue());
+
+    dbHelper.trashNote(note, false);
+    dbHelper.deleteNote(uncategorized);
+    assertEquals(1, (int) dbHelper.getCategories().get(0).getCount());
+    assertEquals(0, dbHelper.getCounters().get(DbHelper.COUNTER_ARCHIVED).intValue());
+    assertEquals(0, dbHelper.getCounters().get(DbHelper.COUNTER_UNCATEGORIZED).intValue());
+    assertEquals(0, dbHelper.getCounters().get(DbHelper.COUNTER_TRASHED).intValue());
+  }
+
+  @Test
+  public void bulkOperationsUpdateAllGivenNotes() {
+    Category category = new Category();
+    category.setId(1L);
+    category.setName("category");
+    dbHelper.updateCategory(category);
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 600; i++) {
+      Note note = new Note();
+      note.setCreation(6000L + i);
+      note.setTitle("bulk #note " + i);
+      dbHelper.updateNote(note, true);
+      ids.add(note.get_id());
+    }
+
+    dbHelper.categorizeNotes(ids, category);
+    assertEquals(600, dbHelper.getCategorizedCount(category));
+    dbHelper.archiveNotes(ids.subList(0, 100), true);
+    assertEquals(100, dbHelper.getNotesArchived().size());
+    dbHelper.trashNotes(ids, true);
+    assertEquals(600, dbHelper.getNotesTrashed().size());
+    assertEquals(0, dbHelper.getTags().size());
+    dbHelper.deleteNotes(ids.subList(0, 550), false);
+    assertEquals(50, dbHelper.getNotesTrashed().size());
+  }
+
+  @Test
+  public void emptyTrashReturnsDeletedAttachmentsUris() {
+    Note trashed = new Note();
+    trashed.setTitle("trashed");
+    trashed.setTrashed(true);
+    trashed.addAttachment(
+        new Attachment(7001L, Uri.parse("file:///trashed"), "trashed", 0, 0, MIME_TYPE_IMAGE));
+    dbHelper.updateNote(trashed, true);
+    Note kept = new Note();
+    kept.setTitle("kept");
+    kept.addAttachment(
+        new Attachment(7002L, Uri.parse("file:///kept"), "kept", 0, 0, MIME_TYPE_IMAGE));
+    dbHelper.updateNote(kept, true);
+
+    List<Uri> uris = dbHelper.emptyTrash();
+
+    assertEquals(1, uris.size());
+    assertEquals("file:///trashed", uris.get(0).toString());
+    assertEquals(0, dbHelper.getNotesTrashed().size());
+    assertEquals(1, dbHelper.getAllAttachments().size());
+  }
+
+  @Test
+  public void dataVersionIncreasesOnEveryChange() {
+    long version = dbHelper.getDataVersion();
+    Note note = new Note();
+    note.setTitle("versioned");
+    dbHelper.updateNote(note, true);
+    assertTrue(dbHelper.getDataVersion() > version);
+
+    version = dbHelper.getDataVersion();
+    dbHelper.trashNote(note, true);
+    assertTrue(dbHelper.getDataVersion() > version);
+
+    version = dbHelper.getDataVersion();
+    dbHelper.emptyTrash();
+    assertTrue(dbHelper.getDataVersion() > version);
+  }
+
+  @Test
+  public void updateNotesWritesBatchWithAttachments() {
+    List<Note> notes = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Note note = new Note();
+      note.setTitle("batch note " + i);
+      note.addAttachment(new Attachment(2000L + i, Uri.parse("file:///batch" + i), "batch" + i, 0,
+          0, "text/plain"));
+      notes.add(note);
+    }
+    dbHelper.updateNotes(notes, true);
+
+    assertEquals(5, dbHelper.getAllNotes(false).size());
+    for (Note note : notes) {
+      assertEquals(1, dbHelper.getNote(note.get_id()).getAttachmentsList().size());
+    }
+  }
+
+  @Test
+  public void getAllNotesPageFollowsSortingOrder() {
+    for (int i = 0; i < 7; i++) {
+      Note note = new Note();
+      note.setCreation(3000L + i);
+      note.setTitle(i % 2 == 0 ? "same title" : "title " + i);
+      dbHelper.updateNote(note, true);
+    }
+
+    List<Note> pagedNotes = new ArrayList<>();
+    List<Note> page = dbHelper.getAllNotesPage(null, 3);
+    while (!page.isEmpty()) {
+      pagedNotes.addAll(page);
+      page = dbHelper.getAllNotesPage(page.get(page.size() - 1), 3);
+    }
+
+    List<Note> allNotes = dbHelper.getAllNotes(true);
+    assertEquals(7, pagedNotes.size());
+    for (int i = 0; i < allNotes.size(); i++) {
+      assertEquals(allNotes.get(i).get_id(), pagedNotes.get(i).get_id());
+    }
+  }
+
+  @Test
+  public void notesAreSortedByBoundedTitleKey() {
+    String[] titles = {"gamma", "Beta", ""};
+    for (int i = 0; i < titles.length; i++) {
+      Note note = new Note();
+      note.setCreation(4000L + i);
+      note.setTitle(titles[i]);
+      note.setContent(i == 2 ? "alpha " + StringUtils.repeat("x", 500) : "content");
+      dbHelper.updateNote(note, true);
+    }
+    Note untitled = dbHelper.getNote(4002L);
+    Note titled = dbHelper.getNote(4001L);
+
+    List<Note> notes = dbHelper.getNotes(new NoteQuery().sortBy(DbHelper.KEY_TITLE));
+
+    assertEquals(untitled.get_id(), notes.get(0).get_id());
+    assertEquals(titled.get_id(), notes.get(1).get_id());
+    assertEquals(NotesWriter.TITLE_SORT_KEY_LENGTH, DatabaseUtils.longForQuery(
+        dbHelper.getDatabase(), "SELECT length(title_sort_key) FROM notes WHERE creation = "
+            + untitled.get_id(), null));
+  }
+
+  @Test
+  public void getStatsAggregatesStoredCounters() {
+    Note note1 = new Note();
+    note1.setTitle("first");
+    note1.setContent("two #words");
+    note1.addAttachment(
+        new Attachment(5001L, Uri.parse("file:///image"), "image", 0, 0, MIME_TYPE_IMAGE));
+    dbHelper.updateNote(note1, true);
+    Note note2 = new Note();
+    note2.setTitle("second");
+    note2.setContent("three more words");
+    note2.setArchived(true);
+    dbHelper.updateNote(note2, true);
+
+    Stats stats = dbHelper.getStats();
+    assertEquals(1, stats.getNotesActive());
+    assertEquals(1, stats.getNotesArchived());
+    assertEquals(1, stats.getTags());
+    assertEquals(1, stats.getImages());
+    assertEquals(1, stats.getAttachments());
+    assertEquals(NotesHelper.getWords(note1) + NotesHelper.getWords(note2), stats.getWords());
+    assertEquals(NotesHelper.getWords(note2), stats.getWordsMax());
+  }
+
+  @Test
+  public void noteSummariesKeepStoredContentWhenSaved() {
+    Note note = new Note();
+    note.setCreation(4000L);
+    note.setTitle("long note");
+    note.setContent(StringUtils.repeat("content ", 1000));
+    note.addAttachment(
+        new Attachment(4001L, Uri.parse("file:///first"), "first", 0, 0, "image/jpeg"));
+    note.addAttachment(
+        new Attachment(4002L, Uri.parse("file:///second"), "second", 0, 0, "audio/amr"));
+    dbHelper.updateNote(note, true);
+
+    NoteSummary summary = (NoteSummary) dbHelper.getNotesActiveSummaries().get(0);
+    assertTrue(summary.getContent().length() < note.getContent().length());
+    assertEquals(2, summary.getAttachmentsCount());
+    assertEquals(1, summary.getAttachmentsList().size());
+    assertEquals(4001L, (long) summary.getAttachmentsList().get(0).getId());
+
+    summary.setArchived(true);
+    dbHelper.updateNote(summary, false);
+    Note savedNote = dbHelper.getNote(4000L);
+    assertTrue(savedNote.isArchived());
+    assertEquals(note.getContent(), savedNote.getContent());
+    assertEquals(2, savedNote.getAttachmentsList().size());
+  }
+
+  @Test
+  public void getNoteIsCachedUntilNoteChanges() {
+    Note note = new Note();
+    note.setTitle("cached");
+    note = dbHelper.updateNote(note, false);
+
+    dbHelper.getNote(note.get_id());
+    int hits = dbHelper.getCacheHitCount();
+    Note cachedNote = dbHelper.getNote(note.get_id());
+    assertEquals(hits + 1, dbHelper.getCacheHitCount());
+    cachedNote.setTitle("modified without saving");
+    assertEquals("cached", dbHelper.getNote(note.get_id()).getTitle());
+
+    note.setTitle("updated");
+    dbHelper.updateNote(note, false);
+    assertEquals("updated", dbHelper.getNote(note.get_id()).getTitle());
+
+    dbHelper.clearCache();
+    int misses = dbHelper.getCacheMissCount();
+    dbHelper.getNote(note.get_id());
+    assertEquals(misses + 1, dbHelper.getCacheMissCount());
+  }
+
+  @Test
+  public void persistedNoteQueryIsReplayed() {
+    Category category = new Category();
+    category.setId(2L);
+    category.setName("queried");
+    dbHelper.updateCategory(category);
+    Note note = new Note();
+    note.setTitle("categorized #query");
+    note.setCategory(category);
+    dbHelper.updateNote(note, false);
+    Note otherNote = new Note();
+    otherNote.setTitle("uncategorized #query");
+    dbHelper.updateNote(otherNote, false);
+
+    NoteQuery query = new NoteQuery().category(category.getId()).tags("#query").trashed(false);
+    NoteQuery replayedQuery = NoteQuery.fromJson(query.toJson());
+
+    List<Note> notes = dbHelper.getNotes(replayedQuery);
+    assertEquals(1, notes.size());
+    assertEquals(note.get_id(), notes.get(0).get_id());
+    assertEquals(category.getId(), replayedQuery.getCategoryId());
+  }
+
+  @Test
+  public void unknownSortColumnFallsBack() {
+    Note note = new Note();
+    note.setTitle("sorted");
+    dbHelper.updateNote(note, false);
+
+    NoteQuery query = NoteQuery.fromJson("{\"sortColumn\": \"title; DROP TABLE notes\"}");
+
+    assertNotNull(query);
+    assertEquals(1, dbHelper.getNotes(query).size());
+    assertEquals(1, dbHelper.getNotesPage(query, null, 10, null).size());
+  }
+
+  @Test(expected = OperationCanceledException.class)
+  public void cancelledNotesQueryIsAborted() {
+    Note note = new Note();
+    note.setTitle("never loaded");
+    dbHelper.updateNote(note, false);
+
+    CancellationSignal cancellationSignal = new CancellationSignal();
+    cancellationSignal.cancel();
+    dbHelper.getNotes(NoteQuery.navigation(Navigation.NOTES), cancellationSignal);
+  }
+
+  @Test
+  public void notesAreStreamedAcrossCursorWindows() {
+    int count = NotesIterator.WINDOW_SIZE + 10;
+    for (int i = 0; i < count; i++) {
+      Note note = new Note();
+      note.setCreation(5000L + i);
+      note.setTitle("streamed " + i);
+      note.setContent("content " + i);
+      note.addAttachment(
+          new Attachment(6000L + i, Uri.parse("file:///" + i), "name", 0, 0, MIME_TYPE_IMAGE));
+      dbHelper.updateNote(note, false);
+    }
+
+    List<Note> streamed = new ArrayList<>();
+    dbHelper.forEachNote(new NoteQuery().unsorted(), streamed::add);
+    assertEquals(count, streamed.size());
+    for (Note note : streamed) {
+      assertEquals(1, note.getAttachmentsList().size());
+      assertEquals(note.getCreation(), note.getAttachmentsList().get(0).getNoteId());
+    }
+
+    try (NotesIterator notes = dbHelper.iterateNotes(new NoteQuery(),
+        NotesIterator.Projection.METADATA)) {
+      Note note = notes.next();
+      assertTrue(note.getTitle().startsWith("streamed"));
+      assertNull(note.getContent());
+      assertTrue(note.getAttachmentsList().isEmpty());
+    }
+  }
+
+  @Test
+  public void lockedNotesContentIsDecryptedOnFirstAccess() {
+    Prefs.putString(PREF_PASSWORD, Security.md5("password"));
+    Note note = new Note();
+    note.setTitle("locked");
+    note.setContent("secret content");
+    note.setLocked(true);
+    dbHelper.updateNote(note, false);
+
+    Note loadedNote = dbHelper.getNotesWithLock(true).get(0);
+    assertTrue(loadedNote.isContentEncrypted());
+    assertNotEquals("secret content", loadedNote.getStoredContent());
+
+    // Notes loaded before a password change are still readable
+    Prefs.putString(PREF_PASSWORD, Security.md5("new password"));
+    assertEquals("secret content", loadedNote.getContent());
+    assertFalse(loadedNote.isContentEncrypted());
+    Prefs.remove(PREF_PASSWORD);
+  }
+
+  @Test
+  public void interruptedPasswordChangeIsResumable() {
+    Prefs.putString(PREF_PASSWORD, Security.md5("old password"));
+    for (int i = 0; i < 3; i++) {
+      Note note = new Note();
+      note.setTitle("locked " + i);
+      note.setContent("secret " + i);
+      note.setLocked(true);
+      dbHelper.updateNote(note, false);
+    }
+    Prefs.edit()
+        .putString(PREF_PASSWORD, Security.md5("new password"))
+        .putString(PREF_PASSWORD_PREVIOUS, Security.md5("old password"))
+        .putInt(PREF_PASSWORD_KEY_VERSION, 1)
+        .commit();
+
+    long lastId = dbHelper.reencryptNotes(0, 2);
+    assertNotEquals(0, lastId);
+    assertEquals(1, dbHelper.countNotesToReencrypt());
+    // Notes encrypted with both passwords are readable meanwhile
+    for (Note note : dbHelper.getNotesWithLock(true)) {
+      assertTrue(note.getContent().startsWith("secret "));
+    }
+
+    assertEquals(0, dbHelper.reencryptNotes(lastId, 2));
+    assertEquals(0, dbHelper.countNotesToReencrypt());
+    Prefs.remove(PREF_PASSWORD_PREVIOUS);
+    for (Note note : dbHelper.getNotesWithLock(true)) {
+      assertTrue(note.getContent().startsWith("secret "));
+    }
+    Prefs.remove(PREF_PASSWORD);
+    Prefs.remove(PREF_PASSWORD_KEY_VERSION);
+  }
+
+  @Test
+  public void undecryptableNotesAreLeftUntouchedByReencryption() {
+    Prefs.putString(PREF_PASSWORD, Security.md5("unknown password"));
+    Note note = new Note();
+    note.setTitle("locked");
+    note.setContent("secret");
+    note.setLocked(true);
+    dbHelper.updateNote(note, false);
+    String storedContent = DatabaseUtils.stringForQuery(dbHelper.getDatabase(),
+        "SELECT content FROM notes WHERE creation = " + note.get_id(), null);
+    Prefs.edit()
+        .putString(PREF_PASSWORD, Security.md5("new password"))
+        .putString(PREF_PASSWORD_PREVIOUS, Security.md5("old password"))
+        .putInt(PREF_PASSWORD_KEY_VERSION, 1)
+        .commit();
+
+    assertEquals(0, dbHelper.reencryptNotes(0, 10));
+
+    assertEquals(storedContent, DatabaseUtils.stringForQuery(dbHelper.getDatabase(),
+        "SELECT content FROM notes WHERE creation = " + note.get_id(), null));
+    assertEquals(1, dbHelper.countNotesToReencrypt());
+    Prefs.remove(PREF_PASSWORD);
+    Prefs.remove(PREF_PASSWORD_PREVIOUS);
+    Prefs.remove(PREF_PASSWORD_KEY_VERSION);
+  }
+
+  @Test
+  public void reencryptedNotesAreEvictedFromCache() {
+    Prefs.putString(PREF_PASSWORD, Security.md5("old password"));
+    Note note = new Note();
+    note.setTitle("locked");
+    note.setContent("secret");
+    note.setLocked(true);
+    dbHelper.updateNote(note, false);
+    Note cachedNote = dbHelper.getNote(note.get_id());
+    Prefs.edit()
+        .putString(PREF_PASSWORD, Security.md5("new password"))
+        .putString(PREF_PASSWORD_PREVIOUS, Security.md5("old password"))
+        .putInt(PREF_PASSWORD_KEY_VERSION, 1)
+        .commit();
+
+    dbHelper.reencryptNotes(0, 10);
+
+    assertNotSame(cachedNote, dbHelper.getNote(note.get_id()));
+    Prefs.remove(PREF_PASSWORD_PREVIOUS);
+    assertEquals("secret", dbHelper.getNote(note.get_id()).getContent());
+    Prefs.remove(PREF_PASSWORD);
+    Prefs.remove(PREF_PASSWORD_KEY_VERSION);
+  }
+
+  @Test
+  public void concurrentWritesAreGroupCommitted() throws Exception {
+    List<Future<Note>> futures = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      Note note = new Note();
+      note.setTitle("queued " + i);
+      futures.add(dbHelper.updateNoteAsync(note, false));
+    }
+    for (Future<Note> future : futures) {
+      assertNotNull(dbHelper.getNote(future.get().get_id()));
+    }
+
+    assertEquals(0, dbHelper.getWriteQueueDepth());
+    assertTrue(dbHelper.getWriteGroupSizeAverage() >= 1);
+    assertTrue(dbHelper.getWriteLatencyMax() >= dbHelper.getWriteLatencyAverage());
+  }
+
+  @Test
+  public void maintenanceRebuildsDriftedTagsIndex() {
+    Note note = new Note();
+    note.setTitle("maintained #tag");
+    dbHelper.updateNote(note, false);
+    dbHelper.getDatabase(true).execSQL("UPDATE tags SET count = 99");
+    assertTrue(dbHelper.isTagsIndexDrifted());
+
+    MaintenanceReport report = new DbMaintenance(dbHelper).run();
+
+    assertFalse(dbHelper.isTagsIndexDrifted());
+    assertTrue(report.isCompleted());
+    MaintenanceReport lastReport = MaintenanceReport.getLast();
+    assertNotNull(lastReport);
+    assertEquals(report.getDate(), lastReport.getDate());
+    assertEquals(report.getSteps().size(), lastReport.getSteps().size());
+  }
+
+  @Test
+  public void largeNotesAreStoredCompressed() {
+    assumeTrue(dbHelper.hasFullTextIndex());
+    String content = StringUtils.repeat("a rather repetitive line\n", 2000) + "needle";
+    Note note = new Note();
+    note.setTitle("large");
+    note.setContent(content);
+    dbHelper.updateNote(note, false);
+
+    try (Cursor cursor = dbHelper.getDatabase().rawQuery("SELECT length(content), content_codec,"
+        + " length(content_compressed) FROM notes WHERE creation = ?",
+        new String[]{String.valueOf(note.get_id())})) {
+      assertTrue(cursor.moveToFirst());
+      assertEquals(ContentCodec.PREVIEW_LENGTH, cursor.getInt(0));
+      assertEquals(ContentCodec.CODEC_DEFLATE, cursor.getInt(1));
+      assertTrue(cursor.getInt(2) < content.length() / 10);
+    }
+    assertEquals(content,
+        dbHelper.getNotesById(Collections.singletonList(note.get_id())).get(0).getContent());
+    assertEquals(1, dbHelper.getNotesByPattern("needle").size());
+  }
+
+  @Test
+  public void maintenanceCompressesArchivedNotes() {
+    assumeTrue(dbHelper.hasFullTextIndex());
+    String content = StringUtils.repeat("archived line\n", 200);
+    Note note = createTestNote("archived", content, 0);
+    dbHelper.archiveNote(note, true);
+
+    new DbMaintenance(dbHelper).run();
+
+    assertEquals(ContentCodec.CODEC_DEFLATE, DatabaseUtils.longForQuery(dbHelper.getDatabase(),
+        "SELECT content_codec FROM notes WHERE creation = " + note.get_id(), null));
+    assertEquals(content,
+        dbHelper.getNotesById(Collections.singletonList(note.get_id())).get(0).getContent());
+  }
+
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.utils;
+
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_AEAD;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_SALT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Base64;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.pixplicity.easyprefs.library.Prefs;
+import it.feio.android.omninotes.exceptions.unchecked.EncryptionException;
+import it.feio.android.omninotes.helpers.LogDelegate;
+import it.feio.android.omninotes.testutils.BaseAndroidTestCase;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.DESKeySpec;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+@RunWith(AndroidJUnit4.class)
+public class CryptoServiceTest extends BaseAndroidTestCase {
+
+  private static final String PASS = Security.md5("12345uselessPasswords");
+  private static final String TEXT = "Today is a - good - day to test useless things!";
+  private static final int BENCHMARK_NOTES = 2000;
+
+  @After
+  public void tearDown() {
+    Prefs.remove(PREF_PASSWORD_AEAD);
+  }
+
+  @Test
+  public void legacyPayloadsAreDecrypted() throws Exception {
+    assertEquals(TEXT, CryptoService.decrypt(legacyEncrypt(TEXT, PASS), PASS));
+  }
+
+  @Test
+  public void aeadPayloadsAreVersionedAndDecrypted() {
+    String encrypted = CryptoService.encrypt(TEXT, PASS, true);
+
+    assertTrue(CryptoService.isAead(encrypted));
+    assertNotEquals(encrypted, CryptoService.encrypt(TEXT, PASS, true));
+    assertEquals(TEXT, CryptoService.decrypt(encrypted, PASS));
+    assertNotEquals(TEXT, CryptoService.decrypt(encrypted, "zaza" + PASS));
+  }
+
+  @Test
+  public void tamperedAeadPayloadsAreRejected() {
+    String encrypted = CryptoService.encrypt(TEXT, PASS, true);
+    byte[] payload = Base64.decode(encrypted.substring(CryptoService.AEAD_HEADER.length()),
+        Base64.NO_WRAP);
+    payload[payload.length - 1] ^= 1;
+    String tampered = CryptoService.AEAD_HEADER + Base64.encodeToString(payload, Base64.NO_WRAP);
+
+    assertNotEquals(TEXT, CryptoService.decrypt(tampered, PASS));
+  }
+
+  @Test
+  public void aeadPayloadsCarryInstallSalt() {
+    String encrypted = CryptoService.encrypt(TEXT, PASS, true);
+    Prefs.remove(PREF_PASSWORD_SALT);
+    String encryptedWithNewSalt = CryptoService.encrypt(TEXT, PASS, true);
+
+    assertNotEquals(encrypted.substring(0, 20), encryptedWithNewSalt.substring(0, 20));
+    assertEquals(TEXT, CryptoService.decrypt(encrypted, PASS));
+    assertEquals(TEXT, CryptoService.decrypt(encryptedWithNewSalt, PASS));
+  }
+
+  @Test
+  public void fixedSaltAeadPayloadsAreDecrypted() throws Exception {
+    PBEKeySpec keySpec = new PBEKeySpec(PASS.toCharArray(),
+        "it.feio.android.omninotes".getBytes(StandardCharsets.UTF_8), 10000, 256);
+    SecretKeySpec key = new SecretKeySpec(SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1")
+        .generateSecret(keySpec).getEncoded(), "AES");
+    byte[] iv = new byte[12];
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+    cipher.updateAAD(CryptoService.AEAD_FIXED_SALT_HEADER.getBytes(StandardCharsets.UTF_8));
+    byte[] cipherText = cipher.doFinal(TEXT.getBytes(StandardCharsets.UTF_8));
+    byte[] payload = ByteBuffer.allocate(iv.length + cipherText.length).put(iv).put(cipherText)
+        .array();
+
+    assertEquals(TEXT, CryptoService.decrypt(CryptoService.AEAD_FIXED_SALT_HEADER
+        + Base64.encodeToString(payload, Base64.NO_WRAP), PASS));
+  }
+
+  @Test(expected = EncryptionException.class)
+  public void batchFailsAsWhole() {
+    // DES keys need at least 8 bytes
+    CryptoService.encrypt(Arrays.asList("first", "second"), "short");
+  }
+
+  @Test
+  public void aeadIsOptIn() {
+    assertFalse(CryptoService.isAead(CryptoService.encrypt(TEXT, PASS)));
+    Prefs.putBoolean(PREF_PASSWORD_AEAD, true);
+    assertTrue(CryptoService.isAead(CryptoService.encrypt(TEXT, PASS)));
+  }
+
+  @Test
+  public void batchKeepsValuesOrder() {
+    List<String> values = Arrays.asList("first", null, "third");
+
+    List<String> encrypted = CryptoService.encrypt(values, PASS);
+
+    assertEquals(values, CryptoService.decrypt(encrypted, PASS));
+  }
+
+  @Test
+  public void encryptionThroughput() throws Exception {
+    List<String> contents = new ArrayList<>(BENCHMARK_NOTES);
+    for (int i = 0; i < BENCHMARK_NOTES; i++) {
+      contents.add(TEXT + " " + i);
+    }
+
+    long start = System.nanoTime();
+    for (String content : contents) {
+      legacyEncrypt(content, PASS);
+    }
+    long legacyNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    List<String> desEncrypted = CryptoService.encrypt(contents, PASS);
+    long desNanos = System.nanoTime() - start;
+
+    Prefs.putBoolean(PREF_PASSWORD_AEAD, true);
+    CryptoService.encrypt(TEXT, PASS);
+    start = System.nanoTime();
+    List<String> aeadEncrypted = CryptoService.encrypt(contents, PASS);
+    long aeadNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    CryptoService.decrypt(aeadEncrypted, PASS);
+    long aeadDecryptionNanos = System.nanoTime() - start;
+
+    LogDelegate.i(String.format("Notes encrypted per second: legacy %d, DES %d, AEAD %d. "
+            + "AEAD decrypted per second: %d", perSecond(legacyNanos), perSecond(desNanos),
+        perSecond(aeadNanos), perSecond(aeadDecryptionNanos)));
+    assertEquals(contents, CryptoService.decrypt(desEncrypted, PASS));
+  }
+
+  private static long perSecond(long nanos) {
+    return BENCHMARK_NOTES * 1_000_000_000L / Math.max(nanos, 1);
+  }
+
+  /**
+   * Encryption as performed before keys caching, to build legacy payloads and compare throughput
+   */
+  private static String legacyEncrypt(String value, String password) throws Exception {
+    DESKeySpec keySpec = new DESKeySpec(password.getBytes(StandardCharsets.UTF_8));
+    Cipher cipher = Cipher.getInstance("DES");
+    cipher.init(Cipher.ENCRYPT_MODE, SecretKeyFactory.getInstance("DES").generateSecret(keySpec));
+    return Base64.encodeToString(cipher.doFinal(value.getBytes(StandardCharsets.UTF_8)),
+        Base64.DEFAULT);
+  }
+}
@@ -6,18 +6,31 @@ CREATE
 		last_modification INTEGER,
 		title TEXT,
 		content TEXT,
-		archived INTEGER,
-		trashed INTEGER,
+		archived INTEGER NOT NULL DEFAULT 0,
+		trashed INTEGER NOT NULL DEFAULT 0,
 		alarm INTEGER DEFAULT null,
-        reminder_fired INTEGER,
+		reminder_fired INTEGER NOT NULL DEFAULT 0,
 		recurrence_rule TEXT,
 		latitude REAL,
 		longitude REAL,
 		address TEXT,
 		category_id INTEGER DEFAULT null,
-		locked INTEGER,  
-		checklist  INTEGER
+		locked INTEGER NOT NULL DEFAULT 0,
+		checklist INTEGER NOT NULL DEFAULT 0,
+		words INTEGER NOT NULL DEFAULT 0,
+		chars INTEGER NOT NULL DEFAULT 0,
+		key_version INTEGER NOT NULL DEFAULT 0,
+		content_codec INTEGER NOT NULL DEFAULT 0,
+		content_compressed BLOB,
+		title_sort_key TEXT COLLATE NOCASE
 	);
+CREATE INDEX notes_navigation_creation ON notes(trashed, archived, creation);
+CREATE INDEX notes_navigation_last_modification ON notes(trashed, archived, last_modification);
+CREATE INDEX notes_navigation_title ON notes(trashed, archived, title_sort_key);
+CREATE INDEX notes_category ON notes(category_id, trashed, archived);
+CREATE INDEX notes_alarm ON notes(alarm) WHERE alarm IS NOT NULL;
+CREATE INDEX notes_reminder_fired ON notes(reminder_fired, alarm) WHERE alarm IS NOT NULL;
+CREATE INDEX notes_locked_key_version ON notes(key_version) WHERE locked = 1;
 	
 
 
@@ -33,6 +46,7 @@ CREATE
 		mime_type TEXT,
 		note_id INTEGER
 	);
+CREATE INDEX attachments_note_id ON attachments(note_id);
 	
 
 
@@ -43,5 +57,136 @@ CREATE
 		category_id INTEGER PRIMARY KEY,
 		name TEXT,
 		description TEXT,
-		color TEXT
+		color TEXT,
+		notes_count INTEGER NOT NULL DEFAULT 0
 	);
+
+
+
+-- Create full-text index for NOTES (FTS4 is used where FTS5 is not available)
+CREATE VIRTUAL TABLE notes_fts USING fts5(title, content, tokenize = 'unicode61 remove_diacritics 1');
+CREATE VIRTUAL TABLE IF NOT EXISTS notes_fts USING fts4(title, content, tokenize=unicode61);
+
+CREATE TRIGGER notes_fts_insert AFTER INSERT ON notes
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = new.creation;
+	INSERT INTO notes_fts(rowid, title, content)
+	VALUES (new.creation, new.title, CASE WHEN new.locked = 1 THEN NULL ELSE new.content END);
+END;
+
+-- Compressed notes content column holds just a preview, their index is written by the application
+CREATE TRIGGER notes_fts_update AFTER UPDATE OF creation, title, content, locked ON notes
+WHEN new.content_codec = 0
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = old.creation;
+	INSERT INTO notes_fts(rowid, title, content)
+	VALUES (new.creation, new.title, CASE WHEN new.locked = 1 THEN NULL ELSE new.content END);
+END;
+
+CREATE TRIGGER notes_fts_update_compressed AFTER UPDATE OF title ON notes
+WHEN new.content_codec != 0
+BEGIN
+	UPDATE notes_fts SET title = new.title WHERE rowid = new.creation;
+END;
+
+CREATE TRIGGER notes_fts_delete AFTER DELETE ON notes
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = old.creation;
+END;
+
+
+
+-- Hashtags of each note, trashed state is replicated to count only notes out of trash
+CREATE TABLE note_tags
+	(
+		note_id INTEGER NOT NULL,
+		tag TEXT NOT NULL,
+		trashed INTEGER NOT NULL DEFAULT 0,
+		PRIMARY KEY (note_id, tag)
+	);
+CREATE INDEX note_tags_tag ON note_tags(tag, trashed);
+
+-- Number of notes out of trash for each hashtag
+CREATE TABLE tags
+	(
+		tag TEXT PRIMARY KEY,
+		count INTEGER NOT NULL DEFAULT 0
+	);
+
+CREATE TRIGGER note_tags_insert AFTER INSERT ON note_tags WHEN new.trashed = 0
+BEGIN
+	INSERT OR IGNORE INTO tags(tag, count) VALUES (new.tag, 0);
+	UPDATE tags SET count = count + 1 WHERE tag = new.tag;
+END;
+
+CREATE TRIGGER note_tags_update AFTER UPDATE OF trashed ON note_tags WHEN old.trashed != new.trashed
+BEGIN
+	INSERT OR IGNORE INTO tags(tag, count) VALUES (new.tag, 0);
+	UPDATE tags SET count = count + (CASE WHEN new.trashed = 0 THEN 1 ELSE -1 END) WHERE tag = new.tag;
+	DELETE FROM tags WHERE tag = new.tag AND count <= 0;
+END;
+
+CREATE TRIGGER note_tags_delete AFTER DELETE ON note_tags WHEN old.trashed = 0
+BEGIN
+	UPDATE tags SET count = count - 1 WHERE tag = old.tag;
+	DELETE FROM tags WHERE tag = old.tag AND count <= 0;
+END;
+
+-- Hashtags of deleted notes are removed from the index
+CREATE TRIGGER notes_tags_delete AFTER DELETE ON notes
+BEGIN
+	DELETE FROM note_tags WHERE note_id = old.creation;
+END;
+
+
+-- Notes count for each dynamic navigation item, kept updated by triggers on notes as well as
+-- categories notes count
+CREATE TABLE counters
+	(
+		name TEXT PRIMARY KEY,
+		count INTEGER NOT NULL DEFAULT 0
+	);
+INSERT INTO counters(name) VALUES ('trashed');
+INSERT INTO counters(name) VALUES ('archived');
+INSERT INTO counters(name) VALUES ('reminders');
+INSERT INTO counters(name) VALUES ('uncategorized');
+
+CREATE TRIGGER notes_counters_insert AFTER INSERT ON notes
+BEGIN
+	UPDATE counters SET count = count + (CASE name
+		WHEN 'trashed' THEN new.trashed = 1
+		WHEN 'archived' THEN new.trashed = 0 AND new.archived = 1
+		WHEN 'reminders' THEN new.trashed = 0 AND new.archived = 0 AND new.alarm IS NOT NULL
+		WHEN 'uncategorized' THEN new.category_id IS NULL
+		ELSE 0 END);
+	UPDATE categories SET notes_count = notes_count + 1
+	WHERE category_id = new.category_id AND new.trashed = 0;
+END;
+
+CREATE TRIGGER notes_counters_update AFTER UPDATE OF trashed, archived, alarm, category_id ON notes
+BEGIN
+	UPDATE counters SET count = count + (CASE name
+		WHEN 'trashed' THEN (new.trashed = 1) - (old.trashed = 1)
+		WHEN 'archived' THEN (new.trashed = 0 AND new.archived = 1)
+			- (old.trashed = 0 AND old.archived = 1)
+		WHEN 'reminders' THEN (new.trashed = 0 AND new.archived = 0 AND new.alarm IS NOT NULL)
+			- (old.trashed = 0 AND old.archived = 0 AND old.alarm IS NOT NULL)
+		WHEN 'uncategorized' THEN (new.category_id IS NULL) - (old.category_id IS NULL)
+		ELSE 0 END);
+	UPDATE categories SET notes_count = notes_count - 1
+	WHERE category_id = old.category_id AND old.trashed = 0;
+	UPDATE categories SET notes_count = notes_count + 1
+	WHERE category_id = new.category_id AND new.trashed = 0;
+END;
+
+CREATE TRIGGER notes_counters_delete AFTER DELETE ON notes
+BEGIN
+	UPDATE counters SET count = count - (CASE name
+		WHEN 'trashed' THEN old.trashed = 1
+		WHEN 'archived' THEN old.trashed = 0 AND old.archived = 1
+		WHEN 'reminders' THEN old.trashed = 0 AND old.archived = 0 AND old.alarm IS NOT NULL
+		WHEN 'uncategorized' THEN old.category_id IS NULL
+		ELSE 0 END);
+	UPDATE categories SET notes_count = notes_count - 1
+	WHERE category_id = old.category_id AND old.trashed = 0;
+END;
@@ -0,0 +1,32 @@
+/*
+ * Full-text index over notes title and content used by search.
+ * FTS5 is used when available, otherwise FTS4 is created as fallback.
+ * Locked notes contents are encrypted so only their titles are indexed.
+ */
+CREATE VIRTUAL TABLE notes_fts USING fts5(title, content, tokenize = 'unicode61 remove_diacritics 1');
+CREATE VIRTUAL TABLE IF NOT EXISTS notes_fts USING fts4(title, content, tokenize=unicode61);
+
+-- Index synchronization
+CREATE TRIGGER notes_fts_insert AFTER INSERT ON notes
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = new.creation;
+	INSERT INTO notes_fts(rowid, title, content)
+	VALUES (new.creation, new.title, CASE WHEN new.locked = 1 THEN NULL ELSE new.content END);
+END;
+
+CREATE TRIGGER notes_fts_update AFTER UPDATE OF creation, title, content, locked ON notes
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = old.creation;
+	INSERT INTO notes_fts(rowid, title, content)
+	VALUES (new.creation, new.title, CASE WHEN new.locked = 1 THEN NULL ELSE new.content END);
+END;
+
+CREATE TRIGGER notes_fts_delete AFTER DELETE ON notes
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = old.creation;
+END;
+
+-- Indexing of already existing notes
+INSERT INTO notes_fts(rowid, title, content)
+SELECT creation, title, CASE WHEN locked = 1 THEN NULL ELSE content END
+FROM notes;
@@ -0,0 +1,4 @@
+/*
+ * Index used to retrieve attachments of notes without scanning the whole table
+ */
+CREATE INDEX IF NOT EXISTS attachments_note_id ON attachments(note_id);
@@ -0,0 +1,68 @@
+/*
+ * Normalizes notes flags to NOT NULL 0/1 values (and missing categories to NULL) to allow
+ * predicates to be served by indexes, then creates indexes used by navigation screens
+ */
+ALTER TABLE notes RENAME TO notes_tmp;
+CREATE
+	TABLE notes
+	(
+		creation INTEGER PRIMARY KEY,
+		last_modification INTEGER,
+		title TEXT,
+		content TEXT,
+		archived INTEGER NOT NULL DEFAULT 0,
+		trashed INTEGER NOT NULL DEFAULT 0,
+		alarm INTEGER DEFAULT null,
+		reminder_fired INTEGER NOT NULL DEFAULT 0,
+		recurrence_rule TEXT,
+		latitude REAL,
+		longitude REAL,
+		address TEXT,
+		category_id INTEGER DEFAULT null,
+		locked INTEGER NOT NULL DEFAULT 0,
+		checklist INTEGER NOT NULL DEFAULT 0
+	);
+INSERT INTO notes(creation, last_modification, title, content, archived, trashed, alarm, reminder_fired,
+    recurrence_rule, latitude, longitude, address, category_id, locked, checklist)
+SELECT creation, last_modification, title, content,
+    CASE WHEN archived = 1 THEN 1 ELSE 0 END,
+    CASE WHEN trashed = 1 THEN 1 ELSE 0 END,
+    alarm,
+    CASE WHEN reminder_fired = 1 THEN 1 ELSE 0 END,
+    recurrence_rule, latitude, longitude, address,
+    CASE WHEN category_id IS NULL OR category_id = 0 OR category_id = '' THEN NULL ELSE category_id END,
+    CASE WHEN locked = 1 THEN 1 ELSE 0 END,
+    CASE WHEN checklist = 1 THEN 1 ELSE 0 END
+FROM notes_tmp;
+DROP TABLE notes_tmp;
+
+-- Full-text index synchronization triggers are recreated on the new table
+DROP TRIGGER IF EXISTS notes_fts_insert;
+DROP TRIGGER IF EXISTS notes_fts_update;
+DROP TRIGGER IF EXISTS notes_fts_delete;
+
+CREATE TRIGGER notes_fts_insert AFTER INSERT ON notes
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = new.creation;
+	INSERT INTO notes_fts(rowid, title, content)
+	VALUES (new.creation, new.title, CASE WHEN new.locked = 1 THEN NULL ELSE new.content END);
+END;
+
+CREATE TRIGGER notes_fts_update AFTER UPDATE OF creation, title, content, locked ON notes
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = old.creation;
+	INSERT INTO notes_fts(rowid, title, content)
+	VALUES (new.creation, new.title, CASE WHEN new.locked = 1 THEN NULL ELSE new.content END);
+END;
+
+CREATE TRIGGER notes_fts_delete AFTER DELETE ON notes
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = old.creation;
+END;
+
+-- Navigation indexes, one for each sorting column
+CREATE INDEX notes_navigation_creation ON notes(trashed, archived, creation);
+CREATE INDEX notes_navigation_last_modification ON notes(trashed, archived, last_modification);
+CREATE INDEX notes_category ON notes(category_id, trashed, archived);
+CREATE INDEX notes_alarm ON notes(alarm) WHERE alarm IS NOT NULL;
+CREATE INDEX notes_reminder_fired ON notes(reminder_fired, alarm) WHERE alarm IS NOT NULL;
@@ -0,0 +1,44 @@
+/*
+ * Hashtags index, filled from notes content when upgrade completes
+ */
+-- Hashtags of each note, trashed state is replicated to count only notes out of trash
+CREATE TABLE note_tags
+	(
+		note_id INTEGER NOT NULL,
+		tag TEXT NOT NULL,
+		trashed INTEGER NOT NULL DEFAULT 0,
+		PRIMARY KEY (note_id, tag)
+	);
+CREATE INDEX note_tags_tag ON note_tags(tag, trashed);
+
+-- Number of notes out of trash for each hashtag
+CREATE TABLE tags
+	(
+		tag TEXT PRIMARY KEY,
+		count INTEGER NOT NULL DEFAULT 0
+	);
+
+CREATE TRIGGER note_tags_insert AFTER INSERT ON note_tags WHEN new.trashed = 0
+BEGIN
+	INSERT OR IGNORE INTO tags(tag, count) VALUES (new.tag, 0);
+	UPDATE tags SET count = count + 1 WHERE tag = new.tag;
+END;
+
+CREATE TRIGGER note_tags_update AFTER UPDATE OF trashed ON note_tags WHEN old.trashed != new.trashed
+BEGIN
+	INSERT OR IGNORE INTO tags(tag, count) VALUES (new.tag, 0);
+	UPDATE tags SET count = count + (CASE WHEN new.trashed = 0 THEN 1 ELSE -1 END) WHERE tag = new.tag;
+	DELETE FROM tags WHERE tag = new.tag AND count <= 0;
+END;
+
+CREATE TRIGGER note_tags_delete AFTER DELETE ON note_tags WHEN old.trashed = 0
+BEGIN
+	UPDATE tags SET count = count - 1 WHERE tag = old.tag;
+	DELETE FROM tags WHERE tag = old.tag AND count <= 0;
+END;
+
+-- Notes replaced while saving don't fire it, being recursive triggers disabled
+CREATE TRIGGER notes_tags_delete AFTER DELETE ON notes
+BEGIN
+	DELETE FROM note_tags WHERE note_id = old.creation;
+END;
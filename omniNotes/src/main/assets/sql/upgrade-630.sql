@@ -0,0 +1,5 @@
+/*
+ * Words and chars counters of notes, computed from notes content when upgrade completes
+ */
+ALTER TABLE notes ADD COLUMN words INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE notes ADD COLUMN chars INTEGER NOT NULL DEFAULT 0;
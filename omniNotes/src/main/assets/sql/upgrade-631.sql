@@ -0,0 +1,59 @@
+/*
+ * Navigation and categories counters, kept updated by triggers on notes
+ */
+-- Notes count for each dynamic navigation item
+CREATE TABLE counters
+	(
+		name TEXT PRIMARY KEY,
+		count INTEGER NOT NULL DEFAULT 0
+	);
+INSERT INTO counters(name, count) SELECT 'trashed', COUNT(*) FROM notes WHERE trashed = 1;
+INSERT INTO counters(name, count) SELECT 'archived', COUNT(*) FROM notes WHERE trashed = 0 AND archived = 1;
+INSERT INTO counters(name, count) SELECT 'reminders', COUNT(*) FROM notes
+	WHERE trashed = 0 AND archived = 0 AND alarm IS NOT NULL;
+INSERT INTO counters(name, count) SELECT 'uncategorized', COUNT(*) FROM notes WHERE category_id IS NULL;
+
+-- Notes out of trash count for each category
+ALTER TABLE categories ADD COLUMN notes_count INTEGER NOT NULL DEFAULT 0;
+UPDATE categories SET notes_count = (SELECT COUNT(*) FROM notes
+	WHERE notes.category_id = categories.category_id AND notes.trashed = 0);
+
+CREATE TRIGGER notes_counters_insert AFTER INSERT ON notes
+BEGIN
+	UPDATE counters SET count = count + (CASE name
+		WHEN 'trashed' THEN new.trashed = 1
+		WHEN 'archived' THEN new.trashed = 0 AND new.archived = 1
+		WHEN 'reminders' THEN new.trashed = 0 AND new.archived = 0 AND new.alarm IS NOT NULL
+		WHEN 'uncategorized' THEN new.category_id IS NULL
+		ELSE 0 END);
+	UPDATE categories SET notes_count = notes_count + 1
+	WHERE category_id = new.category_id AND new.trashed = 0;
+END;
+
+CREATE TRIGGER notes_counters_update AFTER UPDATE OF trashed, archived, alarm, category_id ON notes
+BEGIN
+	UPDATE counters SET count = count + (CASE name
+		WHEN 'trashed' THEN (new.trashed = 1) - (old.trashed = 1)
+		WHEN 'archived' THEN (new.trashed = 0 AND new.archived = 1)
+			- (old.trashed = 0 AND old.archived = 1)
+		WHEN 'reminders' THEN (new.trashed = 0 AND new.archived = 0 AND new.alarm IS NOT NULL)
+			- (old.trashed = 0 AND old.archived = 0 AND old.alarm IS NOT NULL)
+		WHEN 'uncategorized' THEN (new.category_id IS NULL) - (old.category_id IS NULL)
+		ELSE 0 END);
+	UPDATE categories SET notes_count = notes_count - 1
+	WHERE category_id = old.category_id AND old.trashed = 0;
+	UPDATE categories SET notes_count = notes_count + 1
+	WHERE category_id = new.category_id AND new.trashed = 0;
+END;
+
+CREATE TRIGGER notes_counters_delete AFTER DELETE ON notes
+BEGIN
+	UPDATE counters SET count = count - (CASE name
+		WHEN 'trashed' THEN old.trashed = 1
+		WHEN 'archived' THEN old.trashed = 0 AND old.archived = 1
+		WHEN 'reminders' THEN old.trashed = 0 AND old.archived = 0 AND old.alarm IS NOT NULL
+		WHEN 'uncategorized' THEN old.category_id IS NULL
+		ELSE 0 END);
+	UPDATE categories SET notes_count = notes_count - 1
+	WHERE category_id = old.category_id AND old.trashed = 0;
+END;
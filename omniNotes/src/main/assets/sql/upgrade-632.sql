@@ -0,0 +1,5 @@
+/*
+ * Version of the password locked notes content is encrypted with, to resume interrupted changes
+ */
+ALTER TABLE notes ADD COLUMN key_version INTEGER NOT NULL DEFAULT 0;
+CREATE INDEX notes_locked_key_version ON notes(key_version) WHERE locked = 1;
@@ -0,0 +1,22 @@
+/*
+ * Compressed content of large and archived notes, whose content column keeps just a preview. Full-text
+ * index of compressed notes is written by the application, as triggers only see the preview.
+ */
+ALTER TABLE notes ADD COLUMN content_codec INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE notes ADD COLUMN content_compressed BLOB;
+
+DROP TRIGGER IF EXISTS notes_fts_update;
+
+CREATE TRIGGER notes_fts_update AFTER UPDATE OF creation, title, content, locked ON notes
+WHEN new.content_codec = 0
+BEGIN
+	DELETE FROM notes_fts WHERE rowid = old.creation;
+	INSERT INTO notes_fts(rowid, title, content)
+	VALUES (new.creation, new.title, CASE WHEN new.locked = 1 THEN NULL ELSE new.content END);
+END;
+
+CREATE TRIGGER notes_fts_update_compressed AFTER UPDATE OF title ON notes
+WHEN new.content_codec != 0
+BEGIN
+	UPDATE notes_fts SET title = new.title WHERE rowid = new.creation;
+END;
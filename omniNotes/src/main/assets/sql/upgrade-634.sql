@@ -0,0 +1,11 @@
+/*
+ * Bounded key for title sorting, written by the application, replacing the index on the whole
+ * title and content expression that needs SQLite 3.9 and duplicated notes text
+ */
+DROP INDEX IF EXISTS notes_navigation_title;
+
+ALTER TABLE notes ADD COLUMN title_sort_key TEXT COLLATE NOCASE;
+
+UPDATE notes SET title_sort_key = substr(IFNULL(title, '') || CASE WHEN locked = 1 THEN '' ELSE IFNULL(content, '') END, 1, 100);
+
+CREATE INDEX notes_navigation_title ON notes(trashed, archived, title_sort_key);
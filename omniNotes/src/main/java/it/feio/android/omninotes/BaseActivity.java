@@ -89,11 +89,6 @@ public class BaseActivity extends AppCompatActivity {
    */
   public void requestPassword(final Activity mActivity, List<Note> notes,
       final PasswordValidator mPasswordValidator) {
-    if (Prefs.getBoolean("settings_password_access", false)) {
-      mPasswordValidator.onPasswordValidated(PasswordValidator.Result.SUCCEED);
-      return;
-    }
-
     boolean askForPassword = false;
     for (Note note : notes) {
       if (note.isLocked()) {
@@ -101,6 +96,20 @@ public class BaseActivity extends AppCompatActivity {
         break;
       }
     }
+    requestPassword(mActivity, askForPassword, mPasswordValidator);
+  }
+
+
+  /**
+   * Validates security password, when required, to protect notes already known to be locked or not
+   */
+  public void requestPassword(final Activity mActivity, boolean askForPassword,
+      final PasswordValidator mPasswordValidator) {
+    if (Prefs.getBoolean("settings_password_access", false)) {
+      mPasswordValidator.onPasswordValidated(PasswordValidator.Result.SUCCEED);
+      return;
+    }
+
     if (askForPassword) {
       PasswordHelper.requestPassword(mActivity, mPasswordValidator);
     } else {
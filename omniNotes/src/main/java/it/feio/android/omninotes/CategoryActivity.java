@@ -23,6 +23,7 @@ import static java.lang.Integer.parseInt;
 
 import android.graphics.Point;
 import android.graphics.PorterDuff;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.view.View;
@@ -156,13 +157,15 @@ public class CategoryActivity extends AppCompatActivity implements
     }
 
     // Saved to DB and new ID or update result catched
-    DbHelper db = DbHelper.getInstance();
-    category = db.updateCategory(category);
-
-    // Sets result to show proper message
-    getIntent().putExtra(INTENT_CATEGORY, category);
-    setResult(RESULT_OK, getIntent());
-    finish();
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+      Category savedCategory = DbHelper.getInstance().updateCategory(category);
+      runOnUiThread(() -> {
+        // Sets result to show proper message
+        getIntent().putExtra(INTENT_CATEGORY, savedCategory);
+        setResult(RESULT_OK, getIntent());
+        finish();
+      });
+    });
   }
 
   public void deleteCategory() {
@@ -180,14 +183,16 @@ public class CategoryActivity extends AppCompatActivity implements
             Prefs.edit().putString(PREF_NAVIGATION, navNotes).apply();
           }
           // Removes category and edit notes associated with it
-          DbHelper db = DbHelper.getInstance();
-          db.deleteCategory(category);
-
-          EventBus.getDefault().post(new CategoriesUpdatedEvent());
-          BaseActivity.notifyAppWidgets(OmniNotes.getAppContext());
-
-          setResult(RESULT_FIRST_USER);
-          finish();
+          AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            DbHelper.getInstance().deleteCategory(category);
+            runOnUiThread(() -> {
+              EventBus.getDefault().post(new CategoriesUpdatedEvent());
+              BaseActivity.notifyAppWidgets(OmniNotes.getAppContext());
+
+              setResult(RESULT_FIRST_USER);
+              finish();
+            });
+          });
         }).build().show();
   }
 
@@ -57,7 +57,6 @@ import static it.feio.android.omninotes.utils.ConstantsBase.PREF_KEEP_CHECKED;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_KEEP_CHECKMARKS;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PRETTIFIED_DATES;
-import static it.feio.android.omninotes.utils.ConstantsBase.PREF_WIDGET_PREFIX;
 import static it.feio.android.omninotes.utils.ConstantsBase.SWIPE_MARGIN;
 import static it.feio.android.omninotes.utils.ConstantsBase.SWIPE_OFFSET;
 import static it.feio.android.omninotes.utils.ConstantsBase.THUMBNAIL_SIZE;
@@ -174,6 +173,7 @@ import it.feio.android.omninotes.utils.TagsHelper;
 import it.feio.android.omninotes.utils.TextHelper;
 import it.feio.android.omninotes.utils.date.DateUtils;
 import it.feio.android.omninotes.utils.date.ReminderPickers;
+import it.feio.android.omninotes.widget.ListRemoteViewsFactory;
 import it.feio.android.pixlui.links.TextLinkClickListener;
 import java.io.File;
 import java.io.IOException;
@@ -406,7 +406,7 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
     handleIntents();
 
     if (noteOriginal == null) {
-      noteOriginal = getArguments().getParcelable(INTENT_NOTE);
+      noteOriginal = loadFullNote(getArguments().getParcelable(INTENT_NOTE));
     }
 
     if (note == null) {
@@ -425,6 +425,21 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
     initViews();
   }
 
+  /**
+   * Lists and widgets pass notes summaries, so the whole saved note is retrieved before editing
+   */
+  private Note loadFullNote(Note note) {
+    if (note == null || note.get_id() == null) {
+      return note;
+    }
+    Note fullNote = DbHelper.getInstance().getNote(note.get_id());
+    if (fullNote == null) {
+      return note;
+    }
+    fullNote.setPasswordChecked(note.isPasswordChecked());
+    return fullNote;
+  }
+
   /**
    * Checks note lock and password before showing note content
    */
@@ -491,17 +506,10 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
       //  with tags to set tag
       if (i.hasExtra(INTENT_WIDGET)) {
         String widgetId = i.getExtras().get(INTENT_WIDGET).toString();
-        String sqlCondition = Prefs.getString(PREF_WIDGET_PREFIX + widgetId, "");
-        String categoryId = TextHelper.checkIntentCategory(sqlCondition);
+        Long categoryId = ListRemoteViewsFactory.getWidgetQuery(widgetId).getCategoryId();
         if (categoryId != null) {
-          Category category;
-          try {
-            category = DbHelper.getInstance().getCategory(parseLong(categoryId));
-            noteTmp = new Note();
-            noteTmp.setCategory(category);
-          } catch (NumberFormatException e) {
-            LogDelegate.e("Category with not-numeric value!", e);
-          }
+          noteTmp = new Note();
+          noteTmp.setCategory(DbHelper.getInstance().getCategory(categoryId));
         }
       }
 
@@ -26,7 +26,7 @@ import static it.feio.android.omninotes.utils.ConstantsBase.ACTION_SEARCH_UNCOMP
 import static it.feio.android.omninotes.utils.ConstantsBase.ACTION_SHORTCUT_WIDGET;
 import static it.feio.android.omninotes.utils.ConstantsBase.ACTION_WIDGET_SHOW_LIST;
 import static it.feio.android.omninotes.utils.ConstantsBase.INTENT_CATEGORY;
-import static it.feio.android.omninotes.utils.ConstantsBase.INTENT_NOTE;
+import static it.feio.android.omninotes.utils.ConstantsBase.INTENT_KEY;
 import static it.feio.android.omninotes.utils.ConstantsBase.INTENT_WIDGET;
 import static it.feio.android.omninotes.utils.ConstantsBase.MENU_SORT_GROUP_ID;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_ENABLE_SWIPE;
@@ -36,7 +36,6 @@ import static it.feio.android.omninotes.utils.ConstantsBase.PREF_FILTER_ARCHIVED
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_FILTER_PAST_REMINDERS;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_NAVIGATION;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_SORTING_COLUMN;
-import static it.feio.android.omninotes.utils.ConstantsBase.PREF_WIDGET_PREFIX;
 import static it.feio.android.omninotes.utils.Navigation.checkNavigation;
 
 import android.animation.Animator;
@@ -70,7 +69,6 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.view.ActionMode;
 import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.SearchView.OnQueryTextListener;
-import androidx.core.util.Pair;
 import androidx.core.view.GravityCompat;
 import androidx.recyclerview.widget.DefaultItemAnimator;
 import androidx.recyclerview.widget.DividerItemDecoration;
@@ -84,20 +82,27 @@ import de.keyboardsurfer.android.widget.crouton.Crouton;
 import de.keyboardsurfer.android.widget.crouton.Style;
 import it.feio.android.omninotes.async.bus.CategoriesUpdatedEvent;
 import it.feio.android.omninotes.async.bus.NavigationUpdatedNavDrawerClosedEvent;
+import it.feio.android.omninotes.async.bus.NotesChangedEvent;
 import it.feio.android.omninotes.async.bus.NotesLoadedEvent;
+import it.feio.android.omninotes.async.bus.NotesPageLoadedEvent;
 import it.feio.android.omninotes.async.bus.NotesMergeEvent;
 import it.feio.android.omninotes.async.bus.PasswordRemovedEvent;
 import it.feio.android.omninotes.async.notes.NoteLoaderTask;
+import it.feio.android.omninotes.async.notes.EmptyTrashTask;
 import it.feio.android.omninotes.async.notes.NoteProcessorArchive;
 import it.feio.android.omninotes.async.notes.NoteProcessorCategorize;
 import it.feio.android.omninotes.async.notes.NoteProcessorDelete;
+import it.feio.android.omninotes.async.notes.NoteProcessorTag;
 import it.feio.android.omninotes.async.notes.NoteProcessorTrash;
 import it.feio.android.omninotes.databinding.FragmentListBinding;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.NoteQuery;
+import it.feio.android.omninotes.helpers.InstantSearchController;
 import it.feio.android.omninotes.helpers.LogDelegate;
 import it.feio.android.omninotes.helpers.NotesHelper;
 import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.NoteSummary;
 import it.feio.android.omninotes.models.ONStyle;
 import it.feio.android.omninotes.models.PasswordValidator;
 import it.feio.android.omninotes.models.Tag;
@@ -114,7 +119,7 @@ import it.feio.android.omninotes.utils.Navigation;
 import it.feio.android.omninotes.utils.PasswordHelper;
 import it.feio.android.omninotes.utils.ReminderHelper;
 import it.feio.android.omninotes.utils.TagsHelper;
-import it.feio.android.omninotes.utils.TextHelper;
+import it.feio.android.omninotes.widget.ListRemoteViewsFactory;
 import it.feio.android.pixlui.links.UrlCompleter;
 import it.feio.android.simplegallery.util.BitmapUtils;
 import java.util.ArrayList;
@@ -126,6 +131,7 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
 
 
 public class ListFragment extends BaseFragment implements OnViewTouchedListener,
@@ -134,6 +140,9 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
   private static final int REQUEST_CODE_CATEGORY = 1;
   private static final int REQUEST_CODE_CATEGORY_NOTES = 2;
   private static final int REQUEST_CODE_ADD_ALARMS = 3;
+  private static final int NOTES_PAGE_SIZE = 50;
+  // Next page is requested when the last visible note is closer than this to the end of the list
+  private static final int NOTES_PAGE_PREFETCH_DISTANCE = 10;
   public static final String LIST_VIEW_POSITION = "listViewPosition";
   public static final String LIST_VIEW_POSITION_OFFSET = "listViewPositionOffset";
 
@@ -171,6 +180,16 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
   private boolean searchLabelActive = false;
 
   private NoteAdapter listAdapter;
+  // Data version of the latest change each shown note is being reloaded for
+  private final Map<Long, Long> reloadingNotesVersions = new HashMap<>();
+  // Size of the first notes page requested, zero when notes are not loaded by pages
+  private int firstNotesPageSize;
+  private NoteQuery notesPageQuery;
+  private final InstantSearchController instantSearch = new InstantSearchController();
+  private boolean hasMoreNotes;
+  private boolean loadingNotesPage;
+  private boolean loadingRemainingNotes;
+  private boolean selectAllOnPageLoaded;
   private UndoBarController ubc;
   private Fab fab;
   private MainActivity mainActivity;
@@ -190,6 +209,7 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
   public void onDestroy() {
     super.onDestroy();
     EventBus.getDefault().unregister(this);
+    instantSearch.cancel();
   }
 
 
@@ -508,6 +528,13 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
       return true;
     });
 
+    binding.list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+      @Override
+      public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        eventuallyLoadNextNotesPage();
+      }
+    });
+
     binding.listRoot.setOnViewTouchedListener(this);
   }
 
@@ -685,6 +712,7 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
           @Override
           public boolean onMenuItemActionCollapse(MenuItem item) {
             // Reinitialize notes list to all notes when search is collapsed
+            instantSearch.cancel();
             searchQuery = null;
             if (binding.searchLayout.getVisibility() == View.VISIBLE) {
               toggleSearchLabel(false);
@@ -715,7 +743,7 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
                     searchPerformed && mFragment.isAdded()) {
                   searchTags = null;
                   searchQuery = pattern;
-                  NoteLoaderTask.getInstance().execute("getNotesByPattern", pattern);
+                  instantSearch.onPatternChanged(pattern);
                   return true;
                 } else {
                   searchPerformed = true;
@@ -897,7 +925,12 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
   private void addReminders() {
     Intent intent = new Intent(OmniNotes.getAppContext(), SnoozeActivity.class);
     intent.setAction(ACTION_POSTPONE);
-    intent.putExtra(INTENT_NOTE, selectedNotes.toArray(new Note[selectedNotes.size()]));
+    // Notes are passed by ID since list holds just summaries of them
+    long[] noteIds = new long[selectedNotes.size()];
+    for (int i = 0; i < noteIds.length; i++) {
+      noteIds[i] = selectedNotes.get(i).get_id();
+    }
+    intent.putExtra(INTENT_KEY, noteIds);
     intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
     startActivityForResult(intent, REQUEST_CODE_ADD_ALARMS);
   }
@@ -1015,23 +1048,40 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
     new MaterialDialog.Builder(mainActivity)
         .content(R.string.empty_trash_confirmation)
         .positiveText(R.string.ok)
-        .onPositive((dialog, which) -> {
-          boolean mustDeleteLockedNotes = false;
-          for (int i = 0; i < listAdapter.getItemCount(); i++) {
-            selectedNotes.add(listAdapter.getItem(i));
-            mustDeleteLockedNotes = mustDeleteLockedNotes || listAdapter.getItem(i).isLocked();
-          }
-          if (mustDeleteLockedNotes) {
-            mainActivity.requestPassword(mainActivity, getSelectedNotes(),
-                passwordConfirmed -> {
-                  if (passwordConfirmed.equals(PasswordValidator.Result.SUCCEED)) {
-                    deleteNotesExecute();
-                  }
-                });
-          } else {
-            deleteNotesExecute();
+        .onPositive((dialog, which) -> requestEmptyTrashPassword()).build().show();
+  }
+
+
+  /**
+   * Password is asked only if trash holds locked notes, which are looked for off the UI thread
+   */
+  private void requestEmptyTrashPassword() {
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+      boolean hasLockedNotes = DbHelper.getInstance().hasLockedNotesInTrash();
+      new Handler(Looper.getMainLooper()).post(() -> {
+        if (!isAdded()) {
+          return;
+        }
+        mainActivity.requestPassword(mainActivity, hasLockedNotes, passwordConfirmed -> {
+          if (passwordConfirmed.equals(PasswordValidator.Result.SUCCEED)) {
+            emptyTrashExecute();
           }
-        }).build().show();
+        });
+      });
+    });
+  }
+
+
+  /**
+   * Performs trash emptying after confirmation by the user, including notes not loaded in list
+   */
+  private void emptyTrashExecute() {
+    listAdapter.clear();
+    hasMoreNotes = false;
+    new EmptyTrashTask().process();
+    selectedNotes.clear();
+    finishActionMode();
+    mainActivity.showMessage(R.string.note_deleted, ONStyle.ALERT);
   }
 
 
@@ -1046,6 +1096,13 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
     binding.progressWheel.setAlpha(1);
     binding.list.setAlpha(0);
 
+    NoteLoaderTask.cancelRunning();
+    firstNotesPageSize = 0;
+    hasMoreNotes = false;
+    loadingNotesPage = false;
+    loadingRemainingNotes = false;
+    selectAllOnPageLoaded = false;
+
     // Search for a tag
     // A workaround to simplify it's to simulate normal search
     if (Intent.ACTION_VIEW.equals(intent.getAction()) && intent.getCategories() != null
@@ -1068,24 +1125,23 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
       // Using tags
       if (searchTags != null && intent.getStringExtra(SearchManager.QUERY) == null) {
         searchQuery = searchTags;
-        NoteLoaderTask.getInstance()
-            .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getNotesByTag",
-                searchQuery);
+        NoteLoaderTask.load(new NoteQuery()
+            .trashed(checkNavigation(Navigation.TRASH))
+            .tags(StringUtils.stripAll(searchQuery.split(","))));
       } else if (searchUncompleteChecklists || ACTION_SEARCH_UNCOMPLETE_CHECKLISTS.equals(
           intent.getAction())) {
         searchQuery = getContext().getResources().getString(R.string.uncompleted_checklists);
         searchUncompleteChecklists = true;
-        NoteLoaderTask.getInstance()
-            .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getNotesByUncompleteChecklist");
+        NoteLoaderTask.load(new NoteQuery()
+            .uncompletedChecklist()
+            .trashed(checkNavigation(Navigation.TRASH)));
       } else {
         // Get the intent, verify the action and get the query
         if (intent.getStringExtra(SearchManager.QUERY) != null) {
           searchQuery = intent.getStringExtra(SearchManager.QUERY);
           searchTags = null;
         }
-        NoteLoaderTask.getInstance()
-            .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getNotesByPattern",
-                searchQuery);
+        NoteLoaderTask.load(NoteQuery.searchScope().text(searchQuery));
       }
 
       toggleSearchLabel(true);
@@ -1098,28 +1154,55 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
             intent.hasExtra(INTENT_WIDGET) ? intent.getExtras().get(INTENT_WIDGET).toString()
                 : null;
         if (widgetId != null) {
-          String sqlCondition = Prefs.getString(PREF_WIDGET_PREFIX + widgetId, "");
-          String categoryId = TextHelper.checkIntentCategory(sqlCondition);
-          mainActivity.navigationTmp = !isEmpty(categoryId) ? categoryId : null;
+          Long categoryId = ListRemoteViewsFactory.getWidgetQuery(widgetId).getCategoryId();
+          mainActivity.navigationTmp = categoryId != null ? String.valueOf(categoryId) : null;
         }
         intent.removeExtra(INTENT_WIDGET);
         if (mainActivity.navigationTmp != null) {
-          Long categoryId = Long.parseLong(mainActivity.navigationTmp);
-          NoteLoaderTask.getInstance().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
-              "getNotesByCategory", categoryId);
+          loadFirstNotesPage(Long.parseLong(mainActivity.navigationTmp));
         } else {
-          NoteLoaderTask.getInstance()
-              .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getAllNotes", true);
+          loadFirstNotesPage(null);
         }
 
       } else {
-        NoteLoaderTask.getInstance()
-            .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getAllNotes", true);
+        loadFirstNotesPage(null);
       }
     }
   }
 
 
+  /**
+   * Notes are loaded a page at a time while scrolling. The first page is big enough to restore the
+   * previous scroll position. Reminders are loaded all at once to scroll to the closest one.
+   */
+  private void loadFirstNotesPage(Long categoryId) {
+    if (categoryId == null && checkNavigation(Navigation.REMINDERS)) {
+      NoteLoaderTask.loadPage(NoteQuery.navigation(Navigation.REMINDERS), null, Integer.MAX_VALUE);
+    } else {
+      notesPageQuery = categoryId != null
+          ? NoteQuery.categoryNavigation(categoryId)
+          : NoteQuery.navigation(Navigation.getNavigation());
+      firstNotesPageSize = listViewPosition + NOTES_PAGE_SIZE;
+      NoteLoaderTask.loadPage(notesPageQuery, null, firstNotesPageSize);
+    }
+  }
+
+
+  private void eventuallyLoadNextNotesPage() {
+    if (!hasMoreNotes || loadingNotesPage || listAdapter == null
+        || listAdapter.getItemCount() == 0) {
+      return;
+    }
+    int lastVisiblePosition = ((LinearLayoutManager) binding.list.getLayoutManager())
+        .findLastVisibleItemPosition();
+    if (lastVisiblePosition >= listAdapter.getItemCount() - NOTES_PAGE_PREFETCH_DISTANCE) {
+      loadingNotesPage = true;
+      NoteLoaderTask.loadPage(notesPageQuery,
+          listAdapter.getItem(listAdapter.getItemCount() - 1), NOTES_PAGE_SIZE);
+    }
+  }
+
+
   public void toggleSearchLabel(boolean activate) {
     if (activate) {
       binding.searchQuery.setText(fromHtml(getString(R.string.search) + ":<b> " + searchQuery + "</b>"));
@@ -1164,13 +1247,69 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
   }
 
 
+  /**
+   * Patches list items affected by notes changes instead of reloading the whole list. Updated notes
+   * are reloaded only if shown, while new notes will show up at next list loading.
+   */
+  public void onEventMainThread(NotesChangedEvent notesChangedEvent) {
+    instantSearch.invalidate();
+    if (listAdapter == null) {
+      return;
+    }
+    listAdapter.removeByIds(notesChangedEvent.getDeletedIds());
+    for (Long deletedId : notesChangedEvent.getDeletedIds()) {
+      reloadingNotesVersions.remove(deletedId);
+    }
+    List<Long> shownIds = listAdapter.getShownIds(notesChangedEvent.getUpdatedIds());
+    if (!shownIds.isEmpty()) {
+      reloadShownNotes(shownIds, notesChangedEvent.getDataVersion());
+    }
+  }
+
+
+  /**
+   * Loads summaries of changed notes off the UI thread, then replaces them in list unless a later
+   * change to the same notes is already being reloaded or list has been reloaded meanwhile.
+   */
+  private void reloadShownNotes(List<Long> shownIds, long dataVersion) {
+    for (Long id : shownIds) {
+      reloadingNotesVersions.put(id, dataVersion);
+    }
+    final NoteAdapter adapter = listAdapter;
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+      List<Note> summaries = DbHelper.getInstance().getNoteSummariesById(shownIds);
+      new Handler(Looper.getMainLooper()).post(() -> {
+        List<Note> currentSummaries = new ArrayList<>();
+        for (Note summary : summaries) {
+          Long latestVersion = reloadingNotesVersions.get(summary.get_id());
+          if (latestVersion != null && latestVersion == dataVersion) {
+            currentSummaries.add(summary);
+          }
+        }
+        for (Long id : shownIds) {
+          Long latestVersion = reloadingNotesVersions.get(id);
+          if (latestVersion != null && latestVersion == dataVersion) {
+            reloadingNotesVersions.remove(id);
+          }
+        }
+        if (adapter == listAdapter && !currentSummaries.isEmpty()) {
+          listAdapter.replaceByIds(currentSummaries);
+        }
+      });
+    });
+  }
+
+
   public void onEvent(NotesLoadedEvent notesLoadedEvent) {
+    instantSearch.onNotesLoaded(notesLoadedEvent.getNotes());
     listAdapter = new NoteAdapter(mainActivity, Prefs.getBoolean(PREF_EXPANDED_VIEW, true),
         notesLoadedEvent.getNotes());
 
     initSwipeGesture();
 
     binding.list.setAdapter(listAdapter);
+    hasMoreNotes = firstNotesPageSize > 0
+        && notesLoadedEvent.getNotes().size() >= firstNotesPageSize;
 
     // Restores listview position when turning back to list or when navigating reminders
     if (!notesLoadedEvent.getNotes().isEmpty()) {
@@ -1185,6 +1324,28 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
     closeFab();
   }
 
+  public void onEvent(NotesPageLoadedEvent notesPageLoadedEvent) {
+    loadingNotesPage = false;
+    // Page is discarded if list has been reloaded or its last note removed in the meanwhile
+    if (listAdapter == null || listAdapter.getItemCount() == 0
+        || listAdapter.getItem(listAdapter.getItemCount() - 1) != notesPageLoadedEvent.getAfter()) {
+      loadingRemainingNotes = false;
+      selectAllOnPageLoaded = false;
+      return;
+    }
+    // A page requested to select all notes holds all the remaining ones
+    hasMoreNotes = !loadingRemainingNotes
+        && notesPageLoadedEvent.getNotes().size() >= NOTES_PAGE_SIZE;
+    loadingRemainingNotes = false;
+    listAdapter.addAll(notesPageLoadedEvent.getNotes());
+    if (selectAllOnPageLoaded) {
+      selectAllOnPageLoaded = false;
+      if (getActionMode() != null) {
+        selectAllNotes();
+      }
+    }
+  }
+
   private void initSwipeGesture() {
     ItemTouchHelper.SimpleCallback simpleItemTouchCallback = new ItemTouchHelper.SimpleCallback(0,
         ItemTouchHelper.LEFT | ItemTouchHelper.RIGHT) {
@@ -1330,6 +1491,23 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
   }
 
 
+  /**
+   * List shows notes summaries, so actions working on content or attachments need whole notes
+   */
+  private List<Note> getFullNotes(List<Note> notes) {
+    List<Note> fullNotes = new ArrayList<>();
+    for (Note note : notes) {
+      Note fullNote = note instanceof NoteSummary
+          ? DbHelper.getInstance().getNote(note.get_id())
+          : note;
+      if (fullNote != null) {
+        fullNotes.add(fullNote);
+      }
+    }
+    return fullNotes;
+  }
+
+
   /**
    * Single note logical deletion
    */
@@ -1341,9 +1519,19 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
 
 
   /**
-   * Selects all notes in list
+   * Selects all notes in list. When notes are loaded by pages the remaining ones are loaded at once
+   * and selection repeated, so that actions apply to all the notes matching the list.
    */
   private void selectAllNotes() {
+    if (hasMoreNotes && listAdapter.getItemCount() > 0) {
+      selectAllOnPageLoaded = true;
+      if (!loadingNotesPage) {
+        loadingNotesPage = true;
+        loadingRemainingNotes = true;
+        NoteLoaderTask.loadPage(notesPageQuery,
+            listAdapter.getItem(listAdapter.getItemCount() - 1), Integer.MAX_VALUE);
+      }
+    }
     for (int i = 0; i < binding.list.getChildCount(); i++) {
       LinearLayout v = binding.list.getChildAt(i).findViewById(R.id.card_layout);
       v.setBackgroundColor(getResources().getColor(R.color.list_bg_selected));
@@ -1590,9 +1778,7 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
 
 
   private void tagNotesExecute(List<Tag> tags, Integer[] selectedTags, Integer[] preSelectedTags) {
-    for (Note note : getSelectedNotes()) {
-      tagNote(tags, selectedTags, note);
-    }
+    new NoteProcessorTag(getSelectedNotes(), tags, selectedTags).process();
 
     if (getActionMode() != null) {
       getActionMode().finish();
@@ -1601,37 +1787,6 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
     mainActivity.showMessage(R.string.tags_added, ONStyle.INFO);
   }
 
-
-  private void tagNote(List<Tag> tags, Integer[] selectedTags, Note note) {
-
-    Pair<String, List<Tag>> taggingResult = TagsHelper.addTagToNote(tags, selectedTags, note);
-
-    if (note.isChecklist()) {
-      note.setTitle(note.getTitle() + System.getProperty("line.separator") + taggingResult.first);
-    } else {
-      StringBuilder sb = new StringBuilder(note.getContent());
-      if (sb.length() > 0) {
-        sb.append(System.getProperty("line.separator"))
-            .append(System.getProperty("line.separator"));
-      }
-      sb.append(taggingResult.first);
-      note.setContent(sb.toString());
-    }
-
-    eventuallyRemoveDeselectedTags(note, taggingResult.second);
-
-    DbHelper.getInstance().updateNote(note, false);
-  }
-
-  private void eventuallyRemoveDeselectedTags(Note note, List<Tag> tagsToRemove) {
-    if (CollectionUtils.isNotEmpty(tagsToRemove)) {
-      String titleWithoutTags = TagsHelper.removeTags(note.getTitle(), tagsToRemove);
-      note.setTitle(titleWithoutTags);
-      String contentWithoutTags = TagsHelper.removeTags(note.getContent(), tagsToRemove);
-      note.setContent(contentWithoutTags);
-    }
-  }
-
 //	private void synchronizeSelectedNotes() {
 //		new DriveSyncTask(mainActivity).execute(new ArrayList<Note>(getSelectedNotes()));
 //		// Clears data structures
@@ -1720,9 +1875,17 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
    */
   private void share() {
     // Only one note should be selected to perform sharing but they'll be cycled anyhow
-    for (final Note note : getSelectedNotes()) {
-      mainActivity.shareNote(note);
-    }
+    List<Note> notes = new ArrayList<>(getSelectedNotes());
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+      List<Note> fullNotes = getFullNotes(notes);
+      new Handler(Looper.getMainLooper()).post(() -> {
+        if (isAdded()) {
+          for (Note note : fullNotes) {
+            mainActivity.shareNote(note);
+          }
+        }
+      });
+    });
 
     getSelectedNotes().clear();
     if (getActionMode() != null) {
@@ -1742,7 +1905,7 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
   public void onEventAsync(NotesMergeEvent notesMergeEvent) {
 
     final Note finalMergedNote = NotesHelper
-        .mergeNotes(getSelectedNotes(), notesMergeEvent.keepMergedNotes);
+        .mergeNotes(getFullNotes(getSelectedNotes()), notesMergeEvent.keepMergedNotes);
     new Handler(Looper.getMainLooper()).post(() -> {
 
       if (!notesMergeEvent.keepMergedNotes) {
@@ -446,7 +446,7 @@ public class MainActivity extends BaseActivity implements
     Note note = new Note();
     note.setTitle(i.getStringExtra(Intent.EXTRA_SUBJECT));
     note.setContent(i.getStringExtra(Intent.EXTRA_TEXT));
-    DbHelper.getInstance().updateNote(note, true);
+    DbHelper.getInstance().updateNoteAsync(note, true);
     showToast(getString(R.string.note_updated), Toast.LENGTH_SHORT);
     finish();
   }
@@ -22,12 +22,19 @@ import static it.feio.android.omninotes.utils.ConstantsBase.PREF_LANG;
 
 import android.content.Context;
 import android.content.res.Configuration;
+import android.os.AsyncTask;
 import android.os.StrictMode;
 import android.text.TextUtils;
 import androidx.multidex.MultiDexApplication;
 import com.pixplicity.easyprefs.library.Prefs;
+import it.feio.android.omninotes.async.DbMaintenanceJobService;
+import it.feio.android.omninotes.async.upgrade.UpgradeProcessor;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.exceptions.unchecked.EncryptionException;
 import it.feio.android.omninotes.helpers.LanguageHelper;
+import it.feio.android.omninotes.helpers.LogDelegate;
 import it.feio.android.omninotes.helpers.notifications.NotificationsHelper;
+import it.feio.android.omninotes.utils.PasswordHelper;
 import org.acra.ACRA;
 import org.acra.config.CoreConfigurationBuilder;
 import org.acra.config.HttpSenderConfigurationBuilder;
@@ -60,6 +67,18 @@ public class OmniNotes extends MultiDexApplication {
     initSharedPreferences();
     enableStrictMode();
     new NotificationsHelper(this).initNotificationChannels();
+    if (PasswordHelper.isPasswordChangePending()) {
+      AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+        try {
+          PasswordHelper.resumePasswordChange();
+        } catch (EncryptionException e) {
+          // Previous password is kept, so change is attempted again on next start
+          LogDelegate.e("Password change not resumed", e);
+        }
+      });
+    }
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(UpgradeProcessor::runPendingMigrations);
+    DbMaintenanceJobService.schedule(this);
   }
 
   private void initAcra() {
@@ -98,6 +117,14 @@ public class OmniNotes extends MultiDexApplication {
     }
   }
 
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    if (level == TRIM_MEMORY_UI_HIDDEN) {
+      AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> DbHelper.getInstance().checkpoint());
+    }
+  }
+
   @Override
   public void onConfigurationChanged(Configuration newConfig) {
     super.onConfigurationChanged(newConfig);
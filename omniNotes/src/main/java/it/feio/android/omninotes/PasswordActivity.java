@@ -18,10 +18,7 @@
 package it.feio.android.omninotes;
 
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD;
-import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_ANSWER;
-import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_QUESTION;
 
-import android.annotation.SuppressLint;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
 import android.view.ViewGroup;
@@ -32,12 +29,10 @@ import de.greenrobot.event.EventBus;
 import de.keyboardsurfer.android.widget.crouton.Crouton;
 import de.keyboardsurfer.android.widget.crouton.LifecycleCallback;
 import it.feio.android.omninotes.async.bus.PasswordRemovedEvent;
-import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.helpers.LogDelegate;
 import it.feio.android.omninotes.models.ONStyle;
 import it.feio.android.omninotes.models.PasswordValidator;
 import it.feio.android.omninotes.utils.PasswordHelper;
-import it.feio.android.omninotes.utils.Security;
-import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
 
@@ -152,7 +147,6 @@ public class PasswordActivity extends BaseActivity {
   }
 
 
-  @SuppressLint("CommitPrefEdits")
   private void updatePassword(String passwordText, String questionText, String answerText) {
     if (passwordText == null) {
       if (Prefs.getString(PREF_PASSWORD, "").length() == 0) {
@@ -166,16 +160,15 @@ public class PasswordActivity extends BaseActivity {
     } else if (passwordText.length() == 0) {
       Crouton.makeText(mActivity, R.string.empty_password, ONStyle.WARN, croutonHandle).show();
     } else {
-      Observable
-          .from(DbHelper.getInstance().getNotesWithLock(true))
+      MaterialDialog progressDialog = new MaterialDialog.Builder(mActivity)
+          .content(R.string.password_reencrypting_notes)
+          .progress(false, 100)
+          .cancelable(false)
+          .show();
+      PasswordHelper.changePassword(passwordText, questionText, answerText)
           .subscribeOn(Schedulers.newThread())
           .observeOn(AndroidSchedulers.mainThread())
-          .doOnSubscribe(() -> Prefs.edit()
-              .putString(PREF_PASSWORD, Security.md5(passwordText))
-              .putString(PREF_PASSWORD_QUESTION, questionText)
-              .putString(PREF_PASSWORD_ANSWER, Security.md5(answerText))
-              .apply())
-          .doOnNext(note -> DbHelper.getInstance().updateNote(note, false))
+          .doOnTerminate(progressDialog::dismiss)
           .doOnCompleted(() -> {
             Crouton crouton = Crouton
                 .makeText(mActivity, R.string.password_successfully_changed, ONStyle
@@ -194,7 +187,8 @@ public class PasswordActivity extends BaseActivity {
             });
             crouton.show();
           })
-          .subscribe();
+          .subscribe(progressDialog::setProgress,
+              throwable -> LogDelegate.e("Error changing password", throwable));
     }
   }
 
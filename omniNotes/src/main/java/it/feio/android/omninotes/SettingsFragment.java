@@ -23,6 +23,7 @@ import static it.feio.android.omninotes.utils.ConstantsBase.DATE_FORMAT_EXPORT;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_AUTO_LOCATION;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_BACKUP_FOLDER_URI;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_COLORS_APP_DEFAULT;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_DB_WAL;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_ENABLE_FILE_LOGGING;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_SHOW_UNCATEGORIZED;
@@ -36,14 +37,18 @@ import android.Manifest.permission;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Intent;
+import android.database.sqlite.SQLiteDatabase;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextUtils;
 import android.text.TextWatcher;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.EditText;
@@ -61,6 +66,9 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.lazygeniouz.dfc.file.DocumentFileCompat;
 import com.pixplicity.easyprefs.library.Prefs;
 import it.feio.android.omninotes.async.DataBackupIntentService;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.DbMaintenance;
+import it.feio.android.omninotes.db.MaintenanceReport;
 import it.feio.android.omninotes.exceptions.checked.ExternalStorageProviderException;
 import it.feio.android.omninotes.helpers.AppVersionHelper;
 import it.feio.android.omninotes.helpers.BackupHelper;
@@ -375,6 +383,43 @@ public class SettingsFragment extends PreferenceFragmentCompat {
       });
     }
 
+    // Write-ahead logging
+    final SwitchPreference databaseWal = findPreference(PREF_DB_WAL);
+    if (databaseWal != null) {
+      databaseWal.setOnPreferenceChangeListener((preference, newValue) -> {
+        DbHelper.getInstance().setWriteAheadLoggingEnabled((Boolean) newValue);
+        return true;
+      });
+    }
+
+    // Database maintenance
+    final Preference databaseMaintenance = findPreference("settings_db_maintenance");
+    if (databaseMaintenance != null) {
+      updateMaintenanceSummary(databaseMaintenance, MaintenanceReport.getLast());
+      databaseMaintenance.setOnPreferenceClickListener(preference -> {
+        databaseMaintenance.setEnabled(false);
+        databaseMaintenance.setSummary(R.string.settings_db_maintenance_running);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+          MaintenanceReport report;
+          try {
+            report = new DbMaintenance(DbHelper.getInstance()).run();
+          } catch (RuntimeException e) {
+            LogDelegate.e("Database maintenance failed", e);
+            report = MaintenanceReport.getLast();
+          }
+          MaintenanceReport lastReport = report;
+          Activity activity = getActivity();
+          if (activity != null) {
+            activity.runOnUiThread(() -> {
+              databaseMaintenance.setEnabled(true);
+              updateMaintenanceSummary(databaseMaintenance, lastReport);
+            });
+          }
+        });
+        return false;
+      });
+    }
+
     // Languages
     ListPreference lang = findPreference("settings_language");
     if (lang != null) {
@@ -521,8 +566,8 @@ public class SettingsFragment extends PreferenceFragmentCompat {
             .positiveText(R.string.confirm)
             .onPositive((dialog, which) -> {
               Prefs.edit().clear().apply();
-              File db = getActivity().getDatabasePath(DATABASE_NAME);
-              StorageHelper.delete(getActivity(), db.getAbsolutePath());
+              DbHelper.getInstance().close();
+              SQLiteDatabase.deleteDatabase(getActivity().getDatabasePath(DATABASE_NAME));
               File attachmentsDir = StorageHelper.getAttachmentDir();
               StorageHelper.delete(getActivity(), attachmentsDir.getAbsolutePath());
               File cacheDir = StorageHelper.getCacheDir(getActivity());
@@ -587,6 +632,20 @@ public class SettingsFragment extends PreferenceFragmentCompat {
     }
   }
 
+  private void updateMaintenanceSummary(Preference preference, MaintenanceReport report) {
+    if (report == null) {
+      preference.setSummary(R.string.settings_db_maintenance_never);
+      return;
+    }
+    // Single steps are just logged, by maintenance itself
+    preference.setSummary(getString(R.string.settings_db_maintenance_last,
+        DateUtils.formatDateTime(getContext(), report.getDate(),
+            DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME),
+        report.getDuration(),
+        Formatter.formatShortFileSize(getContext(), report.getReclaimedBytes())));
+  }
+
+
   private void importNotes() {
     importNotes(null);
   }
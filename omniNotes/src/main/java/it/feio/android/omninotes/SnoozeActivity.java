@@ -33,43 +33,45 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
 import com.pixplicity.easyprefs.library.Prefs;
-import it.feio.android.omninotes.async.notes.SaveNoteTask;
+import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.helpers.date.RecurrenceHelper;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.models.listeners.OnReminderPickedListener;
 import it.feio.android.omninotes.utils.ReminderHelper;
 import it.feio.android.omninotes.utils.date.DateUtils;
 import it.feio.android.omninotes.utils.date.ReminderPickers;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 
 
 public class SnoozeActivity extends AppCompatActivity implements OnReminderPickedListener {
 
   private Note note;
-  private Note[] notes;
-
+  private long[] noteIds;
+  private long pickedReminder;
+
+  /**
+   * Stores and schedules the next occurrence of note's reminder, or the reminder itself if not
+   * recurrent. Just reminder columns are updated, as the note could be a partial copy coming from
+   * an intent.
+   */
   public static void setNextRecurrentReminder(Note note) {
     long nextReminder = RecurrenceHelper.nextReminderFromRecurrenceRule(note);
     if (nextReminder > 0) {
-      updateNoteReminder(nextReminder, note, true);
-    } else {
-      new SaveNoteTask(false).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, note);
+      note.setAlarm(nextReminder);
+    }
+    DbHelper.getInstance().setReminderAsync(note.get_id(), note.getAlarm(),
+        note.getRecurrenceRule());
+    if (DateUtils.isFuture(note.getAlarm())) {
+      note.setReminderFired(false);
+      ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
     }
   }
 
-  private static void updateNoteReminder(long reminder, Note note) {
-    updateNoteReminder(reminder, note, false);
-  }
-
-  private static void updateNoteReminder(long reminder, Note noteToUpdate, boolean updateNote) {
-    if (updateNote) {
-      noteToUpdate.setAlarm(reminder);
-      new SaveNoteTask(false).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, noteToUpdate);
-    } else {
-      ReminderHelper.addReminder(OmniNotes.getAppContext(), noteToUpdate, reminder);
-      ReminderHelper.showReminderMessage(noteToUpdate.getAlarm());
-    }
+  private static void updateNoteReminder(long reminder, Note noteToUpdate) {
+    ReminderHelper.addReminder(OmniNotes.getAppContext(), noteToUpdate, reminder);
+    ReminderHelper.showReminderMessage(noteToUpdate.getAlarm());
   }
 
   @Override
@@ -80,8 +82,7 @@ public class SnoozeActivity extends AppCompatActivity implements OnReminderPicke
       note = getIntent().getParcelableExtra(INTENT_NOTE);
       manageNotification();
     } else {
-      Object[] notesObjs = (Object[]) getIntent().getExtras().get(INTENT_NOTE);
-      notes = Arrays.copyOf(notesObjs, notesObjs.length, Note[].class);
+      noteIds = getIntent().getLongArrayExtra(INTENT_KEY);
       postpone(DateUtils.getNextMinute(), null);
     }
   }
@@ -127,9 +128,7 @@ public class SnoozeActivity extends AppCompatActivity implements OnReminderPicke
     if (note != null) {
       note.setAlarm(reminder);
     } else {
-      for (Note currentNote : notes) {
-        currentNote.setAlarm(reminder);
-      }
+      pickedReminder = reminder;
     }
   }
 
@@ -139,13 +138,26 @@ public class SnoozeActivity extends AppCompatActivity implements OnReminderPicke
       note.setRecurrenceRule(recurrenceRule);
       setNextRecurrentReminder(note);
     } else {
-      for (Note processedNotes : notes) {
-        processedNotes.setRecurrenceRule(recurrenceRule);
-        setNextRecurrentReminder(processedNotes);
-      }
+      // Whole notes are needed to schedule reminders, as they're then shown by notifications
+      long reminder = pickedReminder;
+      AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+        for (Note processedNote : DbHelper.getInstance().getNotesById(toList(noteIds))) {
+          processedNote.setAlarm(reminder);
+          processedNote.setRecurrenceRule(recurrenceRule);
+          setNextRecurrentReminder(processedNote);
+        }
+      });
       setResult(RESULT_OK, getIntent());
     }
     finish();
   }
 
+  private static List<Long> toList(long[] ids) {
+    List<Long> list = new ArrayList<>(ids.length);
+    for (long id : ids) {
+      list.add(id);
+    }
+    return list;
+  }
+
 }
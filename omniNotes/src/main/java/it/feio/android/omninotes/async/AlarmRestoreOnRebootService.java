@@ -26,9 +26,7 @@ import it.feio.android.omninotes.BaseActivity;
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.helpers.LogDelegate;
-import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.utils.ReminderHelper;
-import java.util.List;
 
 /**
  * Verify version code and add wake lock in manifest is important to avoid crash
@@ -53,11 +51,8 @@ public class AlarmRestoreOnRebootService extends JobIntentService {
 
     BaseActivity.notifyAppWidgets(mContext);
 
-    List<Note> notes = DbHelper.getInstance().getNotesWithReminderNotFired();
-    LogDelegate.d("Found " + notes.size() + " reminders");
-    for (Note note : notes) {
-      ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
-    }
+    DbHelper.getInstance().forEachNoteWithReminderNotFired(
+        note -> ReminderHelper.addReminder(OmniNotes.getAppContext(), note));
   }
 
 }
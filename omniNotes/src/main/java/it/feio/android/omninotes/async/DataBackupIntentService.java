@@ -42,7 +42,6 @@ import it.feio.android.omninotes.helpers.SpringImportHelper;
 import it.feio.android.omninotes.helpers.notifications.NotificationChannels.NotificationChannelNames;
 import it.feio.android.omninotes.helpers.notifications.NotificationsHelper;
 import it.feio.android.omninotes.models.Attachment;
-import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.models.listeners.OnAttachingFileListener;
 import it.feio.android.omninotes.utils.ReminderHelper;
 import it.feio.android.omninotes.utils.StorageHelper;
@@ -172,9 +171,8 @@ public class DataBackupIntentService extends IntentService implements OnAttachin
    */
   private void resetReminders() {
     LogDelegate.d("Resetting reminders");
-    for (Note note : DbHelper.getInstance().getNotesWithReminderNotFired()) {
-      ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
-    }
+    DbHelper.getInstance().forEachNoteWithReminderNotFired(
+        note -> ReminderHelper.addReminder(OmniNotes.getAppContext(), note));
   }
 
 
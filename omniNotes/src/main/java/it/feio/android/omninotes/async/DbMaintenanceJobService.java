@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.DbMaintenance;
+import it.feio.android.omninotes.helpers.LogDelegate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs database maintenance while device is idle and charging
+ */
+public class DbMaintenanceJobService extends JobService {
+
+  public static final int JOB_ID = 0x02;
+  private static final long MAINTENANCE_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+  private DbMaintenance maintenance;
+
+
+  public static void schedule(Context context) {
+    JobScheduler jobScheduler = (JobScheduler) context
+        .getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    if (jobScheduler == null) {
+      return;
+    }
+    for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+      if (job.getId() == JOB_ID) {
+        return;
+      }
+    }
+    jobScheduler.schedule(new JobInfo.Builder(JOB_ID,
+        new ComponentName(context, DbMaintenanceJobService.class))
+        .setRequiresDeviceIdle(true)
+        .setRequiresCharging(true)
+        .setPeriodic(MAINTENANCE_INTERVAL)
+        .setPersisted(true)
+        .build());
+  }
+
+  @Override
+  public boolean onStartJob(JobParameters params) {
+    maintenance = new DbMaintenance(DbHelper.getInstance());
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+      try {
+        maintenance.run();
+      } catch (RuntimeException e) {
+        LogDelegate.e("Database maintenance failed", e);
+      }
+      jobFinished(params, false);
+    });
+    return true;
+  }
+
+  @Override
+  public boolean onStopJob(JobParameters params) {
+    // Device is not idle anymore: running step is completed, remaining ones will be done by the
+    // next periodic run, so no reschedule is asked
+    if (maintenance != null) {
+      maintenance.stop();
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.bus;
+
+import it.feio.android.omninotes.helpers.LogDelegate;
+import lombok.Getter;
+
+
+/**
+ * Progress of a data migration running in background after database upgrade
+ */
+public class DataMigrationEvent {
+
+  @Getter
+  private final int version;
+  @Getter
+  private final int migrated;
+  @Getter
+  private final int total;
+
+
+  public DataMigrationEvent(int version, int migrated, int total) {
+    LogDelegate.d(this.getClass().getName() + " (" + version + "): " + migrated + "/" + total);
+    this.version = version;
+    this.migrated = migrated;
+    this.total = total;
+  }
+
+
+  public boolean isCompleted() {
+    return migrated == total;
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.bus;
+
+import it.feio.android.omninotes.helpers.LogDelegate;
+import java.util.List;
+import lombok.Getter;
+
+
+/**
+ * Notified by database after notes have been changed, with the IDs of the affected ones. Data
+ * version allows subscribers to recognize changes already applied to their state.
+ */
+public class NotesChangedEvent {
+
+  @Getter
+  private final long dataVersion;
+  @Getter
+  private final List<Long> insertedIds;
+  @Getter
+  private final List<Long> updatedIds;
+  @Getter
+  private final List<Long> deletedIds;
+
+
+  public NotesChangedEvent(long dataVersion, List<Long> insertedIds, List<Long> updatedIds,
+      List<Long> deletedIds) {
+    LogDelegate.d(this.getClass().getName() + " (version " + dataVersion + ")");
+    this.dataVersion = dataVersion;
+    this.insertedIds = insertedIds;
+    this.updatedIds = updatedIds;
+    this.deletedIds = deletedIds;
+  }
+}
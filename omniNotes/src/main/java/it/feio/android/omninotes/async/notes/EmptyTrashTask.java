@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.notes;
+
+import android.net.Uri;
+import android.os.AsyncTask;
+import de.greenrobot.event.EventBus;
+import it.feio.android.omninotes.OmniNotes;
+import it.feio.android.omninotes.async.bus.NotesUpdatedEvent;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.helpers.AttachmentsReclaimer;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Deletes all trashed notes at once, then reclaims their attachments files
+ */
+public class EmptyTrashTask extends AsyncTask<Void, Void, Void> {
+
+  public void process() {
+    executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+  }
+
+
+  @Override
+  protected Void doInBackground(Void... params) {
+    List<Uri> attachmentsUris = DbHelper.getInstance().emptyTrash();
+    EventBus.getDefault().post(new NotesUpdatedEvent(Collections.emptyList()));
+    new AttachmentsReclaimer(OmniNotes.getAppContext()).reclaim(attachmentsUris);
+    return null;
+  }
+
+}
@@ -17,74 +17,109 @@
 package it.feio.android.omninotes.async.notes;
 
 import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import androidx.annotation.Nullable;
 import de.greenrobot.event.EventBus;
 import it.feio.android.omninotes.async.bus.NotesLoadedEvent;
+import it.feio.android.omninotes.async.bus.NotesPageLoadedEvent;
 import it.feio.android.omninotes.db.DbHelper;
-import it.feio.android.omninotes.exceptions.NotesLoadingException;
+import it.feio.android.omninotes.db.NoteQuery;
+import it.feio.android.omninotes.helpers.LogDelegate;
 import it.feio.android.omninotes.models.Note;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.List;
 
 
-public class NoteLoaderTask extends AsyncTask<Object, Void, List<Note>> {
+/**
+ * Loads notes matching a query, as a whole or a page at a time. Whole lists and first pages are
+ * notified as {@link NotesLoadedEvent}, following pages as {@link NotesPageLoadedEvent}.
+ * <p>
+ * Only the latest requested load is notified: starting a new one aborts the running query through
+ * its {@link CancellationSignal}, and results of superseded loads are dropped by generation.
+ */
+public class NoteLoaderTask extends AsyncTask<Void, Void, List<Note>> {
 
-  private static final String ERROR_RETRIEVING_NOTES = "Error retrieving notes";
+  private static final int WHOLE_LIST = -1;
 
+  // Loads are started and notified on main thread only
+  private static long latestGeneration;
   private static NoteLoaderTask instance;
 
-  private NoteLoaderTask() {
+  private final long generation;
+  private final NoteQuery query;
+  private final Note after;
+  private final int pageSize;
+  private final CancellationSignal cancellationSignal = new CancellationSignal();
+
+
+  private NoteLoaderTask(long generation, NoteQuery query, @Nullable Note after, int pageSize) {
+    this.generation = generation;
+    this.query = query;
+    this.after = after;
+    this.pageSize = pageSize;
   }
 
 
-  public static NoteLoaderTask getInstance() {
+  /**
+   * Loads all the notes matching the query, cancelling the load eventually running
+   */
+  public static void load(NoteQuery query) {
+    start(query, null, WHOLE_LIST);
+  }
 
-    if (instance != null) {
-      if (instance.getStatus() == Status.RUNNING && !instance.isCancelled()) {
-        instance.cancel(true);
-      } else if (instance.getStatus() == Status.PENDING) {
-        return instance;
-      }
-    }
 
-    instance = new NoteLoaderTask();
-    return instance;
+  /**
+   * Loads a page of notes summaries, cancelling the load eventually running
+   *
+   * @param after Last note of the previous page, null to load the first page
+   */
+  public static void loadPage(NoteQuery query, @Nullable Note after, int pageSize) {
+    start(query, after, pageSize);
   }
 
 
-  @Override
-  protected List<Note> doInBackground(Object... params) {
+  private static void start(NoteQuery query, @Nullable Note after, int pageSize) {
+    cancelRunning();
+    instance = new NoteLoaderTask(latestGeneration, query, after, pageSize);
+    instance.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+  }
 
-    String methodName = params[0].toString();
-    DbHelper db = DbHelper.getInstance();
 
-    if (params.length < 2 || params[1] == null) {
-      try {
-        Method method = db.getClass().getDeclaredMethod(methodName);
-        return (List<Note>) method.invoke(db);
-      } catch (NoSuchMethodException e) {
-        return new ArrayList<>();
-      } catch (IllegalAccessException | InvocationTargetException e) {
-        throw new NotesLoadingException(ERROR_RETRIEVING_NOTES, e);
-      }
-    } else {
-      Object methodArgs = params[1];
-      Class[] paramClass = new Class[]{methodArgs.getClass()};
-      try {
-        Method method = db.getClass().getDeclaredMethod(methodName, paramClass);
-        return (List<Note>) method.invoke(db, paramClass[0].cast(methodArgs));
-      } catch (Exception e) {
-        throw new NotesLoadingException(ERROR_RETRIEVING_NOTES, e);
-      }
+  /**
+   * Aborts the running load, whose results won't be notified anymore
+   */
+  public static void cancelRunning() {
+    latestGeneration++;
+    if (instance != null && instance.getStatus() != Status.FINISHED) {
+      instance.cancellationSignal.cancel();
     }
   }
 
 
   @Override
-  protected void onPostExecute(List<Note> notes) {
+  protected List<Note> doInBackground(Void... params) {
+    DbHelper db = DbHelper.getInstance();
+    try {
+      return pageSize == WHOLE_LIST
+          ? db.getNotes(query, cancellationSignal)
+          : db.getNotesPage(query, after, pageSize, cancellationSignal);
+    } catch (OperationCanceledException e) {
+      LogDelegate.v("Notes loading cancelled");
+      return null;
+    }
+  }
 
+
+  @Override
+  protected void onPostExecute(List<Note> notes) {
     super.onPostExecute(notes);
-    EventBus.getDefault().post(new NotesLoadedEvent(notes));
+    if (notes == null || generation != latestGeneration) {
+      return;
+    }
+    if (after == null) {
+      EventBus.getDefault().post(new NotesLoadedEvent(notes));
+    } else {
+      EventBus.getDefault().post(new NotesPageLoadedEvent(after, notes));
+    }
   }
 }
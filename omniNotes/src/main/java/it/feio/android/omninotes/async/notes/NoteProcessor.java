@@ -41,7 +41,19 @@ public abstract class NoteProcessor {
   }
 
 
-  protected abstract void processNote(Note note);
+  /**
+   * Processes all notes at once, database changes are expected to be made in a single transaction
+   */
+  protected abstract void processNotes(List<Note> notes);
+
+
+  protected static List<Long> getIds(List<Note> notes) {
+    List<Long> ids = new ArrayList<>(notes.size());
+    for (Note note : notes) {
+      ids.add(note.get_id());
+    }
+    return ids;
+  }
 
 
   class NotesProcessorTask extends AsyncTask<List<Note>, Void, List<Note>> {
@@ -49,9 +61,7 @@ public abstract class NoteProcessor {
     @Override
     protected List<Note> doInBackground(List<Note>... params) {
       List<Note> processableNote = params[0];
-      for (Note note : processableNote) {
-        processNote(note);
-      }
+      processNotes(processableNote);
       return processableNote;
     }
 
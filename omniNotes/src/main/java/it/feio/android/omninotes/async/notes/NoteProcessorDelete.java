@@ -23,7 +23,9 @@ import it.feio.android.omninotes.async.bus.NotesDeletedEvent;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.NoteSummary;
 import it.feio.android.omninotes.utils.StorageHelper;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -45,14 +47,26 @@ public class NoteProcessorDelete extends NoteProcessor {
 
 
   @Override
-  protected void processNote(Note note) {
+  protected void processNotes(List<Note> notes) {
     DbHelper db = DbHelper.getInstance();
-    if (db.deleteNote(note) && !keepAttachments) {
-      for (Attachment mAttachment : note.getAttachmentsList()) {
-        StorageHelper
-            .deleteExternalStoragePrivateFile(OmniNotes.getAppContext(), mAttachment.getUri()
-                .getLastPathSegment());
+    List<Attachment> attachments = new ArrayList<>();
+    if (!keepAttachments) {
+      // Summaries only carry the first attachment, so the whole list is retrieved for them at once
+      List<Note> summaries = new ArrayList<>();
+      for (Note note : notes) {
+        if (note instanceof NoteSummary) {
+          summaries.add(note);
+        } else {
+          attachments.addAll(note.getAttachmentsList());
+        }
       }
+      attachments.addAll(db.getNotesAttachments(getIds(summaries)));
+    }
+    db.deleteNotes(getIds(notes), keepAttachments);
+    for (Attachment mAttachment : attachments) {
+      StorageHelper
+          .deleteExternalStoragePrivateFile(OmniNotes.getAppContext(), mAttachment.getUri()
+              .getLastPathSegment());
     }
   }
 
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.notes;
+
+import androidx.core.util.Pair;
+import de.greenrobot.event.EventBus;
+import it.feio.android.omninotes.async.bus.NotesUpdatedEvent;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.Tag;
+import it.feio.android.omninotes.utils.TagsHelper;
+import java.util.List;
+import org.apache.commons.collections4.CollectionUtils;
+
+
+/**
+ * Adds selected tags to notes text, removing deselected ones. Whole notes are loaded at once and
+ * saved in a single transaction.
+ */
+public class NoteProcessorTag extends NoteProcessor {
+
+  private final List<Tag> tags;
+  private final Integer[] selectedTags;
+  private List<Note> taggedNotes;
+
+
+  public NoteProcessorTag(List<Note> notes, List<Tag> tags, Integer[] selectedTags) {
+    super(notes);
+    this.tags = tags;
+    this.selectedTags = selectedTags;
+  }
+
+
+  @Override
+  protected void processNotes(List<Note> notes) {
+    DbHelper db = DbHelper.getInstance();
+    taggedNotes = db.getNotesById(getIds(notes));
+    for (Note note : taggedNotes) {
+      tagNote(note);
+    }
+    db.updateNotes(taggedNotes, false);
+  }
+
+
+  private void tagNote(Note note) {
+
+    Pair<String, List<Tag>> taggingResult = TagsHelper.addTagToNote(tags, selectedTags, note);
+
+    if (note.isChecklist()) {
+      note.setTitle(note.getTitle() + System.getProperty("line.separator") + taggingResult.first);
+    } else {
+      StringBuilder sb = new StringBuilder(note.getContent());
+      if (sb.length() > 0) {
+        sb.append(System.getProperty("line.separator"))
+            .append(System.getProperty("line.separator"));
+      }
+      sb.append(taggingResult.first);
+      note.setContent(sb.toString());
+    }
+
+    eventuallyRemoveDeselectedTags(note, taggingResult.second);
+  }
+
+
+  private void eventuallyRemoveDeselectedTags(Note note, List<Tag> tagsToRemove) {
+    if (CollectionUtils.isNotEmpty(tagsToRemove)) {
+      String titleWithoutTags = TagsHelper.removeTags(note.getTitle(), tagsToRemove);
+      note.setTitle(titleWithoutTags);
+      String contentWithoutTags = TagsHelper.removeTags(note.getContent(), tagsToRemove);
+      note.setContent(contentWithoutTags);
+    }
+  }
+
+
+  @Override
+  protected void afterProcess(List<Note> notes) {
+    EventBus.getDefault().post(new NotesUpdatedEvent(taggedNotes));
+  }
+}
@@ -17,11 +17,13 @@
 
 package it.feio.android.omninotes.async.notes;
 
+import android.content.Context;
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.utils.ReminderHelper;
 import it.feio.android.omninotes.utils.ShortcutHelper;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -37,13 +39,27 @@ public class NoteProcessorTrash extends NoteProcessor {
 
 
   @Override
-  protected void processNote(Note note) {
+  protected void processNotes(List<Note> notes) {
+    Context context = OmniNotes.getAppContext();
     if (trash) {
-      ShortcutHelper.removeShortcut(OmniNotes.getAppContext(), note);
-      ReminderHelper.removeReminder(OmniNotes.getAppContext(), note);
+      ShortcutHelper.removeShortcuts(context, notes);
+      ReminderHelper.removeReminders(context, notes);
     } else {
-      ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
+      // Reminders carry the note they're about, so they're scheduled with whole ones
+      List<Long> notesWithReminderIds = new ArrayList<>();
+      for (Note note : notes) {
+        if (note.getAlarm() != null) {
+          notesWithReminderIds.add(note.get_id());
+        }
+      }
+      if (!notesWithReminderIds.isEmpty()) {
+        ReminderHelper.addReminders(context,
+            DbHelper.getInstance().getNotesById(notesWithReminderIds));
+      }
+    }
+    DbHelper.getInstance().trashNotes(getIds(notes), trash);
+    for (Note note : notes) {
+      note.setTrashed(trash);
     }
-    DbHelper.getInstance().trashNote(note, trash);
   }
 }
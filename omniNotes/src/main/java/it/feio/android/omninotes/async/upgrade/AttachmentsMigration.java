@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.upgrade;
+
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.models.Attachment;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Migration walking attachments in ID order. Changes of each chunk are written in a single
+ * transaction and the last attachment ID is used as marker.
+ */
+abstract class AttachmentsMigration extends DataMigration {
+
+  AttachmentsMigration(int version) {
+    super(version);
+  }
+
+
+  @Override
+  int countRemaining(DbHelper dbHelper, long marker) {
+    return dbHelper.countAttachmentsAfter(marker);
+  }
+
+
+  @Override
+  long migrate(DbHelper dbHelper, long marker, int chunkSize) {
+    List<Attachment> attachments = dbHelper.getAttachmentsPage(marker, chunkSize);
+    List<Attachment> migratedAttachments = new ArrayList<>();
+    for (Attachment attachment : attachments) {
+      if (migrate(attachment)) {
+        migratedAttachments.add(attachment);
+      }
+    }
+    dbHelper.updateAttachments(migratedAttachments);
+    return attachments.size() < chunkSize
+        ? COMPLETED
+        : attachments.get(attachments.size() - 1).getId();
+  }
+
+
+  /**
+   * @return True if attachment has been modified and must be updated
+   */
+  abstract boolean migrate(Attachment attachment);
+
+}
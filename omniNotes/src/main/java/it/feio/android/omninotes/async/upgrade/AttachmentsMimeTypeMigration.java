@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.upgrade;
+
+import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_AUDIO;
+import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_FILES;
+import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_IMAGE;
+import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_VIDEO;
+
+import android.text.TextUtils;
+import it.feio.android.omninotes.models.Attachment;
+import it.feio.android.omninotes.utils.StorageHelper;
+
+
+/**
+ * Adjustment of all the old attachments without mimetype field set into DB
+ */
+class AttachmentsMimeTypeMigration extends AttachmentsMigration {
+
+  AttachmentsMimeTypeMigration() {
+    super(476);
+  }
+
+
+  @Override
+  boolean migrate(Attachment attachment) {
+    if (attachment.getMime_type() != null) {
+      return false;
+    }
+    String mimeType = StorageHelper.getMimeType(attachment.getUri().toString());
+    if (TextUtils.isEmpty(mimeType)) {
+      attachment.setMime_type(MIME_TYPE_FILES);
+      return false;
+    }
+    String type = mimeType.replaceFirst("/.*", "");
+    switch (type) {
+      case "image":
+        attachment.setMime_type(MIME_TYPE_IMAGE);
+        break;
+      case "video":
+        attachment.setMime_type(MIME_TYPE_VIDEO);
+        break;
+      case "audio":
+        attachment.setMime_type(MIME_TYPE_AUDIO);
+        break;
+      default:
+        attachment.setMime_type(MIME_TYPE_FILES);
+        break;
+    }
+    return true;
+  }
+
+}
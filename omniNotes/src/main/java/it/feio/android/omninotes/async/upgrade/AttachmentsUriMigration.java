@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.upgrade;
+
+import android.net.Uri;
+import it.feio.android.omninotes.models.Attachment;
+import it.feio.android.omninotes.utils.StorageHelper;
+import java.io.File;
+
+
+/**
+ * Attachment uri replacement
+ */
+class AttachmentsUriMigration extends AttachmentsMigration {
+
+  AttachmentsUriMigration() {
+    super(625);
+  }
+
+
+  @Override
+  boolean migrate(Attachment attachment) {
+    if (!"content".equals(attachment.getUri().getScheme())) {
+      return false;
+    }
+    var pathSegments = attachment.getUri().getPathSegments();
+    var file = new File(StorageHelper.getAttachmentDir() + "/"
+        + pathSegments.get(pathSegments.size() - 1));
+    if (!file.exists()) {
+      return false;
+    }
+    attachment.setUri(Uri.fromFile(file));
+    return true;
+  }
+
+}
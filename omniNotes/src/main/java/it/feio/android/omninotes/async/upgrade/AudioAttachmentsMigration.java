@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.upgrade;
+
+import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_AUDIO;
+import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_AUDIO_EXT;
+
+import android.net.Uri;
+import it.feio.android.omninotes.helpers.LogDelegate;
+import it.feio.android.omninotes.models.Attachment;
+import java.io.File;
+import org.apache.commons.io.FilenameUtils;
+
+
+/**
+ * Upgrades all the old audio attachments to the new format 3gpp to avoid mixing with videos
+ */
+class AudioAttachmentsMigration extends AttachmentsMigration {
+
+  AudioAttachmentsMigration() {
+    super(480);
+  }
+
+
+  @Override
+  boolean migrate(Attachment attachment) {
+    if (!"audio/3gp".equals(attachment.getMime_type())
+        && !"audio/3gpp".equals(attachment.getMime_type())) {
+      return false;
+    }
+    File from = new File(attachment.getUriPath());
+    File to = new File(from.getParent(), from.getName().replace(FilenameUtils.getExtension(from
+        .getName()), MIME_TYPE_AUDIO_EXT));
+    if (!from.renameTo(to)) {
+      LogDelegate.e("Error renaming audio attachment: " + attachment.getName());
+      return false;
+    }
+    attachment.setUri(Uri.fromFile(to));
+    attachment.setMime_type(MIME_TYPE_AUDIO);
+    return true;
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.upgrade;
+
+import it.feio.android.omninotes.db.DbHelper;
+
+
+/**
+ * Data adjustment needed by a database version. Migrations are run in background after schema
+ * upgrade, a chunk at a time, and resumed from the last persisted marker if process dies.
+ */
+abstract class DataMigration {
+
+  /**
+   * Marker returned when there's nothing left to migrate
+   */
+  static final long COMPLETED = Long.MAX_VALUE;
+
+  private final int version;
+
+
+  DataMigration(int version) {
+    this.version = version;
+  }
+
+
+  /**
+   * @return Database version that introduced the migration, used to order and filter them
+   */
+  int getVersion() {
+    return version;
+  }
+
+
+  /**
+   * @return Number of items still to be migrated after the given marker, used to report progress
+   */
+  abstract int countRemaining(DbHelper dbHelper, long marker);
+
+
+  /**
+   * Migrates the chunk of items following the given marker, 0 when the migration starts
+   *
+   * @return Marker of the last migrated item or {@link #COMPLETED}
+   */
+  abstract long migrate(DbHelper dbHelper, long marker, int chunkSize);
+
+}
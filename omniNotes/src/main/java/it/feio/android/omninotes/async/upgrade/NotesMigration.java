@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.async.upgrade;
+
+import it.feio.android.omninotes.db.DbHelper;
+
+
+/**
+ * Migration walking notes in creation order, so reading and decrypting their content never blocks
+ * database upgrade. Each chunk is written in a single transaction and the last note creation is
+ * used as marker.
+ */
+abstract class NotesMigration extends DataMigration {
+
+  NotesMigration(int version) {
+    super(version);
+  }
+
+
+  @Override
+  int countRemaining(DbHelper dbHelper, long marker) {
+    return dbHelper.countNotesAfter(marker);
+  }
+
+
+  @Override
+  long migrate(DbHelper dbHelper, long marker, int chunkSize) {
+    long lastId = migrateNotes(dbHelper, marker, chunkSize);
+    return lastId == 0 ? COMPLETED : lastId;
+  }
+
+
+  /**
+   * @return Last note migrated, zero when there are no more
+   */
+  abstract long migrateNotes(DbHelper dbHelper, long afterId, int chunkSize);
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.upgrade;
+
+import it.feio.android.omninotes.OmniNotes;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.utils.ReminderHelper;
+
+
+/**
+ * Reschedule reminders after upgrade. Notes are streamed in a single chunk: scheduling is
+ * idempotent, so an interrupted run is simply repeated.
+ */
+class RemindersMigration extends DataMigration {
+
+  RemindersMigration() {
+    super(482);
+  }
+
+
+  @Override
+  int countRemaining(DbHelper dbHelper, long marker) {
+    return marker == COMPLETED ? 0 : 1;
+  }
+
+
+  @Override
+  long migrate(DbHelper dbHelper, long marker, int chunkSize) {
+    dbHelper.forEachNoteWithReminderNotFired(
+        note -> ReminderHelper.addReminder(OmniNotes.getAppContext(), note));
+    return COMPLETED;
+  }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.async.upgrade;
+
+import it.feio.android.omninotes.db.DbHelper;
+
+
+/**
+ * Hashtags index filling from notes content
+ */
+class TagsIndexMigration extends NotesMigration {
+
+  TagsIndexMigration() {
+    super(629);
+  }
+
+
+  @Override
+  long migrateNotes(DbHelper dbHelper, long afterId, int chunkSize) {
+    return dbHelper.rebuildTagsIndex(afterId, chunkSize);
+  }
+
+}
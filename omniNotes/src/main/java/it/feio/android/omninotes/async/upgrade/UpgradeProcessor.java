@@ -17,183 +17,133 @@
 
 package it.feio.android.omninotes.async.upgrade;
 
-import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_AUDIO;
-import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_AUDIO_EXT;
-import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_FILES;
-import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_IMAGE;
-import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_VIDEO;
-import static java.lang.Integer.parseInt;
-import static rx.Observable.from;
-
-import android.content.ContentValues;
-import android.net.Uri;
-import android.text.TextUtils;
-import it.feio.android.omninotes.OmniNotes;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_MIGRATED_VERSION;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_MIGRATION_MARKER;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.LongSparseArray;
+import com.pixplicity.easyprefs.library.Prefs;
+import de.greenrobot.event.EventBus;
+import it.feio.android.omninotes.async.bus.DataMigrationEvent;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.helpers.LogDelegate;
-import it.feio.android.omninotes.models.Attachment;
-import it.feio.android.omninotes.models.Note;
-import it.feio.android.omninotes.utils.ReminderHelper;
-import it.feio.android.omninotes.utils.StorageHelper;
-import java.io.File;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import org.apache.commons.io.FilenameUtils;
 
 
 /**
- * Processor used to perform asynchronous tasks on database upgrade. It's not intended to be used to
- * perform actions strictly related to DB (for this {@link it.feio.android.omninotes.db.DbHelper#onUpgrade(android.database.sqlite.SQLiteDatabase,
- * int, int)} DbHelper.onUpgrade()} is used
+ * Processor used to perform data migrations on database upgrade. It's not intended to be used to
+ * perform actions strictly related to DB schema (for this {@link it.feio.android.omninotes.db.DbHelper#onUpgrade(android.database.sqlite.SQLiteDatabase,
+ * int, int)} DbHelper.onUpgrade()} is used): while upgrading, migrations are only scheduled, then
+ * run in background chunk by chunk. Progress is persisted after each chunk so that an interrupted
+ * migration is resumed on next application start.
  */
 public class UpgradeProcessor {
 
-  private static final String METHODS_PREFIX = "onUpgradeTo";
+  static final int CHUNK_SIZE = 200;
 
-  private static UpgradeProcessor instance;
+  /**
+   * Registered migrations, in the order they must be run
+   */
+  private static final List<DataMigration> MIGRATIONS = Arrays.asList(
+      new AttachmentsMimeTypeMigration(),
+      new AudioAttachmentsMigration(),
+      new RemindersMigration(),
+      new AttachmentsUriMigration(),
+      new TagsIndexMigration(),
+      new TextCountersMigration()
+  );
+
+  private static final Object migrationsLock = new Object();
 
 
   private UpgradeProcessor() {
   }
 
 
-  private static UpgradeProcessor getInstance() {
-    if (instance == null) {
-      instance = new UpgradeProcessor();
-    }
-    return instance;
-  }
-
-  public static void process(int dbOldVersion, int dbNewVersion)
-      throws InvocationTargetException, IllegalAccessException {
-    try {
-      var methodsToLaunch = getInstance().getMethodsToLaunch(dbOldVersion, dbNewVersion);
-      for (Method methodToLaunch : methodsToLaunch) {
-        LogDelegate.d("Running upgrade processing method: " + methodToLaunch.getName());
-        methodToLaunch.invoke(getInstance());
-      }
-    } catch (SecurityException | IllegalAccessException | InvocationTargetException e) {
-      LogDelegate.e("Explosion processing upgrade!", e);
-      throw e;
+  /**
+   * Schedules the data migrations introduced after the old database version. If some of them were
+   * already pending they're kept.
+   */
+  public static void schedule(int dbOldVersion) {
+    int migratedVersion = Math.min(Prefs.getInt(PREF_MIGRATED_VERSION, dbOldVersion),
+        dbOldVersion);
+    if (migratedVersion != dbOldVersion) {
+      LogDelegate.i("Data migrations from version " + migratedVersion + " were still pending");
     }
+    Prefs.edit().putInt(PREF_MIGRATED_VERSION, migratedVersion).commit();
   }
 
-  private List<Method> getMethodsToLaunch(int dbOldVersion, int dbNewVersion) {
-    return from(getInstance().getClass().getDeclaredMethods())
-        .filter(method -> method.getName().matches(METHODS_PREFIX + "\\d+"))
-        .filter(method -> {
-          int methodVersionPostfix = parseInt(method.getName().replace(METHODS_PREFIX, ""));
-          return dbOldVersion <= methodVersionPostfix && methodVersionPostfix <= dbNewVersion;
-        }).toList().toBlocking().single();
-  }
 
   /**
-   * Adjustment of all the old attachments without mimetype field set into DB
+   * Runs pending data migrations, if any, posting {@link DataMigrationEvent} as they progress.
+   * Database is opened (and upgraded if needed) so it must not be called on main thread.
    */
-  private void onUpgradeTo476() {
-    final DbHelper dbHelper = DbHelper.getInstance();
-    for (Attachment attachment : dbHelper.getAllAttachments()) {
-      if (attachment.getMime_type() == null) {
-        String mimeType = StorageHelper.getMimeType(attachment.getUri().toString());
-        if (!TextUtils.isEmpty(mimeType)) {
-          String type = mimeType.replaceFirst("/.*", "");
-          switch (type) {
-            case "image":
-              attachment.setMime_type(MIME_TYPE_IMAGE);
-              break;
-            case "video":
-              attachment.setMime_type(MIME_TYPE_VIDEO);
-              break;
-            case "audio":
-              attachment.setMime_type(MIME_TYPE_AUDIO);
-              break;
-            default:
-              attachment.setMime_type(MIME_TYPE_FILES);
-              break;
-          }
-          dbHelper.updateAttachment(attachment);
-        } else {
-          attachment.setMime_type(MIME_TYPE_FILES);
+  public static void runPendingMigrations() {
+    DbHelper dbHelper = DbHelper.getInstance();
+    dbHelper.getDatabase(true);
+    synchronized (migrationsLock) {
+      if (!Prefs.contains(PREF_MIGRATED_VERSION)) {
+        return;
+      }
+      for (DataMigration migration : MIGRATIONS) {
+        if (migration.getVersion() > Prefs.getInt(PREF_MIGRATED_VERSION, Integer.MAX_VALUE)) {
+          run(dbHelper, migration);
         }
       }
+      Prefs.edit().remove(PREF_MIGRATED_VERSION).remove(PREF_MIGRATION_MARKER).commit();
     }
   }
 
-  /**
-   * Upgrades all the old audio attachments to the new format 3gpp to avoid mixing with videos
-   */
-  private void onUpgradeTo480() {
-    final DbHelper dbHelper = DbHelper.getInstance();
-    for (Attachment attachment : dbHelper.getAllAttachments()) {
-      if ("audio/3gp".equals(attachment.getMime_type()) || "audio/3gpp"
-          .equals(attachment.getMime_type
-              ())) {
-
-        File from = new File(attachment.getUriPath());
-        FilenameUtils.getExtension(from.getName());
-        File to = new File(from.getParent(), from.getName().replace(FilenameUtils.getExtension(from
-            .getName()), MIME_TYPE_AUDIO_EXT));
-        boolean successRenaming = from.renameTo(to);
-
-        if (successRenaming) {
-          attachment.setUri(Uri.fromFile(to));
-          attachment.setMime_type(MIME_TYPE_AUDIO);
-          dbHelper.updateAttachment(attachment);
-        } else {
-          LogDelegate.e("onUpgradeTo480 - Error renaming attachment: " + attachment.getName());
-        }
 
-      }
+  private static void run(DbHelper dbHelper, DataMigration migration) {
+    long marker = Prefs.getLong(PREF_MIGRATION_MARKER, 0);
+    LogDelegate.i("Running data migration " + migration.getVersion()
+        + (marker > 0 ? " from marker " + marker : ""));
+    int total = migration.countRemaining(dbHelper, 0);
+    while (marker != DataMigration.COMPLETED) {
+      marker = migration.migrate(dbHelper, marker, CHUNK_SIZE);
+      Prefs.edit().putLong(PREF_MIGRATION_MARKER, marker).commit();
+      EventBus.getDefault().post(new DataMigrationEvent(migration.getVersion(),
+          total - migration.countRemaining(dbHelper, marker), total));
     }
+    Prefs.edit()
+        .putInt(PREF_MIGRATED_VERSION, migration.getVersion())
+        .remove(PREF_MIGRATION_MARKER)
+        .commit();
   }
 
-  /**
-   * Reschedule reminders after upgrade
-   */
-  private void onUpgradeTo482() {
-    for (Note note : DbHelper.getInstance().getNotesWithReminderNotFired()) {
-      ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
-    }
-  }
 
   /**
-   * Ensures that no duplicates will be found during the creation-to-ID transition
+   * Ensures that no duplicates will be found during the creation-to-ID transition. Being a
+   * prerequisite of version 501 schema it's run while upgrading, on the old notes table: notes are
+   * walked by creation and duplicates are shifted just after the previous one, so that shifting
+   * never produces new collisions.
    */
-  private void onUpgradeTo501() {
-    List<Long> creations = new ArrayList<>();
-    for (Note note : DbHelper.getInstance().getAllNotes(false)) {
-      if (creations.contains(note.getCreation())) {
-
-        ContentValues values = new ContentValues();
-        values.put(DbHelper.KEY_CREATION, note.getCreation() + (long) (Math.random() * 999));
-        DbHelper.getInstance().getDatabase()
-            .update(DbHelper.TABLE_NOTES, values, DbHelper.KEY_TITLE +
-                    " = ? AND " + DbHelper.KEY_CREATION + " = ? AND " + DbHelper.KEY_CONTENT + " = ?",
-                new String[]{note
-                    .getTitle(), String.valueOf(note.getCreation()), note.getContent()});
+  public static void ensureUniqueCreations(SQLiteDatabase db) {
+    LongSparseArray<Long> shiftedCreations = new LongSparseArray<>();
+    long lastCreation = Long.MIN_VALUE;
+    try (Cursor cursor = db.rawQuery("SELECT note_id, creation FROM notes"
+        + " ORDER BY creation, note_id", null)) {
+      while (cursor.moveToNext()) {
+        long creation = cursor.getLong(1);
+        if (creation <= lastCreation) {
+          creation = lastCreation + 1;
+          shiftedCreations.put(cursor.getLong(0), creation);
+        }
+        lastCreation = creation;
       }
-      creations.add(note.getCreation());
     }
-  }
-
-  /**
-   * Attachment uri replacement
-   */
-  private void onUpgradeTo625() {
-    var attachmentsDir = StorageHelper.getAttachmentDir();
-    var dbHelper = DbHelper.getInstance();
-    from(dbHelper.getAllAttachments())
-        .filter(attachment -> "content".equals(attachment.getUri().getScheme()))
-        .forEach(attachment -> {
-      var fileName = attachment.getUri().getPathSegments().get(attachment.getUri().getPathSegments().size() - 1);
-      var file = new File(attachmentsDir + "/" + fileName);
-      if (file.exists()) {
-        attachment.setUri(Uri.fromFile(file));
-        dbHelper.updateAttachment(attachment);
-      }
-    });
+    SQLiteStatement update = db.compileStatement("UPDATE notes SET creation = ? WHERE note_id = ?");
+    for (int i = 0; i < shiftedCreations.size(); i++) {
+      update.bindLong(1, shiftedCreations.valueAt(i));
+      update.bindLong(2, shiftedCreations.keyAt(i));
+      update.executeUpdateDelete();
+    }
+    update.close();
+    LogDelegate.i("Shifted " + shiftedCreations.size() + " duplicated notes creations");
   }
 
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import it.feio.android.omninotes.exceptions.DatabaseException;
+import it.feio.android.omninotes.models.Note;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import lombok.experimental.UtilityClass;
+
+
+/**
+ * Deflate compression of notes content. Compressed notes keep in content column just a plain
+ * preview, long enough for summaries and title sorting, so that lists never decompress anything,
+ * while the whole content is inflated only when the note is read in full.
+ */
+@UtilityClass
+class ContentCodec {
+
+  static final int CODEC_NONE = 0;
+  static final int CODEC_DEFLATE = 1;
+
+  // Content length from which notes are compressed
+  static final int COMPRESSION_THRESHOLD = 16 * 1024;
+  // Archived notes are seldom opened, so are compressed from a much shorter length
+  static final int ARCHIVED_COMPRESSION_THRESHOLD = 1024;
+  // Length of plain content kept beside compressed one, as summaries one
+  static final int PREVIEW_LENGTH = 400;
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+
+  /**
+   * Locked notes content is encrypted, so not compressible, and checklists are kept plain to let
+   * uncompleted ones be found by SQL
+   */
+  static boolean isCompressible(Note note, String content) {
+    if (content == null || Boolean.TRUE.equals(note.isLocked())
+        || Boolean.TRUE.equals(note.isChecklist())) {
+      return false;
+    }
+    return content.length() >= (Boolean.TRUE.equals(note.isArchived())
+        ? ARCHIVED_COMPRESSION_THRESHOLD
+        : COMPRESSION_THRESHOLD);
+  }
+
+
+  /**
+   * @return Compressed content, or null if it wouldn't take less space than the plain one
+   */
+  static byte[] compress(String content) {
+    byte[] plain = content.getBytes(StandardCharsets.UTF_8);
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    try {
+      deflater.setInput(plain);
+      deflater.finish();
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(plain.length / 4);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      while (!deflater.finished()) {
+        compressed.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return compressed.size() + getPreview(content).length() < plain.length
+          ? compressed.toByteArray()
+          : null;
+    } finally {
+      deflater.end();
+    }
+  }
+
+
+  static String decompress(byte[] compressed) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      ByteArrayOutputStream plain = new ByteArrayOutputStream(compressed.length * 4);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      while (!inflater.finished()) {
+        int length = inflater.inflate(buffer);
+        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DataFormatException("Truncated content");
+        }
+        plain.write(buffer, 0, length);
+      }
+      return new String(plain.toByteArray(), StandardCharsets.UTF_8);
+    } catch (DataFormatException e) {
+      throw new DatabaseException("Compressed content is corrupted", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+
+  /**
+   * Beginning of the content stored plain beside the compressed one, without splitting surrogate
+   * pairs
+   */
+  static String getPreview(String content) {
+    if (content.length() <= PREVIEW_LENGTH) {
+      return content;
+    }
+    int end = Character.isHighSurrogate(content.charAt(PREVIEW_LENGTH - 1))
+        ? PREVIEW_LENGTH - 1
+        : PREVIEW_LENGTH;
+    return content.substring(0, end);
+  }
+
+}
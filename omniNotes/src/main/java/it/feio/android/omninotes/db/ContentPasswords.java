@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_KEY_VERSION;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_PREVIOUS;
+
+import androidx.annotation.Nullable;
+import com.pixplicity.easyprefs.library.Prefs;
+
+
+/**
+ * Passwords locked notes content is encrypted with, read once for each query. While a password
+ * change is in progress the notes not yet re-encrypted, recognizable by their key version, still
+ * use the previous one.
+ */
+final class ContentPasswords {
+
+  private final String password;
+  @Nullable
+  private final String previousPassword;
+  private final int keyVersion;
+
+
+  private ContentPasswords(String password, @Nullable String previousPassword, int keyVersion) {
+    this.password = password;
+    this.previousPassword = previousPassword;
+    this.keyVersion = keyVersion;
+  }
+
+
+  static ContentPasswords fromPrefs() {
+    return new ContentPasswords(Prefs.getString(PREF_PASSWORD, ""),
+        Prefs.getString(PREF_PASSWORD_PREVIOUS, null), Prefs.getInt(PREF_PASSWORD_KEY_VERSION, 0));
+  }
+
+
+  String getPassword() {
+    return password;
+  }
+
+
+  @Nullable
+  String getPreviousPassword() {
+    return previousPassword;
+  }
+
+
+  int getKeyVersion() {
+    return keyVersion;
+  }
+
+
+  /**
+   * Password the content of a note with the given key version is encrypted with
+   */
+  String forKeyVersion(int noteKeyVersion) {
+    return noteKeyVersion == keyVersion || previousPassword == null ? password : previousPassword;
+  }
+}
@@ -16,52 +16,66 @@
  */
 package it.feio.android.omninotes.db;
 
-import static android.database.sqlite.SQLiteDatabase.CONFLICT_REPLACE;
-import static it.feio.android.checklistview.interfaces.Constants.UNCHECKED_SYM;
 import static it.feio.android.omninotes.utils.Constants.DATABASE_NAME;
 import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_AUDIO;
 import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_FILES;
 import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_IMAGE;
 import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_SKETCH;
 import static it.feio.android.omninotes.utils.ConstantsBase.MIME_TYPE_VIDEO;
-import static it.feio.android.omninotes.utils.ConstantsBase.PREF_FILTER_ARCHIVED_IN_CATEGORIES;
-import static it.feio.android.omninotes.utils.ConstantsBase.PREF_FILTER_PAST_REMINDERS;
-import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_DB_CACHE_SIZE;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_DB_MMAP_SIZE;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_DB_SYNCHRONOUS;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_DB_TEMP_STORE;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_DB_WAL;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_SORTING_COLUMN;
 import static it.feio.android.omninotes.utils.ConstantsBase.TIMESTAMP_UNIX_EPOCH;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.LongSparseArray;
+import androidx.annotation.Nullable;
 import com.pixplicity.easyprefs.library.Prefs;
+import de.greenrobot.event.EventBus;
 import it.feio.android.omninotes.OmniNotes;
+import it.feio.android.omninotes.async.bus.NotesChangedEvent;
 import it.feio.android.omninotes.async.upgrade.UpgradeProcessor;
 import it.feio.android.omninotes.exceptions.DatabaseException;
+import it.feio.android.omninotes.exceptions.unchecked.EncryptionException;
 import it.feio.android.omninotes.helpers.LogDelegate;
 import it.feio.android.omninotes.helpers.NotesHelper;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.NoteSummary;
 import it.feio.android.omninotes.models.Stats;
 import it.feio.android.omninotes.models.Tag;
 import it.feio.android.omninotes.utils.AssetUtils;
+import it.feio.android.omninotes.utils.CryptoService;
 import it.feio.android.omninotes.utils.Navigation;
 import it.feio.android.omninotes.utils.Security;
 import it.feio.android.omninotes.utils.TagsHelper;
+import it.feio.android.omninotes.utils.date.DateUtils;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Objects;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.StringUtils;
 
 
@@ -69,7 +83,11 @@ public class DbHelper extends SQLiteOpenHelper {
 
   // Database name
   // Database version aligned if possible to software version
-  private static final int DATABASE_VERSION = 625;
+  private static final int DATABASE_VERSION = 634;
+  // Version using notes creation as key, which must be made unique before upgrade
+  private static final int CREATION_KEY_VERSION = 501;
+  // Max IDs bound to a single bulk statement, within SQLite variables limit of older versions
+  private static final int BULK_IDS_CHUNK_SIZE = 500;
   // Sql query file directory
   private static final String SQL_DIR = "sql";
 
@@ -92,6 +110,12 @@ public class DbHelper extends SQLiteOpenHelper {
   public static final String KEY_CATEGORY = "category_id";
   public static final String KEY_LOCKED = "locked";
   public static final String KEY_CHECKLIST = "checklist";
+  public static final String KEY_WORDS = "words";
+  public static final String KEY_CHARS = "chars";
+  public static final String KEY_KEY_VERSION = "key_version";
+  public static final String KEY_CONTENT_CODEC = "content_codec";
+  public static final String KEY_CONTENT_COMPRESSED = "content_compressed";
+  public static final String KEY_TITLE_SORT_KEY = "title_sort_key";
 
   // Attachments table name
   public static final String TABLE_ATTACHMENTS = "attachments";
@@ -111,17 +135,71 @@ public class DbHelper extends SQLiteOpenHelper {
   public static final String KEY_CATEGORY_NAME = "name";
   public static final String KEY_CATEGORY_DESCRIPTION = "description";
   public static final String KEY_CATEGORY_COLOR = "color";
+  public static final String KEY_CATEGORY_NOTES_COUNT = "notes_count";
+
+  // Note hashtags table name
+  public static final String TABLE_NOTE_TAGS = "note_tags";
+  // Note hashtags table columns
+  public static final String KEY_NOTE_TAGS_NOTE_ID = "note_id";
+  public static final String KEY_NOTE_TAGS_TAG = "tag";
+  public static final String KEY_NOTE_TAGS_TRASHED = "trashed";
+
+  // Hashtags counters table name
+  public static final String TABLE_TAGS = "tags";
+  // Hashtags counters table columns
+  public static final String KEY_TAGS_TAG = "tag";
+  public static final String KEY_TAGS_COUNT = "count";
+
+  // Navigation counters table name
+  public static final String TABLE_COUNTERS = "counters";
+  // Navigation counters table columns
+  public static final String KEY_COUNTERS_NAME = "name";
+  public static final String KEY_COUNTERS_COUNT = "count";
+  // Navigation counters names
+  public static final String COUNTER_TRASHED = "trashed";
+  public static final String COUNTER_ARCHIVED = "archived";
+  public static final String COUNTER_REMINDERS = "reminders";
+  public static final String COUNTER_UNCATEGORIZED = "uncategorized";
+
+  // Full-text search virtual table name
+  public static final String TABLE_NOTES_FTS = "notes_fts";
+  static final String FTS5_MODULE = "fts5";
 
   // Queries
   private static final String CREATE_QUERY = "create.sql";
   private static final String UPGRADE_QUERY_PREFIX = "upgrade-";
   private static final String UPGRADE_QUERY_SUFFIX = ".sql";
+  // Connection tuning defaults, overridable by preferences
+  private static final int DEFAULT_CACHE_SIZE_KB = 8192;
+  private static final long DEFAULT_MMAP_SIZE = 32L * 1024 * 1024;
+  private static final String DEFAULT_SYNCHRONOUS = "NORMAL";
+  private static final String DEFAULT_TEMP_STORE = "MEMORY";
+  // Length of content retrieved for note summaries, a little longer than the one shown in lists
+  private static final int SUMMARY_CONTENT_LENGTH = 400;
+  private static final String SUMMARY_ATTACHMENTS_COUNT = "attachments_count";
+  // Notes that may have hashtags, with whole content columns in readStoredContent() order
+  private static final String TAGGED_NOTES_QUERY = "SELECT " + KEY_CREATION + "," + KEY_TITLE
+      + "," + KEY_CONTENT + "," + KEY_LOCKED + "," + KEY_TRASHED + "," + KEY_KEY_VERSION + ","
+      + KEY_CONTENT_COMPRESSED + " FROM " + TABLE_NOTES + " WHERE " + KEY_TITLE + " LIKE '%#%' OR "
+      + KEY_CONTENT + " LIKE '%#%' OR " + KEY_LOCKED + " = 1 OR " + KEY_CONTENT_CODEC + " != "
+      + ContentCodec.CODEC_NONE;
+  // Columns notes can be sorted by, the only ones allowed in ORDER BY clauses
+  private static final List<String> SORTABLE_COLUMNS = Arrays.asList(KEY_TITLE, KEY_CREATION,
+      KEY_LAST_MODIFICATION, KEY_REMINDER);
+  // Max number of notes whose attachments are retrieved with a single query
+  private static final int ATTACHMENTS_QUERY_CHUNK_SIZE = 500;
+  private static final int AUTO_VACUUM_INCREMENTAL = 2;
 
 
   private final Context mContext;
 
   private static DbHelper instance = null;
   private SQLiteDatabase db;
+  private String ftsModule;
+  private final AtomicLong dataVersion = new AtomicLong();
+  private final NotesWriter notesWriter = new NotesWriter();
+  private final EntitiesCache entitiesCache = new EntitiesCache();
+  private final DbWriter dbWriter = new DbWriter(this);
 
 
   public static synchronized DbHelper getInstance() {
@@ -150,6 +228,8 @@ public class DbHelper extends SQLiteOpenHelper {
   private DbHelper(Context mContext) {
     super(mContext, DATABASE_NAME, null, DATABASE_VERSION);
     this.mContext = mContext;
+    // With write-ahead logging a pool of connections lets reads run concurrently with writes
+    setWriteAheadLoggingEnabled(Prefs.getBoolean(PREF_DB_WAL, false));
   }
 
 
@@ -169,12 +249,128 @@ public class DbHelper extends SQLiteOpenHelper {
     }
   }
 
+  /**
+   * Configures the primary connection, the only one writes go through. With write-ahead logging
+   * enabled the framework opens further read-only connections without any hook to configure them,
+   * so queries running there use SQLite defaults for cache_size, mmap_size and temp_store. The
+   * synchronous mode of those connections is irrelevant, since they never write, and auto_vacuum is
+   * a property of the database file.
+   */
+  @Override
+  public void onConfigure(SQLiteDatabase db) {
+    super.onConfigure(db);
+    // Queries values are bound as parameters so their compiled statements can be reused
+    db.setMaxSqlCacheSize(SQLiteDatabase.MAX_SQL_CACHE_SIZE);
+    execPragma(db, "cache_size", String.valueOf(-Prefs.getInt(PREF_DB_CACHE_SIZE,
+        DEFAULT_CACHE_SIZE_KB)));
+    execPragma(db, "mmap_size", String.valueOf(Prefs.getLong(PREF_DB_MMAP_SIZE,
+        DEFAULT_MMAP_SIZE)));
+    execPragma(db, "synchronous", Prefs.getString(PREF_DB_SYNCHRONOUS, DEFAULT_SYNCHRONOUS));
+    execPragma(db, "temp_store", Prefs.getString(PREF_DB_TEMP_STORE, DEFAULT_TEMP_STORE));
+    // Effective on new databases only, existing ones are converted by maintenance's first VACUUM
+    execPragma(db, "auto_vacuum", "INCREMENTAL");
+  }
+
+  /**
+   * Pragmas may return the new value as result row so they're executed as queries
+   */
+  private void execPragma(SQLiteDatabase db, String pragma, String value) {
+    try (Cursor cursor = db.rawQuery("PRAGMA " + pragma + " = " + value, null)) {
+      cursor.moveToFirst();
+    } catch (SQLException e) {
+      LogDelegate.w("Error setting pragma " + pragma + " to " + value, e);
+    }
+  }
+
   @Override
   public void onOpen(SQLiteDatabase db) {
-    db.disableWriteAheadLogging();
+    if (!Prefs.getBoolean(PREF_DB_WAL, false)) {
+      db.disableWriteAheadLogging();
+    }
     super.onOpen(db);
   }
 
+  @Override
+  public synchronized void close() {
+    synchronized (notesWriter) {
+      notesWriter.release();
+    }
+    super.close();
+  }
+
+  /**
+   * Merges write-ahead log content into the main database file and truncates it. It's a no-op when
+   * write-ahead logging is not enabled.
+   */
+  public void checkpoint() {
+    SQLiteDatabase database = getDatabase(true);
+    if (database.isWriteAheadLoggingEnabled()) {
+      try (Cursor cursor = database.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+        cursor.moveToFirst();
+      }
+    }
+  }
+
+  /**
+   * Updates query planner statistics
+   */
+  void analyze() {
+    dbWriter.writeExclusive(() -> {
+      getDatabase(true).execSQL("ANALYZE");
+      return null;
+    });
+  }
+
+  /**
+   * Lets SQLite apply the optimizations it deems useful
+   */
+  void optimize() {
+    dbWriter.writeExclusive(() -> {
+      try (Cursor cursor = getDatabase(true).rawQuery("PRAGMA optimize", null)) {
+        cursor.moveToFirst();
+      }
+      return null;
+    });
+  }
+
+  /**
+   * @return Size in bytes of database pages not used anymore
+   */
+  long getFreeSpace() {
+    SQLiteDatabase database = getDatabase();
+    return DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null)
+        * DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+  }
+
+  private long getDatabaseSize(SQLiteDatabase database) {
+    return DatabaseUtils.longForQuery(database, "PRAGMA page_count", null)
+        * DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+  }
+
+  /**
+   * Gives free pages back to the file system. Databases created before incremental vacuum was
+   * enabled are rebuilt by a full VACUUM, that converts them too.
+   *
+   * @return Reclaimed bytes
+   */
+  long reclaimFreeSpace() {
+    return dbWriter.writeExclusive(() -> {
+      SQLiteDatabase database = getDatabase(true);
+      long sizeBefore = getDatabaseSize(database);
+      if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null)
+          == AUTO_VACUUM_INCREMENTAL) {
+        // A page is released at each step, filling the cursor steps the pragma until done
+        try (Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum", null)) {
+          cursor.moveToFirst();
+        }
+      } else {
+        execPragma(database, "auto_vacuum", "INCREMENTAL");
+        database.execSQL("VACUUM");
+      }
+      return sizeBefore - getDatabaseSize(database);
+    });
+  }
+
   @Override
   public void onCreate(SQLiteDatabase db) {
     try {
@@ -192,8 +388,9 @@ public class DbHelper extends SQLiteOpenHelper {
     LogDelegate.i("Upgrading database version from " + oldVersion + " to " + newVersion);
 
     try {
-      UpgradeProcessor.process(oldVersion, newVersion);
-
+      if (oldVersion < CREATION_KEY_VERSION && CREATION_KEY_VERSION <= newVersion) {
+        UpgradeProcessor.ensureUniqueCreations(db);
+      }
       for (String sqlFile : AssetUtils.list(SQL_DIR, mContext.getAssets())) {
         if (sqlFile.startsWith(UPGRADE_QUERY_PREFIX)) {
           int fileVersion = Integer.parseInt(sqlFile.substring(UPGRADE_QUERY_PREFIX.length(),
@@ -203,70 +400,192 @@ public class DbHelper extends SQLiteOpenHelper {
           }
         }
       }
+      // Data derived from notes content (hashtags index, text counters) is filled in background
+      UpgradeProcessor.schedule(oldVersion);
       LogDelegate.i("Database upgrade successful");
 
-    } catch (IOException | InvocationTargetException | IllegalAccessException e) {
+    } catch (IOException e) {
       throw new RuntimeException("Database upgrade failed", e);
     }
   }
 
 
   public Note updateNote(Note note, boolean updateLastModification) {
-    db = getDatabase(true);
+    updateNotes(Collections.singletonList(note), updateLastModification);
+    return note;
+  }
+
 
-    String content = Boolean.TRUE.equals(note.isLocked())
-        ? Security.encrypt(note.getContent(), Prefs.getString(PREF_PASSWORD, ""))
-        : note.getContent();
+  /**
+   * Queues a note insertion or update, returning immediately
+   */
+  public Future<Note> updateNoteAsync(Note note, boolean updateLastModification) {
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    List<Note> notes = Collections.singletonList(note);
+    List<String> contents = getStoredContents(notes, passwords.getPassword());
+    List<byte[]> compressedContents = getCompressedContents(notes, contents);
+    return dbWriter.submit(() -> {
+      writeNotes(notes, updateLastModification, contents, compressedContents,
+          passwords.getKeyVersion());
+      return note;
+    });
+  }
 
-    // To ensure note and attachments insertions are atomic and boost performances transaction are used
-    db.beginTransaction();
 
-    ContentValues values = new ContentValues();
-    values.put(KEY_TITLE, note.getTitle());
-    values.put(KEY_CONTENT, content);
-    values.put(KEY_CREATION,
-        note.getCreation() != null ? note.getCreation() : Calendar.getInstance().getTimeInMillis());
+  /**
+   * Inserts or updates notes, together with their attachments, within a single transaction
+   */
+  public List<Note> updateNotes(List<Note> notes, boolean updateLastModification) {
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    List<String> contents = getStoredContents(notes, passwords.getPassword());
+    List<byte[]> compressedContents = getCompressedContents(notes, contents);
+    return dbWriter.write(() -> writeNotes(notes, updateLastModification, contents,
+        compressedContents, passwords.getKeyVersion()));
+  }
+
+
+  /**
+   * Queues notes insertion or update, returning immediately. Locked notes contents are encrypted,
+   * and large ones compressed, by the calling thread, to keep the writer busy just with writing.
+   */
+  public Future<List<Note>> updateNotesAsync(List<Note> notes, boolean updateLastModification) {
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    List<String> contents = getStoredContents(notes, passwords.getPassword());
+    List<byte[]> compressedContents = getCompressedContents(notes, contents);
+    return dbWriter.submit(() -> writeNotes(notes, updateLastModification, contents,
+        compressedContents, passwords.getKeyVersion()));
+  }
+
+
+  private List<Note> writeNotes(List<Note> notes, boolean updateLastModification,
+      List<String> contents, List<byte[]> compressedContents, int keyVersion) {
+    SQLiteDatabase db = getDatabase(true);
+    List<Long> insertedIds = new ArrayList<>();
+    List<Long> updatedIds = new ArrayList<>();
+
+    synchronized (notesWriter) {
+      notesWriter.prepare(db);
+      // To ensure note and attachments insertions are atomic and boost performances transaction are used
+      db.beginTransaction();
+      try {
+        long lastGeneratedCreation = 0;
+        for (int i = 0; i < notes.size(); i++) {
+          Note note = notes.get(i);
+          if (note.getCreation() == null) {
+            // Notes created within the same millisecond would otherwise share the same id
+            lastGeneratedCreation = Math.max(Calendar.getInstance().getTimeInMillis(),
+                lastGeneratedCreation + 1);
+            note.setCreation(lastGeneratedCreation);
+          }
+          if (writeNote(note, updateLastModification, contents.get(i),
+              compressedContents.get(i), keyVersion)) {
+            insertedIds.add(note.get_id());
+          } else {
+            updatedIds.add(note.get_id());
+          }
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+    }
+    notifyNotesChanged(insertedIds, updatedIds, Collections.emptyList());
+    return notes;
+  }
+
+
+  /**
+   * Contents to be stored for each note, the ones of locked notes are encrypted all together
+   */
+  private List<String> getStoredContents(List<Note> notes, String password) {
+    List<String> lockedContents = new ArrayList<>();
+    for (Note note : notes) {
+      if (Boolean.TRUE.equals(note.isLocked()) && !(note instanceof NoteSummary)) {
+        lockedContents.add(note.getContent());
+      }
+    }
+    Iterator<String> encryptedContents = CryptoService.encrypt(lockedContents, password).iterator();
+    List<String> contents = new ArrayList<>(notes.size());
+    for (Note note : notes) {
+      if (note instanceof NoteSummary) {
+        contents.add(null);
+      } else {
+        contents.add(Boolean.TRUE.equals(note.isLocked())
+            ? encryptedContents.next()
+            : note.getContent());
+      }
+    }
+    return contents;
+  }
+
+
+  /**
+   * Compressed contents of large and archived notes, null for the ones to be stored plain. Without
+   * full-text index searches match content by LIKE, which would miss text past the preview kept
+   * for compressed notes, so all of them are stored plain.
+   */
+  private List<byte[]> getCompressedContents(List<Note> notes, List<String> contents) {
+    List<byte[]> compressedContents = new ArrayList<>(notes.size());
+    boolean compressionAllowed = hasFullTextIndex();
+    for (int i = 0; i < notes.size(); i++) {
+      compressedContents.add(compressionAllowed
+          && ContentCodec.isCompressible(notes.get(i), contents.get(i))
+          ? ContentCodec.compress(contents.get(i))
+          : null);
+    }
+    return compressedContents;
+  }
+
+
+  /**
+   * @param content Content to be stored, already encrypted for locked notes
+   * @param compressedContent Content compressed, if it's worth to store it so
+   * @param keyVersion Version of the password content has been encrypted with
+   * @return True if the note has been inserted, false if already existing
+   */
+  private boolean writeNote(Note note, boolean updateLastModification, String content,
+      byte[] compressedContent, int keyVersion) {
+    long now = Calendar.getInstance().getTimeInMillis();
+    long creation = note.getCreation() != null ? note.getCreation() : now;
     long lastModification = note.getLastModification() != null && !updateLastModification
         ? note.getLastModification()
-        : Calendar.getInstance().getTimeInMillis();
-    values.put(KEY_LAST_MODIFICATION, lastModification);
-    values.put(KEY_ARCHIVED, note.isArchived());
-    values.put(KEY_TRASHED, note.isTrashed());
-    values.put(KEY_REMINDER, note.getAlarm());
-    values.put(KEY_REMINDER_FIRED, note.isReminderFired());
-    values.put(KEY_RECURRENCE_RULE, note.getRecurrenceRule());
-    values.put(KEY_LATITUDE, note.getLatitude());
-    values.put(KEY_LONGITUDE, note.getLongitude());
-    values.put(KEY_ADDRESS, note.getAddress());
-    values.put(KEY_CATEGORY, note.getCategory() != null ? note.getCategory().getId() : null);
-    values.put(KEY_LOCKED, note.isLocked() != null && note.isLocked());
-    values.put(KEY_CHECKLIST, note.isChecklist() != null && note.isChecklist());
-
-    db.insertWithOnConflict(TABLE_NOTES, KEY_ID, values, CONFLICT_REPLACE);
+        : now;
+
+    // Summaries don't carry the whole content and attachments, so stored ones are preserved
+    if (note instanceof NoteSummary) {
+      notesWriter.updateNoteMetadata(note, creation, lastModification);
+      notesWriter.updateNoteTagsTrashed(creation, Boolean.TRUE.equals(note.isTrashed()));
+      note.setLastModification(lastModification);
+      return false;
+    }
+
+    boolean inserted = notesWriter.saveNote(note, creation, lastModification,
+        compressedContent != null ? ContentCodec.getPreview(content) : content, compressedContent,
+        NotesHelper.getWords(note), NotesHelper.getChars(note), keyVersion);
+    if (compressedContent != null && hasFullTextIndex()) {
+      notesWriter.indexNoteContent(creation, note.getTitle(), content);
+    }
+    notesWriter.replaceNoteTags(creation, TagsHelper.retrieveTags(note).keySet(),
+        Boolean.TRUE.equals(note.isTrashed()));
     LogDelegate.d("Updated note titled '" + note.getTitle() + "'");
 
     // Updating attachments
     List<Attachment> deletedAttachments = note.getAttachmentsListOld();
     for (Attachment attachment : note.getAttachmentsList()) {
-      updateAttachment(note.get_id() != null ? note.get_id() : values.getAsLong(KEY_CREATION),
-          attachment, db);
+      notesWriter.insertAttachment(creation, attachment);
       deletedAttachments.remove(attachment);
     }
     // Remove from database deleted attachments
     for (Attachment attachmentDeleted : deletedAttachments) {
-      db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_ID + " = ?",
-          new String[]{String.valueOf(attachmentDeleted.getId())});
+      if (attachmentDeleted.getId() != null) {
+        notesWriter.deleteAttachment(attachmentDeleted.getId());
+      }
     }
 
-    db.setTransactionSuccessful();
-    db.endTransaction();
-
     // Fill the note with correct data before returning it
-    note.setCreation(
-        note.getCreation() != null ? note.getCreation() : values.getAsLong(KEY_CREATION));
-    note.setLastModification(values.getAsLong(KEY_LAST_MODIFICATION));
-
-    return note;
+    note.setCreation(creation);
+    note.setLastModification(lastModification);
+    return inserted;
   }
 
 
@@ -288,25 +607,34 @@ public class DbHelper extends SQLiteOpenHelper {
    * New attachment insertion
    */
   public Attachment updateAttachment(Attachment attachment) {
-    var noteId = attachment.getNoteId() != null ? attachment.getNoteId() : -1;
-    return updateAttachment(noteId, attachment, getDatabase(true));
+    return dbWriter.write(() -> writeAttachment(attachment));
   }
 
 
   /**
-   * Attachments update
+   * Updates attachments within a single transaction
    */
-  public Attachment updateAttachment(long noteId, Attachment attachment, SQLiteDatabase db) {
-    var valuesAttachments = new ContentValues();
-    valuesAttachments.put(KEY_ATTACHMENT_ID,
-        attachment.getId() != null ? attachment.getId() : Calendar.getInstance().getTimeInMillis());
-    valuesAttachments.put(KEY_ATTACHMENT_NOTE_ID, noteId);
-    valuesAttachments.put(KEY_ATTACHMENT_URI, attachment.getUri().toString());
-    valuesAttachments.put(KEY_ATTACHMENT_MIME_TYPE, attachment.getMime_type());
-    valuesAttachments.put(KEY_ATTACHMENT_NAME, attachment.getName());
-    valuesAttachments.put(KEY_ATTACHMENT_SIZE, attachment.getSize());
-    valuesAttachments.put(KEY_ATTACHMENT_LENGTH, attachment.getLength());
-    db.insertWithOnConflict(TABLE_ATTACHMENTS, KEY_ATTACHMENT_ID, valuesAttachments, CONFLICT_REPLACE);
+  public void updateAttachments(List<Attachment> attachments) {
+    dbWriter.write(() -> {
+      for (Attachment attachment : attachments) {
+        writeAttachment(attachment);
+      }
+      return null;
+    });
+  }
+
+
+  private Attachment writeAttachment(Attachment attachment) {
+    var noteId = attachment.getNoteId() != null ? attachment.getNoteId() : -1;
+    // Opening the database locks the helper, which close() holds while waiting for the writer
+    SQLiteDatabase database = getDatabase(true);
+    synchronized (notesWriter) {
+      notesWriter.prepare(database);
+      notesWriter.insertAttachment(noteId, attachment);
+    }
+    synchronized (entitiesCache) {
+      entitiesCache.removeNotes(Collections.singletonList(noteId));
+    }
     return attachment;
   }
 
@@ -315,8 +643,56 @@ public class DbHelper extends SQLiteOpenHelper {
    * Getting single note
    */
   public Note getNote(long id) {
-    List<Note> notes = getNotes(" WHERE " + KEY_ID + " = " + id, true);
-    return notes.isEmpty() ? null : notes.get(0);
+    Note note;
+    long version;
+    synchronized (entitiesCache) {
+      note = entitiesCache.getNote(id);
+      version = dataVersion.get();
+    }
+    if (note != null) {
+      return note;
+    }
+
+    List<Note> notes = getNotes("", " WHERE " + KEY_ID + " = ?",
+        new String[]{String.valueOf(id)}, "");
+    if (notes.isEmpty()) {
+      return null;
+    }
+    synchronized (entitiesCache) {
+      // Notes changed meanwhile could have been read before the change
+      if (version == dataVersion.get()) {
+        entitiesCache.putNote(notes.get(0));
+      }
+    }
+    return notes.get(0);
+  }
+
+
+  /**
+   * Retrieves whole notes by their IDs
+   */
+  public List<Note> getNotesById(List<Long> ids) {
+    return getNotesById(ids, false);
+  }
+
+
+  /**
+   * Retrieves notes summaries by their IDs
+   */
+  public List<Note> getNoteSummariesById(List<Long> ids) {
+    return getNotesById(ids, true);
+  }
+
+
+  private List<Note> getNotesById(List<Long> ids, boolean summary) {
+    List<Note> notes = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i += BULK_IDS_CHUNK_SIZE) {
+      String[] args = toSelectionArgs(
+          ids.subList(i, Math.min(i + BULK_IDS_CHUNK_SIZE, ids.size())));
+      notes.addAll(getNotes("", " WHERE " + KEY_ID + getInCondition(args.length), args,
+          getSortCondition(null), summary, null));
+    }
+    return notes;
   }
 
 
@@ -328,99 +704,346 @@ public class DbHelper extends SQLiteOpenHelper {
    * @return Notes list
    */
   public List<Note> getAllNotes(Boolean checkNavigation) {
-    String whereCondition = "";
-    if (Boolean.TRUE.equals(checkNavigation)) {
-      int navigation = Navigation.getNavigation();
-      switch (navigation) {
-        case Navigation.NOTES:
-          return getNotesActive();
-        case Navigation.ARCHIVE:
-          return getNotesArchived();
-        case Navigation.REMINDERS:
-          return getNotesWithReminder(Prefs.getBoolean(PREF_FILTER_PAST_REMINDERS, false));
-        case Navigation.TRASH:
-          return getNotesTrashed();
-        case Navigation.UNCATEGORIZED:
-          return getNotesUncategorized();
-        case Navigation.CATEGORY:
-          return getNotesByCategory(Navigation.getCategory());
-        default:
-          return getNotes(whereCondition, true);
-      }
-    } else {
-      return getNotes(whereCondition, true);
-    }
+    return getNotes(Boolean.TRUE.equals(checkNavigation)
+        ? NoteQuery.navigation(Navigation.getNavigation())
+        : new NoteQuery());
+  }
+
+
+  /**
+   * Retrieves a page of the summaries of notes shown by current navigation, starting after the
+   * given note
+   *
+   * @param after Last note of the previous page, null to retrieve the first page
+   */
+  public List<Note> getAllNotesPage(@Nullable Note after, int pageSize) {
+    return getNotesPage(NoteQuery.navigation(Navigation.getNavigation()), after, pageSize, null);
+  }
+
 
+  /**
+   * Retrieves a page of the summaries of a category notes, starting after the given note
+   *
+   * @param after Last note of the previous page, null to retrieve the first page
+   */
+  public List<Note> getNotesByCategoryPage(Long categoryId, @Nullable Note after, int pageSize) {
+    return getNotesPage(NoteQuery.categoryNavigation(categoryId), after, pageSize, null);
   }
 
 
   public List<Note> getNotesActive() {
-    String whereCondition =
-        " WHERE " + KEY_ARCHIVED + " IS NOT 1 AND " + KEY_TRASHED + " IS NOT 1 ";
-    return getNotes(whereCondition, true);
+    return getNotes(NoteQuery.navigation(Navigation.NOTES));
+  }
+
+
+  public List<Note> getNotesActiveSummaries() {
+    return getNoteSummaries(NoteQuery.navigation(Navigation.NOTES));
   }
 
 
   public List<Note> getNotesArchived() {
-    String whereCondition = " WHERE " + KEY_ARCHIVED + " = 1 AND " + KEY_TRASHED + " IS NOT 1 ";
-    return getNotes(whereCondition, true);
+    return getNotes(NoteQuery.navigation(Navigation.ARCHIVE));
   }
 
 
   public List<Note> getNotesTrashed() {
-    String whereCondition = " WHERE " + KEY_TRASHED + " = 1 ";
-    return getNotes(whereCondition, true);
+    return getNotes(NoteQuery.navigation(Navigation.TRASH));
   }
 
 
   public List<Note> getNotesUncategorized() {
-    String whereCondition = " WHERE "
-        + "(" + KEY_CATEGORY_ID + " IS NULL OR " + KEY_CATEGORY_ID + " == 0) "
-        + "AND " + KEY_TRASHED + " IS NOT 1";
-    return getNotes(whereCondition, true);
+    return getNotes(NoteQuery.navigation(Navigation.UNCATEGORIZED));
   }
 
 
   public List<Note> getNotesWithLocation() {
-    String whereCondition = " WHERE " + KEY_LONGITUDE + " IS NOT NULL "
-        + "AND " + KEY_LONGITUDE + " != 0 ";
-    return getNotes(whereCondition, true);
+    return getNotes(new NoteQuery().withLocation());
   }
 
 
   /**
    * Common method for notes retrieval. It accepts a query to perform and returns matching records.
    */
-  public List<Note> getNotes(String whereCondition, boolean order) {
-    List<Note> noteList = new ArrayList<>();
+  public List<Note> getNotes(NoteQuery query) {
+    return getNotes(query, null);
+  }
+
+
+  /**
+   * Retrieves notes matching the query
+   *
+   * @param cancellationSignal Signal to abort the query while running, that then throws {@link
+   * OperationCanceledException}
+   */
+  public List<Note> getNotes(NoteQuery query, @Nullable CancellationSignal cancellationSignal) {
+    return getNotes(query, false, cancellationSignal);
+  }
 
-    String sortColumn = "";
-    String sortOrder = "";
 
+  /**
+   * Retrieves sorted {@link NoteSummary} of the notes matching the query, to be used for rendering
+   * lists
+   */
+  public List<Note> getNoteSummaries(NoteQuery query) {
+    return getNotes(query, true, null);
+  }
+
+
+  private List<Note> getNotes(NoteQuery query, boolean summary,
+      @Nullable CancellationSignal cancellationSignal) {
+    NoteQuery.Compiled compiled = query.compile(query.getText() != null ? getFtsModule() : null);
+    return getNotes(compiled.joinCondition, compiled.whereCondition,
+        compiled.args.toArray(new String[0]), getOrderCondition(query, compiled), summary,
+        cancellationSignal);
+  }
+
+
+  private String getOrderCondition(NoteQuery query, NoteQuery.Compiled compiled) {
+    if (compiled.ranked && query.getSortColumn() == null) {
+      return " ORDER BY fts_rank";
+    }
+    return query.isSorted() ? getSortCondition(query.getSortColumn()) : "";
+  }
+
+
+  /**
+   * Streams notes matching the query with a forward-only cursor, keeping in memory just a small
+   * window of them. Iterator must be closed when done.
+   */
+  public NotesIterator iterateNotes(NoteQuery query, NotesIterator.Projection projection) {
+    NoteQuery.Compiled compiled = query.compile(query.getText() != null ? getFtsModule() : null);
+    String sql = getNotesQuery(compiled.joinCondition, compiled.whereCondition,
+        getOrderCondition(query, compiled), false,
+        projection != NotesIterator.Projection.METADATA);
+    LogDelegate.v("Query: " + sql);
+    Cursor cursor = getDatabase().rawQuery(sql, compiled.args.toArray(new String[0]));
+    return new NotesIterator(this, cursor, projection, ContentPasswords.fromPrefs());
+  }
+
+
+  /**
+   * Runs the consumer on every note matching the query, without ever loading all of them in memory
+   */
+  public void forEachNote(NoteQuery query, NoteConsumer consumer) {
+    forEachNote(query, NotesIterator.Projection.FULL, consumer);
+  }
+
+
+  public void forEachNote(NoteQuery query, NotesIterator.Projection projection,
+      NoteConsumer consumer) {
+    try (NotesIterator notes = iterateNotes(query, projection)) {
+      while (notes.hasNext()) {
+        consumer.accept(notes.next());
+      }
+    }
+  }
+
+
+  /**
+   * Builds the ORDER BY clause based on user's sorting preferences. Creation is used as tiebreaker
+   * to have a deterministic order, needed by pagination.
+   */
+  private String getSortCondition(@Nullable String sortColumn) {
+    String column = getSortColumn(sortColumn);
+    String sortOrder = isSortAscending(column) ? " ASC" : " DESC";
+    return " ORDER BY " + getSortExpression(column) + sortOrder + ", " + KEY_CREATION + sortOrder
+        + " ";
+  }
+
+
+  /**
+   * Sorting column is concatenated into SQL, so unknown ones (i.e. from persisted queries) fall back
+   * on the preferred one, and then on title
+   */
+  private String getSortColumn(@Nullable String sortColumn) {
+    if (sortColumn != null) {
+      if (SORTABLE_COLUMNS.contains(sortColumn)) {
+        return sortColumn;
+      }
+      LogDelegate.w("Unknown sorting column " + sortColumn);
+    }
     // Getting sorting criteria from preferences. Reminder screen forces sorting.
     if (Navigation.checkNavigation(Navigation.REMINDERS)) {
-      sortColumn = KEY_REMINDER;
-    } else {
-      sortColumn = Prefs.getString(PREF_SORTING_COLUMN, KEY_TITLE);
-    }
-    if (order) {
-      sortOrder =
-          KEY_TITLE.equals(sortColumn) || KEY_REMINDER.equals(sortColumn) ? " ASC " : " DESC ";
+      return KEY_REMINDER;
     }
+    String preferredColumn = Prefs.getString(PREF_SORTING_COLUMN, KEY_TITLE);
+    return SORTABLE_COLUMNS.contains(preferredColumn) ? preferredColumn : KEY_TITLE;
+  }
 
-    // In case of title sorting criteria it must be handled empty title by concatenating content
-    sortColumn = KEY_TITLE.equals(sortColumn) ? KEY_TITLE + "||" + KEY_CONTENT : sortColumn;
+
+  private boolean isSortAscending(String sortColumn) {
+    return KEY_TITLE.equals(sortColumn) || KEY_REMINDER.equals(sortColumn);
+  }
+
+
+  private String getSortExpression(String sortColumn) {
+    // In case of title sorting criteria it must be handled empty title by concatenating content.
+    // Stored key is bounded and case-insensitive, and indexed to avoid sorting in a temporary tree.
+    if (KEY_TITLE.equals(sortColumn)) {
+      return KEY_TITLE_SORT_KEY;
+    }
 
     // In case of reminder sorting criteria the empty reminder notes must be moved on bottom of results
-    sortColumn = KEY_REMINDER.equals(sortColumn) ? "IFNULL(" + KEY_REMINDER + ", " +
-        "" + TIMESTAMP_UNIX_EPOCH + ")" : sortColumn;
+    if (KEY_REMINDER.equals(sortColumn)) {
+      return "IFNULL(" + KEY_REMINDER + ", " + TIMESTAMP_UNIX_EPOCH + ")";
+    }
+
+    return sortColumn;
+  }
+
+
+  /**
+   * Retrieves a page of the summaries of notes matching the query, starting after the given note.
+   * Keyset pagination on sorting column (and creation as tiebreaker) is used instead of OFFSET, so
+   * retrieving deep pages costs as much as the first one.
+   *
+   * @param after Last note of the previous page, null to retrieve the first page
+   * @param cancellationSignal Signal to abort the query while running, that then throws {@link
+   * OperationCanceledException}
+   */
+  public List<Note> getNotesPage(NoteQuery query, @Nullable Note after, int pageSize,
+      @Nullable CancellationSignal cancellationSignal) {
+    NoteQuery.Compiled compiled = query.compile(null);
+    String whereCondition = compiled.whereCondition;
+    List<String> selectionArgs = new ArrayList<>(compiled.args);
+    if (after != null) {
+      String keysetCondition = getKeysetCondition(after.get_id(), query.getSortColumn(),
+          selectionArgs);
+      if (keysetCondition == null) {
+        return new ArrayList<>();
+      }
+      whereCondition = (StringUtils.isBlank(whereCondition) ? " WHERE " : whereCondition + " AND ")
+          + "(" + keysetCondition + ")";
+    }
+    selectionArgs.add(String.valueOf(pageSize));
+    return getNotes(compiled.joinCondition, whereCondition,
+        selectionArgs.toArray(new String[0]),
+        getSortCondition(query.getSortColumn()) + " LIMIT CAST(? AS INTEGER)", true,
+        cancellationSignal);
+  }
+
+
+  /**
+   * Builds the condition selecting notes that follow the given one in current sorting order. Sort
+   * key is read from database because in-memory note content is decrypted for locked notes.
+   *
+   * @return Condition or null if the note doesn't exist anymore
+   */
+  @Nullable
+  private String getKeysetCondition(long noteId, @Nullable String sortColumn,
+      List<String> selectionArgs) {
+    String column = getSortColumn(sortColumn);
+    String sortExpression = getSortExpression(column);
+    boolean ascending = isSortAscending(column);
+    String comparison = ascending ? ">" : "<";
+    String tiebreakerCondition = KEY_CREATION + " " + comparison + " ?";
+    String noteIdArg = String.valueOf(noteId);
+
+    try (Cursor cursor = getDatabase().rawQuery("SELECT " + sortExpression + " FROM " + TABLE_NOTES
+        + " WHERE " + KEY_CREATION + " = ?", new String[]{noteIdArg})) {
+      if (!cursor.moveToFirst()) {
+        return null;
+      }
+
+      // Null keys are sorted first in ascending order and last in descending one
+      if (cursor.isNull(0)) {
+        selectionArgs.add(noteIdArg);
+        String nullKeyCondition = sortExpression + " IS NULL AND " + tiebreakerCondition;
+        return ascending
+            ? nullKeyCondition + " OR " + sortExpression + " IS NOT NULL"
+            : nullKeyCondition;
+      }
+
+      // Parameters are bound as text and sort expressions have no affinity to convert them back
+      String key = cursor.getType(0) == Cursor.FIELD_TYPE_INTEGER ? "CAST(? AS INTEGER)" : "?";
+      selectionArgs.add(cursor.getString(0));
+      selectionArgs.add(cursor.getString(0));
+      selectionArgs.add(noteIdArg);
+      // Redundant inclusive comparison allows the index to seek the page start
+      String keyCondition = sortExpression + " " + comparison + "= " + key
+          + " AND (" + sortExpression + " " + comparison + " " + key
+          + " OR " + tiebreakerCondition + ")";
+      return ascending
+          ? keyCondition
+          : keyCondition + " OR " + sortExpression + " IS NULL";
+    }
+  }
+
+
+  private List<Note> getNotes(String joinCondition, String whereCondition, String[] selectionArgs,
+      String orderCondition) {
+    return getNotes(joinCondition, whereCondition, selectionArgs, orderCondition, false, null);
+  }
+
 
-    // Generic query to be specialized with conditions passed as parameter
-    String query = "SELECT "
+  /**
+   * Retrieves notes, eventually as {@link NoteSummary} whose content is truncated (encrypted content
+   * of locked notes can't be) and with just the first attachment
+   */
+  private List<Note> getNotes(String joinCondition, String whereCondition, String[] selectionArgs,
+      String orderCondition, boolean summary, @Nullable CancellationSignal cancellationSignal) {
+    List<Note> noteList = new ArrayList<>();
+
+    String query = getNotesQuery(joinCondition, whereCondition, orderCondition, summary, true);
+    LogDelegate.v("Query: " + query);
+
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    try (Cursor cursor = getDatabase().rawQuery(query, selectionArgs, cancellationSignal)) {
+      while (cursor.moveToNext()) {
+        noteList.add(readNote(cursor, summary, passwords));
+      }
+    }
+
+    // Add eventual attachments uri
+    if (!summary) {
+      if (cancellationSignal != null) {
+        cancellationSignal.throwIfCanceled();
+      }
+      loadNotesAttachments(noteList);
+    }
+
+    LogDelegate.v("Query: Retrieval finished!");
+    return noteList;
+  }
+
+
+  /**
+   * Generic notes query to be specialized with conditions passed as parameter. Without content its
+   * columns are kept, as NULL, to not shift the following ones read by {@link #readNote(Cursor,
+   * boolean, ContentPasswords)}. Summaries are made from the preview of compressed notes, so they
+   * never need to be decompressed.
+   */
+  private String getNotesQuery(String joinCondition, String whereCondition, String orderCondition,
+      boolean summary, boolean withContent) {
+    String contentColumn;
+    String compressedContentColumns = ContentCodec.CODEC_NONE + ",NULL";
+    if (!withContent) {
+      contentColumn = "NULL";
+    } else if (summary) {
+      contentColumn = "CASE WHEN " + KEY_LOCKED + " = 1 THEN " + KEY_CONTENT
+          + " ELSE substr(" + KEY_CONTENT + ", 1, " + SUMMARY_CONTENT_LENGTH + ") END";
+    } else {
+      contentColumn = KEY_CONTENT;
+      compressedContentColumns = KEY_CONTENT_CODEC + "," + KEY_CONTENT_COMPRESSED;
+    }
+    String attachmentsCondition = " FROM " + TABLE_ATTACHMENTS + " WHERE "
+        + KEY_ATTACHMENT_NOTE_ID + " = " + TABLE_NOTES + "." + KEY_CREATION;
+    String firstAttachmentCondition = attachmentsCondition + " ORDER BY " + KEY_ATTACHMENT_ID
+        + " LIMIT 1";
+    String summaryColumns = summary
+        ? ",(SELECT COUNT(*)" + attachmentsCondition + ") AS " + SUMMARY_ATTACHMENTS_COUNT
+        + ",(SELECT " + KEY_ATTACHMENT_ID + firstAttachmentCondition + ")"
+        + ",(SELECT " + KEY_ATTACHMENT_URI + firstAttachmentCondition + ")"
+        + ",(SELECT " + KEY_ATTACHMENT_MIME_TYPE + firstAttachmentCondition + ")"
+        : "";
+
+    return "SELECT "
         + KEY_CREATION + ","
         + KEY_LAST_MODIFICATION + ","
         + KEY_TITLE + ","
-        + KEY_CONTENT + ","
+        + contentColumn + ","
+        + compressedContentColumns + ","
+        + KEY_KEY_VERSION + ","
         + KEY_ARCHIVED + ","
         + KEY_TRASHED + ","
         + KEY_REMINDER + ","
@@ -435,61 +1058,102 @@ public class DbHelper extends SQLiteOpenHelper {
         + KEY_CATEGORY_NAME + ","
         + KEY_CATEGORY_DESCRIPTION + ","
         + KEY_CATEGORY_COLOR
+        + summaryColumns
         + " FROM " + TABLE_NOTES
+        + joinCondition
         + " LEFT JOIN " + TABLE_CATEGORY + " USING( " + KEY_CATEGORY + ") "
         + whereCondition
-        + (order ? " ORDER BY " + sortColumn + " COLLATE NOCASE " + sortOrder : "");
+        + orderCondition;
+  }
 
-    LogDelegate.v("Query: " + query);
 
-    try (Cursor cursor = getDatabase().rawQuery(query, null)) {
+  /**
+   * Reads the note at current cursor position, attachments excluded. Content of locked notes is
+   * left encrypted, to be decrypted with the password of its key version only if accessed, while
+   * compressed content is decompressed straight away.
+   */
+  Note readNote(Cursor cursor, boolean summary, ContentPasswords passwords) {
+    int i = 0;
+    Note note = summary ? new NoteSummary() : new Note();
+    note.setCreation(cursor.getLong(i++));
+    note.setLastModification(cursor.getLong(i++));
+    note.setTitle(cursor.getString(i++));
+    String content = cursor.getString(i++);
+    int contentCodec = cursor.getInt(i++);
+    byte[] compressedContent = cursor.getBlob(i++);
+    if (contentCodec != ContentCodec.CODEC_NONE) {
+      content = ContentCodec.decompress(compressedContent);
+    }
+    int keyVersion = cursor.getInt(i++);
+    note.setArchived("1".equals(cursor.getString(i++)));
+    note.setTrashed("1".equals(cursor.getString(i++)));
+    note.setAlarm(cursor.getString(i++));
+    note.setReminderFired(cursor.getInt(i++));
+    note.setRecurrenceRule(cursor.getString(i++));
+    note.setLatitude(cursor.getString(i++));
+    note.setLongitude(cursor.getString(i++));
+    note.setAddress(cursor.getString(i++));
+    note.setLocked("1".equals(cursor.getString(i++)));
+    note.setChecklist("1".equals(cursor.getString(i++)));
+    if (Boolean.TRUE.equals(note.isLocked())) {
+      note.setEncryptedContent(content, passwords.forKeyVersion(keyVersion));
+    } else {
+      note.setContent(content);
+    }
 
-      if (cursor.moveToFirst()) {
-        do {
-          int i = 0;
-          Note note = new Note();
-          note.setCreation(cursor.getLong(i++));
-          note.setLastModification(cursor.getLong(i++));
-          note.setTitle(cursor.getString(i++));
-          note.setContent(cursor.getString(i++));
-          note.setArchived("1".equals(cursor.getString(i++)));
-          note.setTrashed("1".equals(cursor.getString(i++)));
-          note.setAlarm(cursor.getString(i++));
-          note.setReminderFired(cursor.getInt(i++));
-          note.setRecurrenceRule(cursor.getString(i++));
-          note.setLatitude(cursor.getString(i++));
-          note.setLongitude(cursor.getString(i++));
-          note.setAddress(cursor.getString(i++));
-          note.setLocked("1".equals(cursor.getString(i++)));
-          note.setChecklist("1".equals(cursor.getString(i++)));
-
-          // Eventual decryption of content
-          if (Boolean.TRUE.equals(note.isLocked())) {
-            note.setContent(
-                Security.decrypt(note.getContent(), Prefs.getString(PREF_PASSWORD, "")));
-          }
+    // Set category
+    long categoryId = cursor.getLong(i++);
+    if (categoryId != 0) {
+      Category category = new Category(categoryId, cursor.getString(i++),
+          cursor.getString(i++), cursor.getString(i));
+      note.setCategory(category);
+    }
 
-          // Set category
-          long categoryId = cursor.getLong(i++);
-          if (categoryId != 0) {
-            Category category = new Category(categoryId, cursor.getString(i++),
-                cursor.getString(i++), cursor.getString(i));
-            note.setCategory(category);
-          }
+    if (summary) {
+      readSummaryAttachments(cursor, (NoteSummary) note);
+    }
+    return note;
+  }
 
-          // Add eventual attachments uri
-          note.setAttachmentsList(getNoteAttachments(note));
 
-          // Adding note to list
-          noteList.add(note);
+  private void readSummaryAttachments(Cursor cursor, NoteSummary note) {
+    int i = cursor.getColumnIndex(SUMMARY_ATTACHMENTS_COUNT);
+    note.setAttachmentsCount(cursor.getInt(i++));
+    ArrayList<Attachment> attachments = new ArrayList<>();
+    if (!cursor.isNull(i)) {
+      attachments.add(new Attachment(cursor.getLong(i++), Uri.parse(cursor.getString(i++)), null, 0,
+          0, cursor.getString(i)));
+    }
+    note.setAttachmentsList(attachments);
+  }
 
-        } while (cursor.moveToNext());
-      }
 
+  /**
+   * Retrieves attachments of all the notes with a query for each chunk of notes (instead of one for
+   * each note) and assigns them
+   */
+  void loadNotesAttachments(List<Note> notes) {
+    LongSparseArray<ArrayList<Attachment>> attachmentsByNote = new LongSparseArray<>(notes.size());
+    for (int from = 0; from < notes.size(); from += ATTACHMENTS_QUERY_CHUNK_SIZE) {
+      StringBuilder noteIds = new StringBuilder();
+      for (Note note : notes.subList(from,
+          Math.min(from + ATTACHMENTS_QUERY_CHUNK_SIZE, notes.size()))) {
+        noteIds.append(noteIds.length() > 0 ? "," : "").append(note.get_id());
+      }
+      String whereCondition = " WHERE " + KEY_ATTACHMENT_NOTE_ID + " IN (" + noteIds + ")";
+      for (Attachment attachment : getAttachments(whereCondition)) {
+        ArrayList<Attachment> noteAttachments = attachmentsByNote.get(attachment.getNoteId());
+        if (noteAttachments == null) {
+          noteAttachments = new ArrayList<>();
+          attachmentsByNote.put(attachment.getNoteId(), noteAttachments);
+        }
+        noteAttachments.add(attachment);
+      }
+    }
+    for (Note note : notes) {
+      ArrayList<Attachment> noteAttachments = attachmentsByNote.get(note.get_id());
+      note.setAttachmentsList(noteAttachments != null ? noteAttachments : new ArrayList<>());
     }
-
-    LogDelegate.v("Query: Retrieval finished!");
-    return noteList;
   }
 
 
@@ -497,287 +1161,819 @@ public class DbHelper extends SQLiteOpenHelper {
    * Archives/restore single note
    */
   public void archiveNote(Note note, boolean archive) {
+    archiveNotes(Collections.singletonList(note.get_id()), archive);
     note.setArchived(archive);
-    updateNote(note, false);
   }
 
 
   /**
-   * Trashes/restore single note
+   * Archives/restores notes by their IDs within a single transaction
+   */
+  public void archiveNotes(List<Long> ids, boolean archive) {
+    ContentValues values = new ContentValues();
+    values.put(KEY_ARCHIVED, archive);
+    updateNotesById(ids, values);
+  }
+
+
+  /**
+   * Trashes/restore single note
+   */
+  public void trashNote(Note note, boolean trash) {
+    trashNotes(Collections.singletonList(note.get_id()), trash);
+    note.setTrashed(trash);
+  }
+
+
+  /**
+   * Trashes/restores notes by their IDs within a single transaction
+   */
+  public void trashNotes(List<Long> ids, boolean trash) {
+    ContentValues values = new ContentValues();
+    values.put(KEY_TRASHED, trash);
+    updateNotesById(ids, values);
+  }
+
+
+  /**
+   * Sets category of notes by their IDs within a single transaction
+   *
+   * @param category Category to be set, null to uncategorize notes
+   */
+  public void categorizeNotes(List<Long> ids, @Nullable Category category) {
+    ContentValues values = new ContentValues();
+    if (category != null) {
+      values.put(KEY_CATEGORY, category.getId());
+    } else {
+      values.putNull(KEY_CATEGORY);
+    }
+    updateNotesById(ids, values);
+  }
+
+
+  private void updateNotesById(List<Long> ids, ContentValues values) {
+    dbWriter.write(() -> {
+      writeNotesById(ids, values);
+      return null;
+    });
+  }
+
+
+  private void writeNotesById(List<Long> ids, ContentValues values) {
+    ContentValues tagsValues = null;
+    if (values.containsKey(KEY_TRASHED)) {
+      tagsValues = new ContentValues();
+      tagsValues.put(KEY_NOTE_TAGS_TRASHED, values.getAsBoolean(KEY_TRASHED));
+    }
+    SQLiteDatabase database = getDatabase(true);
+    database.beginTransaction();
+    try {
+      for (int i = 0; i < ids.size(); i += BULK_IDS_CHUNK_SIZE) {
+        String[] args = toSelectionArgs(
+            ids.subList(i, Math.min(i + BULK_IDS_CHUNK_SIZE, ids.size())));
+        database.update(TABLE_NOTES, values, KEY_ID + getInCondition(args.length), args);
+        if (tagsValues != null) {
+          database.update(TABLE_NOTE_TAGS, tagsValues,
+              KEY_NOTE_TAGS_NOTE_ID + getInCondition(args.length), args);
+        }
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    notifyNotesChanged(Collections.emptyList(), ids, Collections.emptyList());
+  }
+
+
+  /**
+   * Deleting single note
+   */
+  public boolean deleteNote(Note note) {
+    return deleteNote(note, false);
+  }
+
+
+  /**
+   * Deleting single note, eventually keeping attachments
+   */
+  public boolean deleteNote(Note note, boolean keepAttachments) {
+    return deleteNote(note.get_id(), keepAttachments);
+  }
+
+
+  /**
+   * Deleting single note by its ID
+   */
+  public boolean deleteNote(long noteId, boolean keepAttachments) {
+    deleteNotes(Collections.singletonList(noteId), keepAttachments);
+    return true;
+  }
+
+
+  /**
+   * Deletes notes by their IDs within a single transaction, eventually keeping attachments
+   */
+  public void deleteNotes(List<Long> ids, boolean keepAttachments) {
+    dbWriter.write(() -> {
+      writeNotesDeletion(ids, keepAttachments);
+      return null;
+    });
+  }
+
+
+  private void writeNotesDeletion(List<Long> ids, boolean keepAttachments) {
+    SQLiteDatabase database = getDatabase(true);
+    database.beginTransaction();
+    try {
+      for (int i = 0; i < ids.size(); i += BULK_IDS_CHUNK_SIZE) {
+        String[] args = toSelectionArgs(
+            ids.subList(i, Math.min(i + BULK_IDS_CHUNK_SIZE, ids.size())));
+        database.delete(TABLE_NOTES, KEY_ID + getInCondition(args.length), args);
+        if (!keepAttachments) {
+          database.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_NOTE_ID + getInCondition(args.length),
+              args);
+        }
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    notifyNotesChanged(Collections.emptyList(), Collections.emptyList(), ids);
+  }
+
+
+  private static String[] toSelectionArgs(List<Long> ids) {
+    String[] args = new String[ids.size()];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = String.valueOf(ids.get(i));
+    }
+    return args;
+  }
+
+
+  private static String getInCondition(int argsCount) {
+    return " IN (" + StringUtils.repeat("?", ",", argsCount) + ")";
+  }
+
+
+  /**
+   * Empties trash deleting all trashed notes and their attachments within a single transaction
+   *
+   * @return Uris of deleted attachments, whose files are left to be reclaimed by the caller
+   */
+  public List<Uri> emptyTrash() {
+    return dbWriter.write(this::writeTrashEmptying);
+  }
+
+
+  private List<Uri> writeTrashEmptying() {
+    List<Uri> attachmentsUris = new ArrayList<>();
+    List<Long> deletedIds = new ArrayList<>();
+    String trashedNotes = "SELECT " + KEY_ID + " FROM " + TABLE_NOTES
+        + " WHERE " + KEY_TRASHED + " = 1";
+    SQLiteDatabase database = getDatabase(true);
+    database.beginTransaction();
+    try {
+      try (Cursor cursor = database.rawQuery(trashedNotes, null)) {
+        while (cursor.moveToNext()) {
+          deletedIds.add(cursor.getLong(0));
+        }
+      }
+      try (Cursor cursor = database.rawQuery("SELECT " + KEY_ATTACHMENT_URI
+          + " FROM " + TABLE_ATTACHMENTS
+          + " WHERE " + KEY_ATTACHMENT_NOTE_ID + " IN (" + trashedNotes + ")", null)) {
+        while (cursor.moveToNext()) {
+          attachmentsUris.add(Uri.parse(cursor.getString(0)));
+        }
+      }
+      database.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_NOTE_ID + " IN (" + trashedNotes + ")",
+          null);
+      database.delete(TABLE_NOTES, KEY_TRASHED + " = 1", null);
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    notifyNotesChanged(Collections.emptyList(), Collections.emptyList(), deletedIds);
+    return attachmentsUris;
+  }
+
+
+  public boolean hasLockedNotesInTrash() {
+    return DatabaseUtils.queryNumEntries(getDatabase(), TABLE_NOTES,
+        KEY_TRASHED + " = 1 AND " + KEY_LOCKED + " = 1") > 0;
+  }
+
+
+  /**
+   * Gets notes matching pattern with title or content text. Full-text index is used when possible,
+   * falling back to a LIKE scan for patterns without indexable words (ex. symbols only)
+   *
+   * @param pattern String to match with
+   * @return Notes list
+   */
+  public List<Note> getNotesByPattern(String pattern) {
+    return getNotes(NoteQuery.searchScope().text(pattern));
+  }
+
+
+  /**
+   * Converts user's search pattern into a full-text MATCH expression where every word must be
+   * found as prefix of a title or content word. Words are quoted to neutralize query syntax.
+   *
+   * @return Match expression or null if pattern doesn't contain any indexable word
+   */
+  static String buildMatchExpression(String pattern, boolean fts5) {
+    if (pattern == null) {
+      return null;
+    }
+    StringBuilder matchExpression = new StringBuilder();
+    for (String word : getSearchWords(pattern)) {
+      matchExpression.append(matchExpression.length() > 0 ? " " : "")
+          .append(fts5 ? "\"" + word + "\"*" : "\"" + word + "*\"");
+    }
+    return matchExpression.length() > 0 ? matchExpression.toString() : null;
+  }
+
+
+  /**
+   * Splits text into the words searched through full-text index
+   */
+  public static List<String> getSearchWords(String text) {
+    List<String> words = new ArrayList<>();
+    for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+      if (!word.isEmpty()) {
+        words.add(word);
+      }
+    }
+    return words;
+  }
+
+
+  /**
+   * Tells if text searches are performed through full-text index, matching words by prefix
+   */
+  public boolean hasFullTextIndex() {
+    return getFtsModule() != null;
+  }
+
+
+  /**
+   * Retrieves the module used by full-text index (fts5 or fts4), null if index is not available
+   */
+  private synchronized String getFtsModule() {
+    if (ftsModule == null) {
+      try (Cursor cursor = getDatabase().rawQuery("SELECT sql FROM sqlite_master WHERE name = ?",
+          new String[]{TABLE_NOTES_FTS})) {
+        if (cursor.moveToFirst() && cursor.getString(0) != null) {
+          ftsModule = StringUtils.containsIgnoreCase(cursor.getString(0), FTS5_MODULE)
+              ? FTS5_MODULE : "fts4";
+        }
+      }
+    }
+    return ftsModule;
+  }
+
+
+  /**
+   * Search for notes with reminder
+   *
+   * @param filterPastReminders Excludes past reminders
+   * @return Notes list
+   */
+  public List<Note> getNotesWithReminder(boolean filterPastReminders) {
+    Long from = filterPastReminders ? Calendar.getInstance().getTimeInMillis() : null;
+    return getNotes(new NoteQuery().reminderBetween(from, null).archived(false).trashed(false));
+  }
+
+
+  /**
+   * Returns all notes that have a reminder that has not been alredy fired
+   *
+   * @return Notes list
+   */
+  public List<Note> getNotesWithReminderNotFired() {
+    return getNotes(getRemindersNotFiredQuery());
+  }
+
+
+  /**
+   * Streams all notes that have a reminder that has not been alredy fired
+   */
+  public void forEachNoteWithReminderNotFired(NoteConsumer consumer) {
+    forEachNote(getRemindersNotFiredQuery().unsorted(), consumer);
+  }
+
+
+  private NoteQuery getRemindersNotFiredQuery() {
+    return new NoteQuery().withReminder().reminderFired(false).archived(false).trashed(false);
+  }
+
+
+  /**
+   * Retrieves locked or unlocked notes
+   */
+  public List<Note> getNotesWithLock(boolean locked) {
+    return getNotes(new NoteQuery().locked(locked));
+  }
+
+
+  /**
+   * Search for notes with reminder expiring the current day
+   *
+   * @return Notes list
+   */
+  public List<Note> getTodayReminders() {
+    // Same UTC day previously matched through DATE('now'), as a range to use the reminders index
+    Calendar startOfDay = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    startOfDay.set(Calendar.HOUR_OF_DAY, 0);
+    startOfDay.set(Calendar.MINUTE, 0);
+    startOfDay.set(Calendar.SECOND, 0);
+    startOfDay.set(Calendar.MILLISECOND, 0);
+    Calendar startOfNextDay = (Calendar) startOfDay.clone();
+    startOfNextDay.add(Calendar.DAY_OF_MONTH, 1);
+    return getNotes(new NoteQuery()
+        .reminderBetween(startOfDay.getTimeInMillis(), startOfNextDay.getTimeInMillis())
+        .trashed(false)
+        .unsorted());
+  }
+
+
+  /**
+   * Retrieves all attachments related to specific note
+   */
+  public ArrayList<Attachment> getNoteAttachments(Note note) {
+    String whereCondition = " WHERE " + KEY_ATTACHMENT_NOTE_ID + " = ?";
+    return getAttachments(whereCondition, new String[]{String.valueOf(note.get_id())});
+  }
+
+
+  /**
+   * Retrieves attachments of many notes by their IDs
+   */
+  public List<Attachment> getNotesAttachments(List<Long> ids) {
+    List<Attachment> attachments = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i += BULK_IDS_CHUNK_SIZE) {
+      attachments.addAll(getAttachments(" WHERE " + KEY_ATTACHMENT_NOTE_ID + " IN ("
+          + StringUtils.join(ids.subList(i, Math.min(i + BULK_IDS_CHUNK_SIZE, ids.size())), ",")
+          + ")"));
+    }
+    return attachments;
+  }
+
+
+  public List<Note> getChecklists() {
+    return getNotes(new NoteQuery().checklist(true).unsorted());
+  }
+
+
+  public List<Note> getMasked() {
+    return getNotes(new NoteQuery().locked(true).unsorted());
+  }
+
+
+  /**
+   * Retrieves all notes related to Category it passed as parameter
+   *
+   * @param categoryId Category integer identifier
+   * @return List of notes with requested category
+   */
+  public List<Note> getNotesByCategory(Long categoryId) {
+    return getNotes(NoteQuery.categoryNavigation(categoryId));
+  }
+
+
+  /**
+   * Retrieves all tags
+   */
+  public List<Tag> getTags() {
+    return getTags(null);
+  }
+
+
+  /**
+   * Retrieves all tags of a specified note
    */
-  public void trashNote(Note note, boolean trash) {
-    note.setTrashed(trash);
-    updateNote(note, false);
+  public List<Tag> getTags(Note note) {
+    List<Tag> tags = new ArrayList<>();
+    boolean trashed = Navigation.checkNavigation(Navigation.TRASH);
+
+    // Counters are kept only for notes out of trash, others are counted on the fly
+    String query;
+    if (note == null && !trashed) {
+      query = "SELECT " + KEY_TAGS_TAG + ", " + KEY_TAGS_COUNT
+          + " FROM " + TABLE_TAGS
+          + " WHERE " + KEY_TAGS_COUNT + " > 0";
+    } else {
+      query = "SELECT " + KEY_NOTE_TAGS_TAG + ", COUNT(*)"
+          + " FROM " + TABLE_NOTE_TAGS
+          + " WHERE " + KEY_NOTE_TAGS_TRASHED + " = " + (trashed ? 1 : 0)
+          + (note != null ? " AND " + KEY_NOTE_TAGS_NOTE_ID + " = ?" : "")
+          + " GROUP BY " + KEY_NOTE_TAGS_TAG;
+    }
+    query += " ORDER BY " + KEY_TAGS_TAG + " COLLATE NOCASE";
+
+    String[] selectionArgs = note != null ? new String[]{String.valueOf(note.get_id())} : null;
+    try (Cursor cursor = getDatabase().rawQuery(query, selectionArgs)) {
+      while (cursor.moveToNext()) {
+        tags.add(new Tag(cursor.getString(0), cursor.getInt(1)));
+      }
+    }
+    return tags;
   }
 
 
   /**
-   * Deleting single note
+   * Retrieves all notes related to category it passed as parameter
    */
-  public boolean deleteNote(Note note) {
-    return deleteNote(note, false);
+  public List<Note> getNotesByTag(String tag) {
+    if (tag.contains(",")) {
+      return getNotesByTag(StringUtils.stripAll(tag.split(",")));
+    } else {
+      return getNotesByTag(new String[]{tag});
+    }
   }
 
 
   /**
-   * Deleting single note, eventually keeping attachments
+   * Retrieves all notes with specified tags
    */
-  public boolean deleteNote(Note note, boolean keepAttachments) {
-    return deleteNote(note.get_id(), keepAttachments);
+  public List<Note> getNotesByTag(String[] tags) {
+    // Trashed notes must be included in search results only if search if performed from trash
+    return getNotes(new NoteQuery()
+        .trashed(Navigation.checkNavigation(Navigation.TRASH))
+        .tags(tags));
   }
 
 
   /**
-   * Deleting single note by its ID
+   * Checks if full-text index doesn't match notes anymore
    */
-  public boolean deleteNote(long noteId, boolean keepAttachments) {
-    SQLiteDatabase db = getDatabase(true);
-    db.delete(TABLE_NOTES, KEY_ID + " = ?", new String[]{String.valueOf(noteId)});
-    if (!keepAttachments) {
-      db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_NOTE_ID + " = ?",
-          new String[]{String.valueOf(noteId)});
+  boolean isSearchIndexDrifted() {
+    if (!hasFullTextIndex()) {
+      return false;
     }
-    return true;
+    return DatabaseUtils.longForQuery(getDatabase(), "SELECT "
+        + "(SELECT COUNT(*) FROM " + TABLE_NOTES + " WHERE " + KEY_ID
+        + " NOT IN (SELECT rowid FROM " + TABLE_NOTES_FTS + "))"
+        + " + (SELECT COUNT(*) FROM " + TABLE_NOTES_FTS + " WHERE rowid"
+        + " NOT IN (SELECT " + KEY_ID + " FROM " + TABLE_NOTES + "))", null) > 0;
   }
 
 
   /**
-   * Empties trash deleting all trashed notes
+   * Refills full-text index from notes, locked ones have just their title indexed
    */
-  public void emptyTrash() {
-    for (Note note : getNotesTrashed()) {
-      deleteNote(note);
-    }
+  void rebuildSearchIndex() {
+    dbWriter.write(() -> {
+      SQLiteDatabase database = getDatabase(true);
+      database.execSQL("DELETE FROM " + TABLE_NOTES_FTS);
+      database.execSQL("INSERT INTO " + TABLE_NOTES_FTS + "(rowid, " + KEY_TITLE + ", "
+          + KEY_CONTENT + ") SELECT " + KEY_ID + ", " + KEY_TITLE + ", CASE WHEN " + KEY_LOCKED
+          + " = 1 THEN NULL ELSE " + KEY_CONTENT + " END FROM " + TABLE_NOTES);
+      // Compressed notes have just been indexed by their preview
+      String query = "SELECT " + KEY_CREATION + "," + KEY_TITLE + "," + KEY_CONTENT_COMPRESSED
+          + " FROM " + TABLE_NOTES + " WHERE " + KEY_CONTENT_CODEC + " != "
+          + ContentCodec.CODEC_NONE;
+      synchronized (notesWriter) {
+        notesWriter.prepare(database);
+        try (Cursor cursor = database.rawQuery(query, null)) {
+          while (cursor.moveToNext()) {
+            notesWriter.indexNoteContent(cursor.getLong(0), cursor.getString(1),
+                ContentCodec.decompress(cursor.getBlob(2)));
+          }
+        }
+      }
+      return null;
+    });
   }
 
 
   /**
-   * Gets notes matching pattern with title or content text
+   * Compresses a chunk of the large and archived notes stored plain, i.e. because saved before
+   * being archived. Full-text index is left as it is, as it already holds the whole content.
    *
-   * @param pattern String to match with
-   * @return Notes list
+   * @param afterId Last note examined by previous chunk, zero to start from the beginning
+   * @return Last note examined, to continue from, or zero when there are no more
    */
-  public List<Note> getNotesByPattern(String pattern) {
-    String escapedPattern = escapeSql(pattern);
-    int navigation = Navigation.getNavigation();
-    String whereCondition = " WHERE "
-        + KEY_TRASHED + (navigation == Navigation.TRASH ? " IS 1" : " IS NOT 1")
-        + (navigation == Navigation.ARCHIVE ? " AND " + KEY_ARCHIVED + " IS 1" : "")
-        + (navigation == Navigation.CATEGORY ? " AND " + KEY_CATEGORY + " = " + Navigation
-        .getCategory() : "")
-        + (navigation == Navigation.UNCATEGORIZED ? " AND (" + KEY_CATEGORY + " IS NULL OR "
-        + KEY_CATEGORY_ID
-        + " == 0) " : "")
-        + (Navigation.checkNavigation(Navigation.REMINDERS) ? " AND " + KEY_REMINDER
-        + " IS NOT NULL" : "")
-        + " AND ("
-        + " ( " + KEY_LOCKED + " IS NOT 1 AND (" + KEY_TITLE + " LIKE '%" + escapedPattern
-        + "%' ESCAPE '\\' " + " OR "
-        +
-        KEY_CONTENT + " LIKE '%" + escapedPattern + "%' ESCAPE '\\' ))"
-        + " OR ( " + KEY_LOCKED + " = 1 AND " + KEY_TITLE + " LIKE '%" + escapedPattern
-        + "%' ESCAPE '\\' )"
-        + ")";
-    return getNotes(whereCondition, true);
-  }
-
-  static String escapeSql(String pattern) {
-    return StringUtils.replace(pattern, "'", "''")
-        .replace("%", "\\%")
-        .replace("_", "\\_");
+  long compressNotes(long afterId, int chunkSize) {
+    if (!hasFullTextIndex()) {
+      return 0;
+    }
+    return dbWriter.write(() -> writeCompressedNotes(afterId, chunkSize));
   }
 
 
-  /**
-   * Search for notes with reminder
-   *
-   * @param filterPastReminders Excludes past reminders
-   * @return Notes list
-   */
-  public List<Note> getNotesWithReminder(boolean filterPastReminders) {
-    String whereCondition = " WHERE " + KEY_REMINDER
-        + (filterPastReminders ? " >= " + Calendar.getInstance().getTimeInMillis() : " IS NOT NULL")
-        + " AND " + KEY_ARCHIVED + " IS NOT 1"
-        + " AND " + KEY_TRASHED + " IS NOT 1";
-    return getNotes(whereCondition, true);
+  private long writeCompressedNotes(long afterId, int chunkSize) {
+    String query = "SELECT " + KEY_CREATION + "," + KEY_CONTENT + "," + KEY_ARCHIVED + " FROM "
+        + TABLE_NOTES + " WHERE " + KEY_CREATION + " > ? AND " + KEY_CONTENT_CODEC + " = "
+        + ContentCodec.CODEC_NONE + " AND " + KEY_LOCKED + " = 0 AND " + KEY_CHECKLIST + " = 0"
+        + " AND length(" + KEY_CONTENT + ") >= CASE WHEN " + KEY_ARCHIVED + " = 1 THEN "
+        + ContentCodec.ARCHIVED_COMPRESSION_THRESHOLD + " ELSE "
+        + ContentCodec.COMPRESSION_THRESHOLD + " END"
+        + " ORDER BY " + KEY_CREATION + " LIMIT CAST(? AS INTEGER)";
+    SQLiteDatabase database = getDatabase(true);
+    long lastId = 0;
+
+    // Reading within the write transaction prevents notes saved meanwhile from being overwritten
+    database.beginTransaction();
+    try (Cursor cursor = database.rawQuery(query,
+        new String[]{String.valueOf(afterId), String.valueOf(chunkSize)});
+        SQLiteStatement statement = database.compileStatement("UPDATE " + TABLE_NOTES
+            + " SET " + KEY_CONTENT + " = ?," + KEY_CONTENT_CODEC + " = ?,"
+            + KEY_CONTENT_COMPRESSED + " = ? WHERE " + KEY_CREATION + " = ?")) {
+      while (cursor.moveToNext()) {
+        lastId = cursor.getLong(0);
+        String content = cursor.getString(1);
+        byte[] compressedContent = ContentCodec.compress(content);
+        if (compressedContent != null) {
+          statement.bindString(1, ContentCodec.getPreview(content));
+          statement.bindLong(2, ContentCodec.CODEC_DEFLATE);
+          statement.bindBlob(3, compressedContent);
+          statement.bindLong(4, lastId);
+          statement.executeUpdateDelete();
+        }
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    return lastId;
   }
 
 
   /**
-   * Returns all notes that have a reminder that has not been alredy fired
-   *
-   * @return Notes list
+   * Checks if hashtags index doesn't match notes or its counters anymore
    */
-  public List<Note> getNotesWithReminderNotFired() {
-    String whereCondition = " WHERE " + KEY_REMINDER + " IS NOT NULL"
-        + " AND " + KEY_REMINDER_FIRED + " IS NOT 1"
-        + " AND " + KEY_ARCHIVED + " IS NOT 1"
-        + " AND " + KEY_TRASHED + " IS NOT 1";
-    return getNotes(whereCondition, true);
+  boolean isTagsIndexDrifted() {
+    return DatabaseUtils.longForQuery(getDatabase(), "SELECT "
+        // Hashtags of deleted notes or with a stale trashed state
+        + "(SELECT COUNT(*) FROM " + TABLE_NOTE_TAGS + " LEFT JOIN " + TABLE_NOTES
+        + " ON " + KEY_ID + " = " + KEY_NOTE_TAGS_NOTE_ID + " WHERE " + KEY_ID + " IS NULL OR "
+        + TABLE_NOTE_TAGS + "." + KEY_NOTE_TAGS_TRASHED + " != " + TABLE_NOTES + "." + KEY_TRASHED
+        + ")"
+        // Wrong counters
+        + " + (SELECT COUNT(*) FROM (SELECT " + KEY_NOTE_TAGS_TAG + ", COUNT(*) AS tag_count FROM "
+        + TABLE_NOTE_TAGS + " WHERE " + KEY_NOTE_TAGS_TRASHED + " = 0 GROUP BY "
+        + KEY_NOTE_TAGS_TAG + ") AS counted LEFT JOIN " + TABLE_TAGS + " USING (" + KEY_TAGS_TAG
+        + ") WHERE " + TABLE_TAGS + "." + KEY_TAGS_COUNT + " IS NULL OR " + TABLE_TAGS + "."
+        + KEY_TAGS_COUNT + " != counted.tag_count)"
+        // Counters of hashtags not used anymore
+        + " + (SELECT COUNT(*) FROM " + TABLE_TAGS + " WHERE " + KEY_TAGS_TAG + " NOT IN (SELECT "
+        + KEY_NOTE_TAGS_TAG + " FROM " + TABLE_NOTE_TAGS + " WHERE " + KEY_NOTE_TAGS_TRASHED
+        + " = 0))", null) > 0;
   }
 
 
   /**
-   * Retrieves locked or unlocked notes
+   * Rebuilds hashtags index parsing the content of all notes
    */
-  public List<Note> getNotesWithLock(boolean locked) {
-    String whereCondition = " WHERE " + KEY_LOCKED + (locked ? " = 1 " : " IS NOT 1 ");
-    return getNotes(whereCondition, true);
+  public void rebuildTagsIndex() {
+    dbWriter.write(() -> {
+      rebuildTagsIndex(getDatabase(true));
+      return null;
+    });
   }
 
 
-  /**
-   * Search for notes with reminder expiring the current day
-   *
-   * @return Notes list
-   */
-  public List<Note> getTodayReminders() {
-    String whereCondition =
-        " WHERE DATE(" + KEY_REMINDER + "/1000, 'unixepoch') = DATE('now') AND " +
-            KEY_TRASHED + " IS NOT 1";
-    return getNotes(whereCondition, false);
+  private void rebuildTagsIndex(SQLiteDatabase database) {
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    synchronized (notesWriter) {
+      notesWriter.prepare(database);
+      database.beginTransaction();
+      try (Cursor cursor = database.rawQuery(TAGGED_NOTES_QUERY, null)) {
+        database.delete(TABLE_NOTE_TAGS, null, null);
+        database.delete(TABLE_TAGS, null, null);
+        indexNotesTags(cursor, passwords);
+        database.setTransactionSuccessful();
+      } finally {
+        database.endTransaction();
+      }
+    }
   }
 
 
   /**
-   * Retrieves all attachments related to specific note
+   * Rebuilds a chunk of hashtags index, in creation order, to fill it in background after upgrade.
+   * Index is emptied by the first chunk; notes saved meanwhile are indexed by their own write.
+   *
+   * @param afterId Last note examined by previous chunk, zero to start from the beginning
+   * @return Last note examined, to continue from, or zero when there are no more
    */
-  public ArrayList<Attachment> getNoteAttachments(Note note) {
-    String whereCondition = " WHERE " + KEY_ATTACHMENT_NOTE_ID + " = " + note.get_id();
-    return getAttachments(whereCondition);
+  public long rebuildTagsIndex(long afterId, int chunkSize) {
+    return dbWriter.write(() -> writeTagsIndexChunk(afterId, chunkSize));
   }
 
 
-  public List<Note> getChecklists() {
-    String whereCondition = " WHERE " + KEY_CHECKLIST + " = 1";
-    return getNotes(whereCondition, false);
+  private long writeTagsIndexChunk(long afterId, int chunkSize) {
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    SQLiteDatabase database = getDatabase(true);
+    synchronized (notesWriter) {
+      notesWriter.prepare(database);
+      database.beginTransaction();
+      try (Cursor cursor = database.rawQuery("SELECT * FROM (" + TAGGED_NOTES_QUERY + ") WHERE "
+              + KEY_CREATION + " > ? ORDER BY " + KEY_CREATION + " LIMIT CAST(? AS INTEGER)",
+          new String[]{String.valueOf(afterId), String.valueOf(chunkSize)})) {
+        if (afterId == 0) {
+          database.delete(TABLE_NOTE_TAGS, null, null);
+          database.delete(TABLE_TAGS, null, null);
+        }
+        long lastId = indexNotesTags(cursor, passwords);
+        database.setTransactionSuccessful();
+        return cursor.getCount() < chunkSize ? 0 : lastId;
+      } finally {
+        database.endTransaction();
+      }
+    }
   }
 
 
-  public List<Note> getMasked() {
-    String whereCondition = " WHERE " + KEY_LOCKED + " = 1";
-    return getNotes(whereCondition, false);
+  /**
+   * Indexes the hashtags of the notes read by {@link #TAGGED_NOTES_QUERY}
+   *
+   * @return Last note indexed
+   */
+  private long indexNotesTags(Cursor cursor, ContentPasswords passwords) {
+    long lastId = 0;
+    while (cursor.moveToNext()) {
+      lastId = cursor.getLong(0);
+      Note note = new Note();
+      note.setTitle(cursor.getString(1));
+      note.setContent(readStoredContent(cursor, 2, 3, 5, 6, passwords));
+      notesWriter.replaceNoteTags(lastId, TagsHelper.retrieveTags(note).keySet(),
+          cursor.getInt(4) == 1);
+    }
+    return lastId;
   }
 
 
   /**
-   * Retrieves all notes related to Category it passed as parameter
-   *
-   * @param categoryId Category integer identifier
-   * @return List of notes with requested category
+   * Whole plain content of a note row, decrypted if locked and decompressed if compressed
    */
-  public List<Note> getNotesByCategory(Long categoryId) {
-    List<Note> notes;
-    boolean filterArchived = Prefs
-        .getBoolean(PREF_FILTER_ARCHIVED_IN_CATEGORIES + categoryId, false);
-    try {
-      String whereCondition = " WHERE "
-          + KEY_CATEGORY_ID + " = " + categoryId
-          + " AND " + KEY_TRASHED + " IS NOT 1"
-          + (filterArchived ? " AND " + KEY_ARCHIVED + " IS NOT 1" : "");
-      notes = getNotes(whereCondition, true);
-    } catch (NumberFormatException e) {
-      notes = getAllNotes(true);
+  private static String readStoredContent(Cursor cursor, int contentIndex, int lockedIndex,
+      int keyVersionIndex, int compressedIndex, ContentPasswords passwords) {
+    if (cursor.getInt(lockedIndex) == 1) {
+      return Security.decrypt(cursor.getString(contentIndex),
+          passwords.forKeyVersion(cursor.getInt(keyVersionIndex)));
+    } else if (!cursor.isNull(compressedIndex)) {
+      return ContentCodec.decompress(cursor.getBlob(compressedIndex));
     }
-    return notes;
+    return cursor.getString(contentIndex);
   }
 
 
   /**
-   * Retrieves all tags
+   * Counts locked notes whose content is still encrypted with the previous password
    */
-  public List<Tag> getTags() {
-    return getTags(null);
+  public int countNotesToReencrypt() {
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    if (passwords.getPreviousPassword() == null) {
+      return 0;
+    }
+    return (int) DatabaseUtils.queryNumEntries(getDatabase(), TABLE_NOTES,
+        KEY_LOCKED + " = 1 AND " + KEY_KEY_VERSION + " != ?",
+        new String[]{String.valueOf(passwords.getKeyVersion())});
   }
 
 
   /**
-   * Retrieves all tags of a specified note
+   * Re-encrypts with the current password a chunk of locked notes still encrypted with the
+   * previous one, in creation order. Just content and key version are rewritten, with a prepared
+   * statement, and the chunk is committed as a whole, so an interrupted password change can be
+   * resumed from there. Notes that can't be decrypted with the previous password are left as they
+   * are, key version included, and skipped.
+   *
+   * @param afterId Last note examined by previous chunk, zero to start from the beginning
+   * @return Last note examined, to continue from, or zero when there are no more
+   * @throws EncryptionException if encryption fails, leaving the whole chunk unchanged
    */
-  public List<Tag> getTags(Note note) {
-    List<Tag> tags = new ArrayList<>();
-    HashMap<String, Integer> tagsMap = new HashMap<>();
-
-    String whereCondition = " WHERE "
-        + (note != null ? KEY_ID + " = " + note.get_id() + " AND " : "")
-        + "(" + KEY_CONTENT + " LIKE '%#%' OR " + KEY_TITLE + " LIKE '%#%' " + ")"
-        + " AND " + KEY_TRASHED + " IS " + (Navigation.checkNavigation(Navigation.TRASH) ? ""
-        : " NOT ") + " 1";
-    List<Note> notesRetrieved = getNotes(whereCondition, true);
-
-    for (Note noteRetrieved : notesRetrieved) {
-      HashMap<String, Integer> tagsRetrieved = TagsHelper.retrieveTags(noteRetrieved);
-      for (String s : tagsRetrieved.keySet()) {
-        int count = tagsMap.get(s) == null ? 0 : tagsMap.get(s);
-        tagsMap.put(s, ++count);
+  public long reencryptNotes(long afterId, int chunkSize) {
+    return dbWriter.write(() -> writeReencryptedNotes(afterId, chunkSize));
+  }
+
+
+  private long writeReencryptedNotes(long afterId, int chunkSize) {
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    if (passwords.getPreviousPassword() == null) {
+      return 0;
+    }
+    String keyVersion = String.valueOf(passwords.getKeyVersion());
+    String query = "SELECT " + KEY_CREATION + "," + KEY_CONTENT + " FROM " + TABLE_NOTES
+        + " WHERE " + KEY_LOCKED + " = 1 AND " + KEY_KEY_VERSION + " != ? AND " + KEY_CREATION
+        + " > ? ORDER BY " + KEY_CREATION + " LIMIT CAST(? AS INTEGER)";
+    SQLiteDatabase database = getDatabase(true);
+    long lastId = 0;
+    int examined = 0;
+    List<Long> ids = new ArrayList<>(chunkSize);
+    List<String> contents = new ArrayList<>(chunkSize);
+
+    // Notes saved meanwhile are already encrypted with the new password and have to be left as they
+    // are: reading within the write transaction prevents concurrent updates
+    database.beginTransaction();
+    try {
+      try (Cursor cursor = database.rawQuery(query,
+          new String[]{keyVersion, String.valueOf(afterId), String.valueOf(chunkSize)})) {
+        while (cursor.moveToNext()) {
+          examined++;
+          lastId = cursor.getLong(0);
+          String content = cursor.getString(1);
+          String decryptedContent = content != null
+              ? CryptoService.tryDecrypt(content, passwords.getPreviousPassword())
+              : null;
+          if (content != null && decryptedContent == null) {
+            LogDelegate.w("Locked note " + lastId + " can't be decrypted, left as it is");
+            continue;
+          }
+          ids.add(lastId);
+          contents.add(decryptedContent);
+        }
+      }
+      List<String> reencryptedContents = CryptoService.encrypt(contents, passwords.getPassword());
+      try (SQLiteStatement statement = database.compileStatement("UPDATE " + TABLE_NOTES
+          + " SET " + KEY_CONTENT + " = ?," + KEY_KEY_VERSION + " = ? WHERE "
+          + KEY_CREATION + " = ?")) {
+        for (int i = 0; i < ids.size(); i++) {
+          statement.clearBindings();
+          if (reencryptedContents.get(i) != null) {
+            statement.bindString(1, reencryptedContents.get(i));
+          } else {
+            statement.bindNull(1);
+          }
+          statement.bindLong(2, passwords.getKeyVersion());
+          statement.bindLong(3, ids.get(i));
+          statement.executeUpdateDelete();
+        }
       }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
     }
-
-    for (Entry<String, Integer> entry : tagsMap.entrySet()) {
-      Tag tag = new Tag(entry.getKey(), entry.getValue());
-      tags.add(tag);
+    // Cached notes decrypt lazily with the passwords they've been loaded with
+    if (!ids.isEmpty()) {
+      notifyNotesChanged(Collections.emptyList(), ids, Collections.emptyList());
     }
-
-    Collections.sort(tags, (tag1, tag2) -> tag1.getText().compareToIgnoreCase(tag2.getText()));
-    return tags;
+    return examined < chunkSize ? 0 : lastId;
   }
 
 
   /**
-   * Retrieves all notes related to category it passed as parameter
+   * Computes words and chars counters of a chunk of notes, in creation order, decrypting locked
+   * ones. Used to fill counters in background after upgrade.
+   *
+   * @param afterId Last note examined by previous chunk, zero to start from the beginning
+   * @return Last note examined, to continue from, or zero when there are no more
    */
-  public List<Note> getNotesByTag(String tag) {
-    if (tag.contains(",")) {
-      return getNotesByTag(tag.split(","));
-    } else {
-      return getNotesByTag(new String[]{tag});
-    }
+  public long updateTextCounters(long afterId, int chunkSize) {
+    return dbWriter.write(() -> writeTextCounters(afterId, chunkSize));
   }
 
 
-  /**
-   * Retrieves all notes with specified tags
-   */
-  public List<Note> getNotesByTag(String[] tags) {
-    StringBuilder whereCondition = new StringBuilder();
-    whereCondition.append(" WHERE ");
-    for (int i = 0; i < tags.length; i++) {
-      if (i != 0) {
-        whereCondition.append(" AND ");
+  private long writeTextCounters(long afterId, int chunkSize) {
+    ContentPasswords passwords = ContentPasswords.fromPrefs();
+    String query = "SELECT " + KEY_CREATION + "," + KEY_TITLE + "," + KEY_CONTENT + ","
+        + KEY_LOCKED + "," + KEY_CHECKLIST + "," + KEY_KEY_VERSION + "," + KEY_CONTENT_COMPRESSED
+        + " FROM " + TABLE_NOTES + " WHERE " + KEY_CREATION + " > ? ORDER BY " + KEY_CREATION
+        + " LIMIT CAST(? AS INTEGER)";
+    SQLiteDatabase database = getDatabase(true);
+    long lastId = 0;
+
+    database.beginTransaction();
+    try (Cursor cursor = database.rawQuery(query,
+        new String[]{String.valueOf(afterId), String.valueOf(chunkSize)});
+        SQLiteStatement statement = database.compileStatement("UPDATE " + TABLE_NOTES
+            + " SET " + KEY_WORDS + " = ?," + KEY_CHARS + " = ? WHERE " + KEY_CREATION + " = ?")) {
+      while (cursor.moveToNext()) {
+        lastId = cursor.getLong(0);
+        Note note = new Note();
+        note.setTitle(StringUtils.defaultString(cursor.getString(1)));
+        note.setContent(StringUtils.defaultString(
+            readStoredContent(cursor, 2, 3, 5, 6, passwords)));
+        note.setChecklist(cursor.getInt(4) == 1);
+        statement.bindLong(1, NotesHelper.getWords(note));
+        statement.bindLong(2, NotesHelper.getChars(note));
+        statement.bindLong(3, lastId);
+        statement.executeUpdateDelete();
       }
-      whereCondition.append("(" + KEY_CONTENT + " LIKE '%").append(tags[i]).append("%' OR ")
-          .append(KEY_TITLE)
-          .append(" LIKE '%").append(tags[i]).append("%')");
+      database.setTransactionSuccessful();
+      return cursor.getCount() < chunkSize ? 0 : lastId;
+    } finally {
+      database.endTransaction();
     }
-    // Trashed notes must be included in search results only if search if performed from trash
-    whereCondition.append(" AND " + KEY_TRASHED + " IS ")
-        .append(Navigation.checkNavigation(Navigation.TRASH) ?
-            "" : "" +
-            " NOT ").append(" 1");
-
-    return rx.Observable.from(getNotes(whereCondition.toString(), true))
-        .map(note -> {
-          boolean matches = rx.Observable.from(tags)
-              .all(tag -> {
-                Pattern p = Pattern.compile(".*(\\s|^)" + tag + "(\\s|$).*",
-                    Pattern.MULTILINE);
-                return p.matcher(
-                    (note.getTitle() + " " + note.getContent())).find();
-              }).toBlocking().single();
-          return matches ? note : null;
-        })
-        .filter(Objects::nonNull)
-        .toList().toBlocking().single();
   }
 
+
+  public int countNotesAfter(long afterId) {
+    return (int) DatabaseUtils.queryNumEntries(getDatabase(), TABLE_NOTES, KEY_CREATION + " > ?",
+        new String[]{String.valueOf(afterId)});
+  }
+
+
   /**
    * Retrieves all uncompleted checklists
    */
   public List<Note> getNotesByUncompleteChecklist() {
-    String whereCondition =
-        " WHERE " + KEY_CHECKLIST + " = 1 AND " + KEY_CONTENT + " LIKE '%" + UNCHECKED_SYM + "%' AND "
-    + KEY_TRASHED + (Navigation.checkNavigation(Navigation.TRASH) ? " IS 1" : " IS NOT 1");
-    return getNotes(whereCondition, true);
+    return getNotes(new NoteQuery()
+        .uncompletedChecklist()
+        .trashed(Navigation.checkNavigation(Navigation.TRASH)));
   }
 
 
@@ -789,12 +1985,34 @@ public class DbHelper extends SQLiteOpenHelper {
   }
 
 
+  /**
+   * Retrieves a page of attachments in ID order, starting after the given one
+   */
+  public List<Attachment> getAttachmentsPage(long afterId, int pageSize) {
+    return getAttachments(" WHERE " + KEY_ATTACHMENT_ID + " > ? ORDER BY " + KEY_ATTACHMENT_ID
+            + " LIMIT CAST(? AS INTEGER)",
+        new String[]{String.valueOf(afterId), String.valueOf(pageSize)});
+  }
+
+
+  public int countAttachmentsAfter(long afterId) {
+    return (int) DatabaseUtils.queryNumEntries(getDatabase(), TABLE_ATTACHMENTS,
+        KEY_ATTACHMENT_ID + " > ?", new String[]{String.valueOf(afterId)});
+  }
+
+
   /**
    * Retrieves attachments using a condition passed as parameter
    *
    * @return List of attachments
    */
   public ArrayList<Attachment> getAttachments(String whereCondition) {
+    return getAttachments(whereCondition, null);
+  }
+
+
+  private ArrayList<Attachment> getAttachments(String whereCondition,
+      @Nullable String[] selectionArgs) {
     ArrayList<Attachment> attachmentsList = new ArrayList<>();
     String sql = "SELECT "
         + KEY_ATTACHMENT_ID + ","
@@ -810,7 +2028,7 @@ public class DbHelper extends SQLiteOpenHelper {
     Cursor cursor = null;
 
     try {
-      cursor = getDatabase().rawQuery(sql, null);
+      cursor = getDatabase().rawQuery(sql, selectionArgs);
 
       // Looping through all rows and adding to list
       if (cursor.moveToFirst()) {
@@ -844,35 +2062,15 @@ public class DbHelper extends SQLiteOpenHelper {
         + KEY_CATEGORY_NAME + ","
         + KEY_CATEGORY_DESCRIPTION + ","
         + KEY_CATEGORY_COLOR + ","
-        + " COUNT(" + KEY_ID + ") count"
+        + KEY_CATEGORY_NOTES_COUNT
         + " FROM " + TABLE_CATEGORY
-        + " LEFT JOIN ("
-        + " SELECT " + KEY_ID + ", " + KEY_CATEGORY
-        + " FROM " + TABLE_NOTES
-        + " WHERE " + KEY_TRASHED + " IS NOT 1"
-        + ") USING( " + KEY_CATEGORY + ") "
-        + " GROUP BY "
-        + KEY_CATEGORY_ID + ","
-        + KEY_CATEGORY_NAME + ","
-        + KEY_CATEGORY_DESCRIPTION + ","
-        + KEY_CATEGORY_COLOR
         + " ORDER BY IFNULL(NULLIF(" + KEY_CATEGORY_NAME + ", ''),'zzzzzzzz') ";
 
-    Cursor cursor = null;
-    try {
-      cursor = getDatabase().rawQuery(sql, null);
-      // Looping through all rows and adding to list
-      if (cursor.moveToFirst()) {
-        do {
-          categoriesList.add(new Category(cursor.getLong(0),
-              cursor.getString(1), cursor.getString(2), cursor
-              .getString(3), cursor.getInt(4)));
-        } while (cursor.moveToNext());
-      }
-
-    } finally {
-      if (cursor != null) {
-        cursor.close();
+    try (Cursor cursor = getDatabase().rawQuery(sql, null)) {
+      while (cursor.moveToNext()) {
+        categoriesList.add(new Category(cursor.getLong(0),
+            cursor.getString(1), cursor.getString(2), cursor
+            .getString(3), cursor.getInt(4)));
       }
     }
     return categoriesList;
@@ -886,13 +2084,29 @@ public class DbHelper extends SQLiteOpenHelper {
    * @return Rows affected or new inserted category ID
    */
   public Category updateCategory(Category category) {
+    return dbWriter.write(() -> writeCategory(category));
+  }
+
+
+  private Category writeCategory(Category category) {
     ContentValues values = new ContentValues();
     values.put(KEY_CATEGORY_ID, category.getId() != null ? category.getId() : Calendar.getInstance()
         .getTimeInMillis());
     values.put(KEY_CATEGORY_NAME, category.getName());
     values.put(KEY_CATEGORY_DESCRIPTION, category.getDescription());
     values.put(KEY_CATEGORY_COLOR, category.getColor());
-    getDatabase(true).insertWithOnConflict(TABLE_CATEGORY, KEY_CATEGORY_ID, values, CONFLICT_REPLACE);
+
+    // Category row is updated in place to preserve its notes counter
+    SQLiteDatabase database = getDatabase(true);
+    String id = String.valueOf(values.getAsLong(KEY_CATEGORY_ID));
+    if (database.update(TABLE_CATEGORY, values, KEY_CATEGORY_ID + " = ?", new String[]{id}) == 0) {
+      values.put(KEY_CATEGORY_NOTES_COUNT, DatabaseUtils.queryNumEntries(database, TABLE_NOTES,
+          KEY_CATEGORY + " = ? AND " + KEY_TRASHED + " = 0", new String[]{id}));
+      database.insert(TABLE_CATEGORY, null, values);
+    }
+    synchronized (entitiesCache) {
+      entitiesCache.removeCategory(values.getAsLong(KEY_CATEGORY_ID));
+    }
     return category;
   }
 
@@ -904,42 +2118,79 @@ public class DbHelper extends SQLiteOpenHelper {
    * @return Number 1 if category's record has been deleted, 0 otherwise
    */
   public long deleteCategory(Category category) {
+    return dbWriter.write(() -> writeCategoryDeletion(category));
+  }
+
+
+  private long writeCategoryDeletion(Category category) {
     long deleted;
 
     SQLiteDatabase db = getDatabase(true);
     // Un-categorize notes associated with this category
-    ContentValues values = new ContentValues();
-    values.put(KEY_CATEGORY, "");
-
-    // Updating row
-    db.update(TABLE_NOTES, values, KEY_CATEGORY + " = ?",
-        new String[]{String.valueOf(category.getId())});
+    List<Long> categorizedIds = new ArrayList<>();
+    try (Cursor cursor = db.rawQuery("SELECT " + KEY_ID + " FROM " + TABLE_NOTES
+        + " WHERE " + KEY_CATEGORY + " = ?", new String[]{String.valueOf(category.getId())})) {
+      while (cursor.moveToNext()) {
+        categorizedIds.add(cursor.getLong(0));
+      }
+    }
+    categorizeNotes(categorizedIds, null);
 
     // Delete category
     deleted = db.delete(TABLE_CATEGORY, KEY_CATEGORY_ID + " = ?",
         new String[]{String.valueOf(category.getId())});
+    synchronized (entitiesCache) {
+      entitiesCache.removeCategory(category.getId());
+    }
     return deleted;
   }
 
 
+  /**
+   * Retrieves dynamic navigation counters, kept updated by triggers on notes
+   *
+   * @return Notes count by counter name
+   */
+  public Map<String, Integer> getCounters() {
+    Map<String, Integer> counters = new HashMap<>();
+    String sql = "SELECT " + KEY_COUNTERS_NAME + "," + KEY_COUNTERS_COUNT
+        + " FROM " + TABLE_COUNTERS;
+    try (Cursor cursor = getDatabase().rawQuery(sql, null)) {
+      while (cursor.moveToNext()) {
+        counters.put(cursor.getString(0), cursor.getInt(1));
+      }
+    }
+    return counters;
+  }
+
+
   /**
    * Get note Category
    */
   public Category getCategory(Long id) {
-    Category category = null;
+    Category category;
+    synchronized (entitiesCache) {
+      category = entitiesCache.getCategory(id);
+    }
+    if (category != null) {
+      return category;
+    }
     String sql = "SELECT "
         + KEY_CATEGORY_ID + ","
         + KEY_CATEGORY_NAME + ","
         + KEY_CATEGORY_DESCRIPTION + ","
         + KEY_CATEGORY_COLOR
         + " FROM " + TABLE_CATEGORY
-        + " WHERE " + KEY_CATEGORY_ID + " = " + id;
+        + " WHERE " + KEY_CATEGORY_ID + " = ?";
 
-    try (Cursor cursor = getDatabase().rawQuery(sql, null)) {
+    try (Cursor cursor = getDatabase().rawQuery(sql, new String[]{String.valueOf(id)})) {
 
       if (cursor.moveToFirst()) {
         category = new Category(cursor.getLong(0), cursor.getString(1),
             cursor.getString(2), cursor.getString(3));
+        synchronized (entitiesCache) {
+          entitiesCache.putCategory(category);
+        }
       }
 
     }
@@ -951,9 +2202,10 @@ public class DbHelper extends SQLiteOpenHelper {
     int count = 0;
     String sql = "SELECT COUNT(*)"
         + " FROM " + TABLE_NOTES
-        + " WHERE " + KEY_CATEGORY + " = " + category.getId();
+        + " WHERE " + KEY_CATEGORY + " = ?";
 
-    try (Cursor cursor = getDatabase().rawQuery(sql, null)) {
+    try (Cursor cursor = getDatabase().rawQuery(sql,
+        new String[]{String.valueOf(category.getId())})) {
       if (cursor.moveToFirst()) {
         count = cursor.getInt(0);
       }
@@ -963,126 +2215,226 @@ public class DbHelper extends SQLiteOpenHelper {
 
 
   /**
-   * Retrieves statistics data based on app usage
+   * Retrieves statistics data based on app usage. Everything is aggregated by database using the
+   * text counters stored with each note, so notes are neither loaded nor decrypted.
    */
   public Stats getStats() {
     Stats mStats = new Stats();
+    SQLiteDatabase database = getDatabase();
 
     // Categories
-    mStats.setCategories(getCategories().size());
+    mStats.setCategories((int) DatabaseUtils.queryNumEntries(database, TABLE_CATEGORY));
+
+    // Hashtags occurrences in every note, trashed ones included
+    mStats.setTags((int) DatabaseUtils.queryNumEntries(database, TABLE_NOTE_TAGS));
 
     // Everything about notes and their text stats
-    int notesActive = 0;
-    int notesArchived = 0;
-    int notesTrashed = 0;
-    int reminders = 0;
-    int remindersFuture = 0;
-    int checklists = 0;
-    int notesMasked = 0;
-    int tags = 0;
-    int locations = 0;
-    int totalWords = 0;
-    int totalChars = 0;
-    int maxWords = 0;
-    int maxChars = 0;
-    int avgWords;
-    int avgChars;
-    int words;
-    int chars;
-    List<Note> notes = getAllNotes(false);
-    for (Note note : notes) {
-      if (note.isTrashed()) {
-        notesTrashed++;
-      } else if (note.isArchived()) {
-        notesArchived++;
-      } else {
-        notesActive++;
-      }
-      if (note.getAlarm() != null && Long.parseLong(note.getAlarm()) > 0) {
-        if (Long.parseLong(note.getAlarm()) > Calendar.getInstance().getTimeInMillis()) {
-          remindersFuture++;
-        } else {
-          reminders++;
-        }
-      }
-      if (note.isChecklist()) {
-        checklists++;
-      }
-      if (note.isLocked()) {
-        notesMasked++;
-      }
-      tags += TagsHelper.retrieveTags(note).size();
-      if (note.getLongitude() != null && note.getLongitude() != 0) {
-        locations++;
-      }
-      words = NotesHelper.getWords(note);
-      chars = NotesHelper.getChars(note);
-      if (words > maxWords) {
-        maxWords = words;
-      }
-      if (chars > maxChars) {
-        maxChars = chars;
+    long now = Calendar.getInstance().getTimeInMillis();
+    String notesQuery = "SELECT "
+        + "COUNT(*),"
+        + "SUM(" + KEY_TRASHED + " = 0 AND " + KEY_ARCHIVED + " = 0),"
+        + "SUM(" + KEY_TRASHED + " = 0 AND " + KEY_ARCHIVED + " = 1),"
+        + "SUM(" + KEY_TRASHED + " = 1),"
+        + "SUM(" + KEY_REMINDER + " > 0 AND " + KEY_REMINDER + " <= " + now + "),"
+        + "SUM(" + KEY_REMINDER + " > " + now + "),"
+        + "SUM(" + KEY_CHECKLIST + "),"
+        + "SUM(" + KEY_LOCKED + "),"
+        + "SUM(" + KEY_LONGITUDE + " IS NOT NULL AND " + KEY_LONGITUDE + " != 0),"
+        + "SUM(" + KEY_WORDS + "),"
+        + "MAX(" + KEY_WORDS + "),"
+        + "SUM(" + KEY_CHARS + "),"
+        + "MAX(" + KEY_CHARS + ")"
+        + " FROM " + TABLE_NOTES;
+    try (Cursor cursor = database.rawQuery(notesQuery, null)) {
+      if (cursor.moveToFirst()) {
+        int notes = Math.max(cursor.getInt(0), 1);
+        mStats.setNotesActive(cursor.getInt(1));
+        mStats.setNotesArchived(cursor.getInt(2));
+        mStats.setNotesTrashed(cursor.getInt(3));
+        mStats.setReminders(cursor.getInt(4));
+        mStats.setRemindersFutures(cursor.getInt(5));
+        mStats.setNotesChecklist(cursor.getInt(6));
+        mStats.setNotesMasked(cursor.getInt(7));
+        mStats.setLocation(cursor.getInt(8));
+        mStats.setWords(cursor.getInt(9));
+        mStats.setWordsMax(cursor.getInt(10));
+        mStats.setWordsAvg(cursor.getInt(9) / notes);
+        mStats.setChars(cursor.getInt(11));
+        mStats.setCharsMax(cursor.getInt(12));
+        mStats.setCharsAvg(cursor.getInt(11) / notes);
       }
-      totalWords += words;
-      totalChars += chars;
-    }
-    mStats.setNotesActive(notesActive);
-    mStats.setNotesArchived(notesArchived);
-    mStats.setNotesTrashed(notesTrashed);
-    mStats.setReminders(reminders);
-    mStats.setRemindersFutures(remindersFuture);
-    mStats.setNotesChecklist(checklists);
-    mStats.setNotesMasked(notesMasked);
-    mStats.setTags(tags);
-    mStats.setLocation(locations);
-    avgWords = totalWords / (!notes.isEmpty() ? notes.size() : 1);
-    avgChars = totalChars / (!notes.isEmpty() ? notes.size() : 1);
-
-    mStats.setWords(totalWords);
-    mStats.setWordsMax(maxWords);
-    mStats.setWordsAvg(avgWords);
-    mStats.setChars(totalChars);
-    mStats.setCharsMax(maxChars);
-    mStats.setCharsAvg(avgChars);
+    }
 
     // Everything about attachments
     int attachmentsAll = 0;
-    int images = 0;
-    int videos = 0;
-    int audioRecordings = 0;
-    int sketches = 0;
-    int files = 0;
-
-    List<Attachment> attachments = getAllAttachments();
-    for (Attachment attachment : attachments) {
-      if (MIME_TYPE_IMAGE.equals(attachment.getMime_type())) {
-        images++;
-      } else if (MIME_TYPE_VIDEO.equals(attachment.getMime_type())) {
-        videos++;
-      } else if (MIME_TYPE_AUDIO.equals(attachment.getMime_type())) {
-        audioRecordings++;
-      } else if (MIME_TYPE_SKETCH.equals(attachment.getMime_type())) {
-        sketches++;
-      } else if (MIME_TYPE_FILES.equals(attachment.getMime_type())) {
-        files++;
+    String attachmentsQuery = "SELECT " + KEY_ATTACHMENT_MIME_TYPE + ", COUNT(*)"
+        + " FROM " + TABLE_ATTACHMENTS
+        + " GROUP BY " + KEY_ATTACHMENT_MIME_TYPE;
+    try (Cursor cursor = database.rawQuery(attachmentsQuery, null)) {
+      while (cursor.moveToNext()) {
+        String mimeType = cursor.getString(0);
+        int count = cursor.getInt(1);
+        attachmentsAll += count;
+        if (MIME_TYPE_IMAGE.equals(mimeType)) {
+          mStats.setImages(count);
+        } else if (MIME_TYPE_VIDEO.equals(mimeType)) {
+          mStats.setVideos(count);
+        } else if (MIME_TYPE_AUDIO.equals(mimeType)) {
+          mStats.setAudioRecordings(count);
+        } else if (MIME_TYPE_SKETCH.equals(mimeType)) {
+          mStats.setSketches(count);
+        } else if (MIME_TYPE_FILES.equals(mimeType)) {
+          mStats.setFiles(count);
+        }
       }
     }
     mStats.setAttachments(attachmentsAll);
-    mStats.setImages(images);
-    mStats.setVideos(videos);
-    mStats.setAudioRecordings(audioRecordings);
-    mStats.setSketches(sketches);
-    mStats.setFiles(files);
 
     return mStats;
   }
 
 
   public void setReminderFired(long noteId, boolean fired) {
+    dbWriter.write(() -> {
+      writeReminderFired(noteId, fired);
+      return null;
+    });
+  }
+
+
+  /**
+   * Queues the update of note's reminder fired flag, returning immediately
+   */
+  public Future<Void> setReminderFiredAsync(long noteId, boolean fired) {
+    return dbWriter.submit(() -> {
+      writeReminderFired(noteId, fired);
+      return null;
+    });
+  }
+
+
+  private void writeReminderFired(long noteId, boolean fired) {
     ContentValues values = new ContentValues();
     values.put(KEY_REMINDER_FIRED, fired);
     getDatabase(true)
         .update(TABLE_NOTES, values, KEY_ID + " = ?", new String[]{String.valueOf(noteId)});
+    notifyNotesChanged(Collections.emptyList(), Collections.singletonList(noteId),
+        Collections.emptyList());
+  }
+
+
+  /**
+   * Queues the changes made to a note when its reminder fires, returning immediately: the note is
+   * brought back from archive and, if requested, its reminder marked as fired
+   */
+  public Future<Void> updateFiredReminderAsync(long noteId, boolean markFired) {
+    ContentValues values = new ContentValues();
+    values.put(KEY_ARCHIVED, false);
+    if (markFired) {
+      values.put(KEY_REMINDER_FIRED, true);
+    }
+    return dbWriter.submit(() -> {
+      writeNotesById(Collections.singletonList(noteId), values);
+      return null;
+    });
+  }
+
+
+  /**
+   * Queues the update of note's reminder and recurrence rule, returning immediately. Just reminder
+   * columns are written, so notes coming from intents (i.e. summaries, or snapshots taken when the
+   * reminder was scheduled) can't overwrite content and attachments saved meanwhile.
+   */
+  public Future<Void> setReminderAsync(long noteId, @Nullable String reminder,
+      @Nullable String recurrenceRule) {
+    ContentValues values = new ContentValues();
+    values.put(KEY_REMINDER, reminder);
+    values.put(KEY_RECURRENCE_RULE, recurrenceRule);
+    if (DateUtils.isFuture(reminder)) {
+      values.put(KEY_REMINDER_FIRED, false);
+    }
+    return dbWriter.submit(() -> {
+      writeNotesById(Collections.singletonList(noteId), values);
+      return null;
+    });
+  }
+
+
+  /**
+   * Monotonically increasing version of notes data, incremented on every change
+   */
+  public long getDataVersion() {
+    return dataVersion.get();
+  }
+
+
+  private void notifyNotesChanged(List<Long> insertedIds, List<Long> updatedIds,
+      List<Long> deletedIds) {
+    // Readers must not cache nor be notified about data not committed yet
+    dbWriter.afterCommit(() -> {
+      long version;
+      synchronized (entitiesCache) {
+        version = dataVersion.incrementAndGet();
+        entitiesCache.removeNotes(updatedIds);
+        entitiesCache.removeNotes(deletedIds);
+      }
+      EventBus.getDefault().post(new NotesChangedEvent(version, insertedIds, updatedIds,
+          deletedIds));
+    });
+  }
+
+
+  /**
+   * Drops cached notes and categories, i.e. when password changes and locked notes contents
+   * are no more valid
+   */
+  public void clearCache() {
+    synchronized (entitiesCache) {
+      entitiesCache.clear();
+    }
+  }
+
+
+  public int getCacheHitCount() {
+    synchronized (entitiesCache) {
+      return entitiesCache.hitCount();
+    }
+  }
+
+
+  public int getCacheMissCount() {
+    synchronized (entitiesCache) {
+      return entitiesCache.missCount();
+    }
+  }
+
+
+  /**
+   * @return Number of write operations waiting for the writer
+   */
+  public int getWriteQueueDepth() {
+    return dbWriter.getQueueDepth();
+  }
+
+
+  /**
+   * @return Average time elapsed from write operations submission to their commit, in milliseconds
+   */
+  public long getWriteLatencyAverage() {
+    return dbWriter.getLatencyAverage();
+  }
+
+
+  public long getWriteLatencyMax() {
+    return dbWriter.getLatencyMax();
+  }
+
+
+  /**
+   * @return Average number of write operations committed together
+   */
+  public float getWriteGroupSizeAverage() {
+    return dbWriter.getGroupSizeAverage();
   }
 
 
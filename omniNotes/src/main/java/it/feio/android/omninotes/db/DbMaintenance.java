@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import static it.feio.android.omninotes.db.MaintenanceReport.STEP_ANALYZE;
+import static it.feio.android.omninotes.db.MaintenanceReport.STEP_COMPRESSION;
+import static it.feio.android.omninotes.db.MaintenanceReport.STEP_OPTIMIZE;
+import static it.feio.android.omninotes.db.MaintenanceReport.STEP_SEARCH_INDEX;
+import static it.feio.android.omninotes.db.MaintenanceReport.STEP_TAGS_INDEX;
+import static it.feio.android.omninotes.db.MaintenanceReport.STEP_VACUUM;
+
+import android.os.SystemClock;
+import it.feio.android.omninotes.helpers.LogDelegate;
+import java.util.Calendar;
+
+
+/**
+ * Database housekeeping, meant to be run while device is idle. Every step is a separate write
+ * operation, so notes can still be saved in between, and maintenance can be stopped after any of
+ * them. Steps that are not needed (not enough free space, indexes matching notes) are skipped.
+ */
+public class DbMaintenance {
+
+  // Free space below this threshold is not worth vacuuming
+  static final long VACUUM_THRESHOLD_BYTES = 1024 * 1024;
+  // Notes examined by each compression write, to not hold the writer for too long
+  private static final int COMPRESSION_CHUNK_SIZE = 50;
+
+  private final DbHelper dbHelper;
+  private volatile boolean stopped;
+
+
+  public DbMaintenance(DbHelper dbHelper) {
+    this.dbHelper = dbHelper;
+  }
+
+
+  /**
+   * Asks to stop after the running step
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+
+  public MaintenanceReport run() {
+    MaintenanceReport report = new MaintenanceReport(Calendar.getInstance().getTimeInMillis());
+
+    long start = SystemClock.elapsedRealtime();
+    dbHelper.analyze();
+    report.addStep(STEP_ANALYZE, SystemClock.elapsedRealtime() - start, 0);
+
+    if (!stopped) {
+      start = SystemClock.elapsedRealtime();
+      dbHelper.optimize();
+      report.addStep(STEP_OPTIMIZE, SystemClock.elapsedRealtime() - start, 0);
+    }
+
+    // Space freed by compression is then given back by vacuum
+    if (!stopped) {
+      start = SystemClock.elapsedRealtime();
+      long lastId = 0;
+      do {
+        lastId = dbHelper.compressNotes(lastId, COMPRESSION_CHUNK_SIZE);
+      } while (lastId != 0 && !stopped);
+      report.addStep(STEP_COMPRESSION, SystemClock.elapsedRealtime() - start, 0);
+    }
+
+    if (!stopped && dbHelper.getFreeSpace() >= VACUUM_THRESHOLD_BYTES) {
+      start = SystemClock.elapsedRealtime();
+      long reclaimedBytes = dbHelper.reclaimFreeSpace();
+      report.addStep(STEP_VACUUM, SystemClock.elapsedRealtime() - start, reclaimedBytes);
+    }
+
+    if (!stopped && dbHelper.isSearchIndexDrifted()) {
+      start = SystemClock.elapsedRealtime();
+      dbHelper.rebuildSearchIndex();
+      report.addStep(STEP_SEARCH_INDEX, SystemClock.elapsedRealtime() - start, 0);
+    }
+
+    if (!stopped && dbHelper.isTagsIndexDrifted()) {
+      start = SystemClock.elapsedRealtime();
+      dbHelper.rebuildTagsIndex();
+      report.addStep(STEP_TAGS_INDEX, SystemClock.elapsedRealtime() - start, 0);
+    }
+
+    report.setCompleted(!stopped);
+    for (MaintenanceReport.Step step : report.getSteps()) {
+      LogDelegate.i("Database maintenance " + step.getName() + ": " + step.getDuration() + " ms, "
+          + step.getReclaimedBytes() + " bytes reclaimed");
+    }
+    report.save();
+    return report;
+  }
+
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Looper;
+import it.feio.android.omninotes.exceptions.DatabaseException;
+import it.feio.android.omninotes.helpers.LogDelegate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Single thread performing all database writes. Operations queued meanwhile a transaction is
+ * running are committed together by the next one (group commit), so that concurrent writers pay
+ * the cost of a single commit. If a group fails its operations are replayed one at a time, hence
+ * they must be repeatable, and only the failing one is completed with its exception.
+ * <p>
+ * Changes notifications are deferred after the commit of the group, so that nobody reads data not
+ * yet committed. Exclusive operations (i.e. VACUUM) run alone, outside of any transaction.
+ */
+class DbWriter {
+
+  private static final int MAX_GROUP_SIZE = 64;
+
+  private final DbHelper dbHelper;
+  private final BlockingQueue<WriteOperation<?>> queue = new LinkedBlockingQueue<>();
+  private final List<Runnable> afterCommitActions = new ArrayList<>();
+  private volatile Thread thread;
+  private boolean inGroup;
+
+  // Metrics
+  private long committedOperations;
+  private long committedGroups;
+  private long totalLatencyNanos;
+  private long maxLatencyNanos;
+
+
+  DbWriter(DbHelper dbHelper) {
+    this.dbHelper = dbHelper;
+  }
+
+
+  /**
+   * Queues a write operation
+   *
+   * @return Future completed when operation has been committed
+   */
+  <T> Future<T> submit(Callable<T> callable) {
+    return submit(callable, true);
+  }
+
+
+  private <T> Future<T> submit(Callable<T> callable, boolean transactional) {
+    WriteOperation<T> operation = new WriteOperation<>(callable, transactional);
+    startIfNeeded();
+    queue.add(operation);
+    return operation;
+  }
+
+
+  /**
+   * Performs a write operation waiting for its commit. Operations issued by other operations (i.e.
+   * from notes changes listeners) are run straight away. Since the operation may be queued behind
+   * long ones (i.e. VACUUM or notes re-encryption) it must not be called on main thread, where
+   * {@link #submit(Callable)} has to be used instead.
+   */
+  <T> T write(Callable<T> callable) {
+    if (Thread.currentThread() == thread) {
+      try {
+        return callable.call();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new DatabaseException("Write operation failed", e);
+      }
+    }
+    checkNotMainThread();
+    return await(submit(callable));
+  }
+
+
+  /**
+   * Performs an operation that can't be run within a transaction, waiting for its completion. Must
+   * not be called on main thread.
+   */
+  <T> T writeExclusive(Callable<T> callable) {
+    if (Thread.currentThread() == thread) {
+      throw new IllegalStateException("Exclusive operations can't be nested");
+    }
+    checkNotMainThread();
+    return await(submit(callable, false));
+  }
+
+
+  private static void checkNotMainThread() {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      throw new IllegalStateException("Database writes can't be awaited on main thread");
+    }
+  }
+
+
+  static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatabaseException("Interrupted while waiting for write operation", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new DatabaseException("Write operation failed", e);
+    }
+  }
+
+
+  /**
+   * Runs the action after the commit of the group being written, or immediately if not called
+   * within an operation
+   */
+  void afterCommit(Runnable action) {
+    if (Thread.currentThread() == thread && inGroup) {
+      afterCommitActions.add(action);
+    } else {
+      action.run();
+    }
+  }
+
+
+  private synchronized void startIfNeeded() {
+    if (thread == null) {
+      thread = new Thread(this::loop, "DbWriter");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+
+  private void loop() {
+    List<WriteOperation<?>> group = new ArrayList<>(MAX_GROUP_SIZE);
+    while (true) {
+      WriteOperation<?> operation;
+      try {
+        operation = queue.take();
+      } catch (InterruptedException e) {
+        LogDelegate.w("Database writer interrupted");
+        continue;
+      }
+      if (!operation.transactional) {
+        runExclusive(operation);
+        continue;
+      }
+      group.add(operation);
+      while (group.size() < MAX_GROUP_SIZE && queue.peek() != null
+          && queue.peek().transactional) {
+        group.add(queue.poll());
+      }
+      try {
+        if (!commit(group) && group.size() > 1) {
+          LogDelegate.w("Group commit of " + group.size() + " operations failed, replaying them");
+          for (WriteOperation<?> groupOperation : group) {
+            commit(Collections.singletonList(groupOperation));
+          }
+        }
+      } catch (Throwable t) {
+        // Writer must survive anything, otherwise whoever is waiting for a write would hang forever
+        LogDelegate.e("Database writer error", t);
+        afterCommitActions.clear();
+        for (WriteOperation<?> groupOperation : group) {
+          groupOperation.fail(t);
+        }
+      }
+      group.clear();
+    }
+  }
+
+
+  /**
+   * @return False if the group failed and has been rolled back without completing its operations,
+   * unless it was made by a single one
+   */
+  private boolean commit(List<WriteOperation<?>> group) {
+    Object[] results = new Object[group.size()];
+    SQLiteDatabase db = dbHelper.getDatabase(true);
+    inGroup = true;
+    try {
+      db.beginTransaction();
+      try {
+        for (int i = 0; i < group.size(); i++) {
+          results[i] = group.get(i).perform();
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+    } catch (Throwable t) {
+      afterCommitActions.clear();
+      if (group.size() == 1) {
+        LogDelegate.e("Write operation failed", t);
+        group.get(0).fail(t);
+      }
+      return false;
+    } finally {
+      inGroup = false;
+    }
+
+    updateMetrics(group);
+    for (Runnable action : afterCommitActions) {
+      try {
+        action.run();
+      } catch (RuntimeException e) {
+        LogDelegate.e("Error running post-commit action", e);
+      }
+    }
+    afterCommitActions.clear();
+    for (int i = 0; i < group.size(); i++) {
+      group.get(i).complete(results[i]);
+    }
+    return true;
+  }
+
+
+  private void runExclusive(WriteOperation<?> operation) {
+    Object result;
+    try {
+      result = operation.perform();
+    } catch (Throwable t) {
+      LogDelegate.e("Exclusive write operation failed", t);
+      operation.fail(t);
+      return;
+    }
+    updateMetrics(Collections.singletonList(operation));
+    operation.complete(result);
+  }
+
+
+  private synchronized void updateMetrics(List<WriteOperation<?>> group) {
+    long now = System.nanoTime();
+    committedGroups++;
+    for (WriteOperation<?> operation : group) {
+      long latency = now - operation.enqueuedAt;
+      committedOperations++;
+      totalLatencyNanos += latency;
+      maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+    }
+  }
+
+
+  /**
+   * @return Number of operations waiting to be written
+   */
+  int getQueueDepth() {
+    return queue.size();
+  }
+
+
+  /**
+   * @return Average time elapsed from operations submission to their commit, in milliseconds
+   */
+  synchronized long getLatencyAverage() {
+    return committedOperations == 0 ? 0
+        : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos / committedOperations);
+  }
+
+
+  /**
+   * @return Max time elapsed from an operation submission to its commit, in milliseconds
+   */
+  synchronized long getLatencyMax() {
+    return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos);
+  }
+
+
+  /**
+   * @return Average number of operations committed by a single transaction
+   */
+  synchronized float getGroupSizeAverage() {
+    return committedGroups == 0 ? 0 : (float) committedOperations / committedGroups;
+  }
+
+
+  private static class WriteOperation<T> extends FutureTask<T> {
+
+    private final Callable<T> callable;
+    private final boolean transactional;
+    private final long enqueuedAt = System.nanoTime();
+
+
+    WriteOperation(Callable<T> callable, boolean transactional) {
+      super(callable);
+      this.callable = callable;
+      this.transactional = transactional;
+    }
+
+
+    T perform() throws Exception {
+      return callable.call();
+    }
+
+
+    @SuppressWarnings("unchecked")
+    void complete(Object result) {
+      set((T) result);
+    }
+
+
+    void fail(Throwable throwable) {
+      setException(throwable);
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import android.util.LruCache;
+import it.feio.android.omninotes.models.Attachment;
+import it.feio.android.omninotes.models.Category;
+import it.feio.android.omninotes.models.Note;
+import java.util.ArrayList;
+import java.util.Collection;
+
+
+/**
+ * Least recently used cache of notes and categories retrieved by ID, bounded by their estimated
+ * size in bytes. Copies are stored and returned, so that callers can freely modify entities.
+ * <p>
+ * Notes of locked notes are kept decrypted, so the cache must be cleared when password changes.
+ */
+class EntitiesCache {
+
+  private static final int NOTES_MAX_BYTES = 1024 * 1024;
+  private static final int CATEGORIES_MAX_BYTES = 64 * 1024;
+
+  // Rough object overhead of entities fields and boxed values
+  private static final int NOTE_OVERHEAD_BYTES = 256;
+  private static final int ATTACHMENT_OVERHEAD_BYTES = 128;
+  private static final int CATEGORY_OVERHEAD_BYTES = 64;
+
+  private final LruCache<Long, Note> notes = new LruCache<Long, Note>(NOTES_MAX_BYTES) {
+    @Override
+    protected int sizeOf(Long key, Note note) {
+      return estimateSize(note);
+    }
+  };
+
+  private final LruCache<Long, Category> categories = new LruCache<Long, Category>(
+      CATEGORIES_MAX_BYTES) {
+    @Override
+    protected int sizeOf(Long key, Category category) {
+      return estimateSize(category);
+    }
+  };
+
+
+  Note getNote(long id) {
+    Note note = notes.get(id);
+    return note != null ? copy(note) : null;
+  }
+
+
+  void putNote(Note note) {
+    if (note.get_id() != null) {
+      notes.put(note.get_id(), copy(note));
+    }
+  }
+
+
+  void removeNotes(Collection<Long> ids) {
+    for (Long id : ids) {
+      notes.remove(id);
+    }
+  }
+
+
+  Category getCategory(long id) {
+    Category category = categories.get(id);
+    return category != null ? new Category(category) : null;
+  }
+
+
+  void putCategory(Category category) {
+    if (category.getId() != null) {
+      categories.put(category.getId(), new Category(category));
+    }
+  }
+
+
+  /**
+   * Cached notes are dropped too, as they could embed the previous version of the category
+   */
+  void removeCategory(long id) {
+    categories.remove(id);
+    notes.evictAll();
+  }
+
+
+  void clear() {
+    notes.evictAll();
+    categories.evictAll();
+  }
+
+
+  int hitCount() {
+    return notes.hitCount() + categories.hitCount();
+  }
+
+
+  int missCount() {
+    return notes.missCount() + categories.missCount();
+  }
+
+
+  private static Note copy(Note note) {
+    Note copy = new Note(note);
+    copy.setAttachmentsList(new ArrayList<>(note.getAttachmentsList()));
+    if (note.getCategory() != null) {
+      copy.setCategory(new Category(note.getCategory()));
+    }
+    return copy;
+  }
+
+
+  private static int estimateSize(Note note) {
+    int size = NOTE_OVERHEAD_BYTES + estimateSize(note.getTitle()) + estimateSize(
+        note.getStoredContent()) + estimateSize(note.getAddress()) + estimateSize(
+        note.getRecurrenceRule());
+    for (Attachment attachment : note.getAttachmentsList()) {
+      size += ATTACHMENT_OVERHEAD_BYTES + estimateSize(attachment.getName())
+          + estimateSize(attachment.getUri().toString());
+    }
+    if (note.getCategory() != null) {
+      size += estimateSize(note.getCategory());
+    }
+    return size;
+  }
+
+
+  private static int estimateSize(Category category) {
+    return CATEGORY_OVERHEAD_BYTES + estimateSize(category.getName())
+        + estimateSize(category.getDescription()) + estimateSize(category.getColor());
+  }
+
+
+  // Strings are made of UTF-16 chars
+  private static int estimateSize(String text) {
+    return text != null ? text.length() * 2 : 0;
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_DB_MAINTENANCE_REPORT;
+
+import androidx.annotation.Nullable;
+import com.pixplicity.easyprefs.library.Prefs;
+import it.feio.android.omninotes.helpers.LogDelegate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+/**
+ * Outcome of a database maintenance run, persisted to be shown in settings
+ */
+public class MaintenanceReport {
+
+  public static final String STEP_ANALYZE = "ANALYZE";
+  public static final String STEP_OPTIMIZE = "optimize";
+  public static final String STEP_COMPRESSION = "compression";
+  public static final String STEP_VACUUM = "VACUUM";
+  public static final String STEP_SEARCH_INDEX = "search index";
+  public static final String STEP_TAGS_INDEX = "tags index";
+
+  private static final String JSON_DATE = "date";
+  private static final String JSON_COMPLETED = "completed";
+  private static final String JSON_STEPS = "steps";
+  private static final String JSON_NAME = "name";
+  private static final String JSON_DURATION = "duration";
+  private static final String JSON_RECLAIMED = "reclaimed";
+
+  @Getter
+  private final long date;
+  @Getter
+  private boolean completed;
+  private final List<Step> steps = new ArrayList<>();
+
+
+  MaintenanceReport(long date) {
+    this.date = date;
+  }
+
+
+  void addStep(String name, long duration, long reclaimedBytes) {
+    LogDelegate.i("Database maintenance step " + name + " took " + duration + "ms"
+        + (reclaimedBytes > 0 ? ", reclaimed " + reclaimedBytes + " bytes" : ""));
+    steps.add(new Step(name, duration, reclaimedBytes));
+  }
+
+
+  void setCompleted(boolean completed) {
+    this.completed = completed;
+  }
+
+
+  public List<Step> getSteps() {
+    return Collections.unmodifiableList(steps);
+  }
+
+
+  public long getDuration() {
+    long duration = 0;
+    for (Step step : steps) {
+      duration += step.duration;
+    }
+    return duration;
+  }
+
+
+  public long getReclaimedBytes() {
+    long reclaimedBytes = 0;
+    for (Step step : steps) {
+      reclaimedBytes += step.reclaimedBytes;
+    }
+    return reclaimedBytes;
+  }
+
+
+  void save() {
+    JSONObject json = new JSONObject();
+    try {
+      json.put(JSON_DATE, date);
+      json.put(JSON_COMPLETED, completed);
+      JSONArray jsonSteps = new JSONArray();
+      for (Step step : steps) {
+        jsonSteps.put(new JSONObject()
+            .put(JSON_NAME, step.name)
+            .put(JSON_DURATION, step.duration)
+            .put(JSON_RECLAIMED, step.reclaimedBytes));
+      }
+      json.put(JSON_STEPS, jsonSteps);
+    } catch (JSONException e) {
+      LogDelegate.e("Error serializing maintenance report", e);
+      return;
+    }
+    Prefs.putString(PREF_DB_MAINTENANCE_REPORT, json.toString());
+  }
+
+
+  /**
+   * @return Report of last maintenance run, null if it never ran
+   */
+  @Nullable
+  public static MaintenanceReport getLast() {
+    String jsonString = Prefs.getString(PREF_DB_MAINTENANCE_REPORT, null);
+    if (jsonString == null) {
+      return null;
+    }
+    try {
+      JSONObject json = new JSONObject(jsonString);
+      MaintenanceReport report = new MaintenanceReport(json.getLong(JSON_DATE));
+      report.completed = json.optBoolean(JSON_COMPLETED);
+      JSONArray jsonSteps = json.getJSONArray(JSON_STEPS);
+      for (int i = 0; i < jsonSteps.length(); i++) {
+        JSONObject jsonStep = jsonSteps.getJSONObject(i);
+        report.steps.add(new Step(jsonStep.getString(JSON_NAME), jsonStep.getLong(JSON_DURATION),
+            jsonStep.optLong(JSON_RECLAIMED)));
+      }
+      return report;
+    } catch (JSONException e) {
+      LogDelegate.w("Invalid maintenance report: " + jsonString);
+      return null;
+    }
+  }
+
+
+  public static class Step {
+
+    @Getter
+    private final String name;
+    @Getter
+    private final long duration;
+    @Getter
+    private final long reclaimedBytes;
+
+
+    Step(String name, long duration, long reclaimedBytes) {
+      this.name = name;
+      this.duration = duration;
+      this.reclaimedBytes = reclaimedBytes;
+    }
+  }
+
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import static it.feio.android.checklistview.interfaces.Constants.UNCHECKED_SYM;
+import static it.feio.android.omninotes.db.DbHelper.FTS5_MODULE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ARCHIVED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CATEGORY;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CHECKLIST;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CONTENT;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CREATION;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ID;
+import static it.feio.android.omninotes.db.DbHelper.KEY_LOCKED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_LONGITUDE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_NOTE_TAGS_NOTE_ID;
+import static it.feio.android.omninotes.db.DbHelper.KEY_NOTE_TAGS_TAG;
+import static it.feio.android.omninotes.db.DbHelper.KEY_REMINDER;
+import static it.feio.android.omninotes.db.DbHelper.KEY_REMINDER_FIRED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_TITLE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_TRASHED;
+import static it.feio.android.omninotes.db.DbHelper.TABLE_NOTES_FTS;
+import static it.feio.android.omninotes.db.DbHelper.TABLE_NOTE_TAGS;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_FILTER_ARCHIVED_IN_CATEGORIES;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_FILTER_PAST_REMINDERS;
+
+import androidx.annotation.Nullable;
+import com.pixplicity.easyprefs.library.Prefs;
+import it.feio.android.omninotes.helpers.LogDelegate;
+import it.feio.android.omninotes.utils.Navigation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+/**
+ * Criteria of notes retrieval. Criteria are combined in AND and compiled into SQL whose values are
+ * all bound as parameters, so that the same compiled statement is reused by SQLite whatever values
+ * are searched. Queries can be persisted as JSON (i.e. by widgets) and replayed later.
+ */
+public class NoteQuery {
+
+  private static final String JSON_NAVIGATION = "navigation";
+  private static final String JSON_TRASHED = "trashed";
+  private static final String JSON_ARCHIVED = "archived";
+  private static final String JSON_CATEGORY = "category";
+  private static final String JSON_UNCATEGORIZED = "uncategorized";
+  private static final String JSON_TAGS = "tags";
+  private static final String JSON_WITH_REMINDER = "withReminder";
+  private static final String JSON_REMINDER_FROM = "reminderFrom";
+  private static final String JSON_REMINDER_TO = "reminderTo";
+  private static final String JSON_REMINDER_FIRED = "reminderFired";
+  private static final String JSON_CHECKLIST = "checklist";
+  private static final String JSON_UNCOMPLETED_CHECKLIST = "uncompletedChecklist";
+  private static final String JSON_LOCKED = "locked";
+  private static final String JSON_WITH_LOCATION = "withLocation";
+  private static final String JSON_TEXT = "text";
+  private static final String JSON_SORT_COLUMN = "sortColumn";
+  private static final String JSON_SORTED = "sorted";
+
+  private Integer navigation;
+  private Boolean trashed;
+  private Boolean archived;
+  private Long categoryId;
+  private boolean uncategorized;
+  private String[] tags;
+  private boolean withReminder;
+  private Long reminderFrom;
+  private Long reminderTo;
+  private Boolean reminderFired;
+  private Boolean checklist;
+  private boolean uncompletedChecklist;
+  private Boolean locked;
+  private boolean withLocation;
+  private String text;
+  private String sortColumn;
+  private boolean sorted = true;
+
+
+  /**
+   * Notes shown by a navigation drawer entry. Navigation is resolved when query is performed, so
+   * that time dependent criteria (i.e. past reminders filtering) are always up to date.
+   */
+  public static NoteQuery navigation(int navigation) {
+    NoteQuery query = new NoteQuery();
+    query.navigation = navigation;
+    if (navigation == Navigation.CATEGORY) {
+      query.categoryId = Navigation.getCategory();
+    }
+    return query;
+  }
+
+
+  /**
+   * Notes of a category, as shown when navigating it
+   */
+  public static NoteQuery categoryNavigation(Long categoryId) {
+    NoteQuery query = new NoteQuery();
+    query.navigation = Navigation.CATEGORY;
+    query.categoryId = categoryId;
+    return query;
+  }
+
+
+  /**
+   * Notes searchable from current navigation: trashed notes are searched only from trash and
+   * archived ones are included unless search is performed from archive, where they're the only ones
+   */
+  public static NoteQuery searchScope() {
+    int currentNavigation = Navigation.getNavigation();
+    NoteQuery query = new NoteQuery().trashed(currentNavigation == Navigation.TRASH);
+    switch (currentNavigation) {
+      case Navigation.ARCHIVE:
+        return query.archived(true);
+      case Navigation.CATEGORY:
+        return query.category(Navigation.getCategory());
+      case Navigation.UNCATEGORIZED:
+        return query.uncategorized();
+      case Navigation.REMINDERS:
+        return query.withReminder();
+      default:
+        return query;
+    }
+  }
+
+
+  public NoteQuery trashed(boolean trashed) {
+    this.trashed = trashed;
+    return this;
+  }
+
+
+  public NoteQuery archived(boolean archived) {
+    this.archived = archived;
+    return this;
+  }
+
+
+  public NoteQuery category(Long categoryId) {
+    this.categoryId = categoryId;
+    return this;
+  }
+
+
+  public NoteQuery uncategorized() {
+    this.uncategorized = true;
+    return this;
+  }
+
+
+  /**
+   * Notes having all the given hashtags
+   */
+  public NoteQuery tags(String... tags) {
+    this.tags = tags;
+    return this;
+  }
+
+
+  public NoteQuery withReminder() {
+    this.withReminder = true;
+    return this;
+  }
+
+
+  /**
+   * Notes with reminder set in the given time window
+   *
+   * @param from Inclusive lower bound, null for no bound
+   * @param to Exclusive upper bound, null for no bound
+   */
+  public NoteQuery reminderBetween(@Nullable Long from, @Nullable Long to) {
+    this.withReminder = true;
+    this.reminderFrom = from;
+    this.reminderTo = to;
+    return this;
+  }
+
+
+  public NoteQuery reminderFired(boolean reminderFired) {
+    this.reminderFired = reminderFired;
+    return this;
+  }
+
+
+  public NoteQuery checklist(boolean checklist) {
+    this.checklist = checklist;
+    return this;
+  }
+
+
+  public NoteQuery uncompletedChecklist() {
+    this.checklist = true;
+    this.uncompletedChecklist = true;
+    return this;
+  }
+
+
+  public NoteQuery locked(boolean locked) {
+    this.locked = locked;
+    return this;
+  }
+
+
+  public NoteQuery withLocation() {
+    this.withLocation = true;
+    return this;
+  }
+
+
+  /**
+   * Full-text search. Locked notes are matched only by their title.
+   */
+  public NoteQuery text(String text) {
+    this.text = text;
+    return this;
+  }
+
+
+  /**
+   * Sorts by the given column instead of user's preferred one
+   */
+  public NoteQuery sortBy(String sortColumn) {
+    this.sortColumn = sortColumn;
+    return this;
+  }
+
+
+  public NoteQuery unsorted() {
+    this.sorted = false;
+    return this;
+  }
+
+
+  public Integer getNavigation() {
+    return navigation;
+  }
+
+
+  public Long getCategoryId() {
+    return categoryId;
+  }
+
+
+  public String getText() {
+    return text;
+  }
+
+
+  String getSortColumn() {
+    return sortColumn;
+  }
+
+
+  boolean isSorted() {
+    return sorted;
+  }
+
+
+  /**
+   * Builds the join and where conditions of the query, collecting their parameters in order
+   *
+   * @param ftsModule Module of the full-text index, null if not available
+   */
+  Compiled compile(@Nullable String ftsModule) {
+    Compiled compiled = new Compiled();
+    List<String> conditions = new ArrayList<>();
+    List<String> joinArgs = new ArrayList<>();
+    List<String> whereArgs = new ArrayList<>();
+    StringBuilder joinCondition = new StringBuilder();
+
+    if (navigation != null) {
+      appendNavigationConditions(conditions, whereArgs);
+    }
+    if (trashed != null) {
+      conditions.add(KEY_TRASHED + " = " + (trashed ? 1 : 0));
+    }
+    if (archived != null) {
+      conditions.add(KEY_ARCHIVED + " = " + (archived ? 1 : 0));
+    }
+    if (categoryId != null) {
+      conditions.add(KEY_CATEGORY + " = ?");
+      whereArgs.add(String.valueOf(categoryId));
+    }
+    if (uncategorized) {
+      conditions.add(KEY_CATEGORY + " IS NULL");
+    }
+    if (withReminder) {
+      conditions.add(KEY_REMINDER + " IS NOT NULL");
+    }
+    if (reminderFrom != null) {
+      conditions.add(KEY_REMINDER + " >= ?");
+      whereArgs.add(String.valueOf(reminderFrom));
+    }
+    if (reminderTo != null) {
+      conditions.add(KEY_REMINDER + " < ?");
+      whereArgs.add(String.valueOf(reminderTo));
+    }
+    if (reminderFired != null) {
+      conditions.add(KEY_REMINDER_FIRED + " = " + (reminderFired ? 1 : 0));
+    }
+    if (checklist != null) {
+      conditions.add(KEY_CHECKLIST + " = " + (checklist ? 1 : 0));
+    }
+    if (uncompletedChecklist) {
+      conditions.add(KEY_CONTENT + " LIKE ? ESCAPE '\\'");
+      whereArgs.add("%" + escapeLike(UNCHECKED_SYM) + "%");
+    }
+    if (locked != null) {
+      conditions.add(KEY_LOCKED + " = " + (locked ? 1 : 0));
+    }
+    if (withLocation) {
+      conditions.add(KEY_LONGITUDE + " IS NOT NULL AND " + KEY_LONGITUDE + " != 0");
+    }
+
+    if (tags != null && tags.length > 0) {
+      // Notes having all the tags are found through hashtags index
+      Set<String> distinctTags = new LinkedHashSet<>(Arrays.asList(tags));
+      joinCondition.append(" JOIN (SELECT ").append(KEY_NOTE_TAGS_NOTE_ID)
+          .append(" FROM ").append(TABLE_NOTE_TAGS)
+          .append(" WHERE ").append(KEY_NOTE_TAGS_TAG).append(" IN (")
+          .append(StringUtils.repeat("?", ",", distinctTags.size())).append(")")
+          .append(" GROUP BY ").append(KEY_NOTE_TAGS_NOTE_ID)
+          .append(" HAVING COUNT(*) = ").append(distinctTags.size())
+          .append(") ON ").append(KEY_NOTE_TAGS_NOTE_ID).append(" = ").append(KEY_CREATION);
+      joinArgs.addAll(distinctTags);
+    }
+
+    if (text != null) {
+      boolean fts5 = FTS5_MODULE.equals(ftsModule);
+      String matchExpression = DbHelper.buildMatchExpression(text, fts5);
+      if (ftsModule != null && matchExpression != null) {
+        // Locked notes have only their title indexed, so title-only semantics are kept for them
+        joinCondition.append(" JOIN (SELECT rowid AS fts_id")
+            .append(fts5 ? ", bm25(" + TABLE_NOTES_FTS + ") AS fts_rank" : "")
+            .append(" FROM ").append(TABLE_NOTES_FTS)
+            .append(" WHERE ").append(TABLE_NOTES_FTS).append(" MATCH ?) ON fts_id = ")
+            .append(KEY_ID);
+        joinArgs.add(matchExpression);
+        compiled.ranked = fts5;
+      } else {
+        // Notes are compressed only when full-text index is available, so content here is whole
+        String likePattern = "%" + escapeLike(text) + "%";
+        conditions.add("((" + KEY_LOCKED + " = 0 AND (" + KEY_TITLE + " LIKE ? ESCAPE '\\' OR "
+            + KEY_CONTENT + " LIKE ? ESCAPE '\\'))"
+            + " OR (" + KEY_LOCKED + " = 1 AND " + KEY_TITLE + " LIKE ? ESCAPE '\\'))");
+        whereArgs.add(likePattern);
+        whereArgs.add(likePattern);
+        whereArgs.add(likePattern);
+      }
+    }
+
+    compiled.joinCondition = joinCondition.toString();
+    compiled.whereCondition = conditions.isEmpty()
+        ? ""
+        : " WHERE " + StringUtils.join(conditions, " AND ") + " ";
+    compiled.args = new ArrayList<>(joinArgs);
+    compiled.args.addAll(whereArgs);
+    return compiled;
+  }
+
+
+  private void appendNavigationConditions(List<String> conditions, List<String> args) {
+    switch (navigation) {
+      case Navigation.NOTES:
+        conditions.add(KEY_ARCHIVED + " = 0 AND " + KEY_TRASHED + " = 0");
+        break;
+      case Navigation.ARCHIVE:
+        conditions.add(KEY_ARCHIVED + " = 1 AND " + KEY_TRASHED + " = 0");
+        break;
+      case Navigation.REMINDERS:
+        if (Prefs.getBoolean(PREF_FILTER_PAST_REMINDERS, false)) {
+          conditions.add(KEY_REMINDER + " >= ?");
+          args.add(String.valueOf(Calendar.getInstance().getTimeInMillis()));
+        } else {
+          conditions.add(KEY_REMINDER + " IS NOT NULL");
+        }
+        conditions.add(KEY_ARCHIVED + " = 0 AND " + KEY_TRASHED + " = 0");
+        break;
+      case Navigation.TRASH:
+        conditions.add(KEY_TRASHED + " = 1");
+        break;
+      case Navigation.UNCATEGORIZED:
+        conditions.add(KEY_CATEGORY + " IS NULL AND " + KEY_TRASHED + " = 0");
+        break;
+      case Navigation.CATEGORY:
+        conditions.add(KEY_TRASHED + " = 0");
+        if (Prefs.getBoolean(PREF_FILTER_ARCHIVED_IN_CATEGORIES + categoryId, false)) {
+          conditions.add(KEY_ARCHIVED + " = 0");
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+
+  static String escapeLike(String pattern) {
+    return pattern.replace("\\", "\\\\")
+        .replace("%", "\\%")
+        .replace("_", "\\_");
+  }
+
+
+  public String toJson() {
+    JSONObject json = new JSONObject();
+    try {
+      json.putOpt(JSON_NAVIGATION, navigation);
+      json.putOpt(JSON_TRASHED, trashed);
+      json.putOpt(JSON_ARCHIVED, archived);
+      json.putOpt(JSON_CATEGORY, categoryId);
+      json.put(JSON_UNCATEGORIZED, uncategorized);
+      if (tags != null) {
+        json.put(JSON_TAGS, new JSONArray(Arrays.asList(tags)));
+      }
+      json.put(JSON_WITH_REMINDER, withReminder);
+      json.putOpt(JSON_REMINDER_FROM, reminderFrom);
+      json.putOpt(JSON_REMINDER_TO, reminderTo);
+      json.putOpt(JSON_REMINDER_FIRED, reminderFired);
+      json.putOpt(JSON_CHECKLIST, checklist);
+      json.put(JSON_UNCOMPLETED_CHECKLIST, uncompletedChecklist);
+      json.putOpt(JSON_LOCKED, locked);
+      json.put(JSON_WITH_LOCATION, withLocation);
+      json.putOpt(JSON_TEXT, text);
+      json.putOpt(JSON_SORT_COLUMN, sortColumn);
+      json.put(JSON_SORTED, sorted);
+    } catch (JSONException e) {
+      LogDelegate.e("Error serializing notes query", e);
+    }
+    return json.toString();
+  }
+
+
+  /**
+   * @return Query or null if JSON is not a valid query
+   */
+  @Nullable
+  public static NoteQuery fromJson(String jsonString) {
+    try {
+      JSONObject json = new JSONObject(jsonString);
+      NoteQuery query = new NoteQuery();
+      query.navigation = json.has(JSON_NAVIGATION) ? json.getInt(JSON_NAVIGATION) : null;
+      query.trashed = json.has(JSON_TRASHED) ? json.getBoolean(JSON_TRASHED) : null;
+      query.archived = json.has(JSON_ARCHIVED) ? json.getBoolean(JSON_ARCHIVED) : null;
+      query.categoryId = json.has(JSON_CATEGORY) ? json.getLong(JSON_CATEGORY) : null;
+      query.uncategorized = json.optBoolean(JSON_UNCATEGORIZED);
+      JSONArray jsonTags = json.optJSONArray(JSON_TAGS);
+      if (jsonTags != null) {
+        query.tags = new String[jsonTags.length()];
+        for (int i = 0; i < jsonTags.length(); i++) {
+          query.tags[i] = jsonTags.getString(i);
+        }
+      }
+      query.withReminder = json.optBoolean(JSON_WITH_REMINDER);
+      query.reminderFrom = json.has(JSON_REMINDER_FROM) ? json.getLong(JSON_REMINDER_FROM) : null;
+      query.reminderTo = json.has(JSON_REMINDER_TO) ? json.getLong(JSON_REMINDER_TO) : null;
+      query.reminderFired =
+          json.has(JSON_REMINDER_FIRED) ? json.getBoolean(JSON_REMINDER_FIRED) : null;
+      query.checklist = json.has(JSON_CHECKLIST) ? json.getBoolean(JSON_CHECKLIST) : null;
+      query.uncompletedChecklist = json.optBoolean(JSON_UNCOMPLETED_CHECKLIST);
+      query.locked = json.has(JSON_LOCKED) ? json.getBoolean(JSON_LOCKED) : null;
+      query.withLocation = json.optBoolean(JSON_WITH_LOCATION);
+      query.text = json.has(JSON_TEXT) ? json.getString(JSON_TEXT) : null;
+      query.sortColumn = json.has(JSON_SORT_COLUMN) ? json.getString(JSON_SORT_COLUMN) : null;
+      query.sorted = json.optBoolean(JSON_SORTED, true);
+      return query;
+    } catch (JSONException e) {
+      LogDelegate.w("Invalid notes query: " + jsonString);
+      return null;
+    }
+  }
+
+
+  /**
+   * SQL fragments of a query, with parameters in the same order of their placeholders
+   */
+  static class Compiled {
+
+    String joinCondition;
+    String whereCondition;
+    List<String> args;
+    boolean ranked;
+  }
+
+}
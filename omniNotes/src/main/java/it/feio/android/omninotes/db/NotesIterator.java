@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import android.database.Cursor;
+import it.feio.android.omninotes.models.Note;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Forward-only iteration over notes backed by a database cursor. Notes are read a window at a time,
+ * with their attachments retrieved by a single query for the whole window, so that jobs over the
+ * whole corpus (backups, reminders rescheduling, upgrades) run in constant memory.
+ */
+public class NotesIterator implements Iterator<Note>, Closeable {
+
+  static final int WINDOW_SIZE = 100;
+
+  /**
+   * Columns to be retrieved for each note
+   */
+  public enum Projection {
+    /**
+     * Everything, attachments included
+     */
+    FULL,
+    /**
+     * Everything but attachments, left empty
+     */
+    NO_ATTACHMENTS,
+    /**
+     * Neither content nor attachments
+     */
+    METADATA
+  }
+
+  private final DbHelper dbHelper;
+  private final Cursor cursor;
+  private final Projection projection;
+  private final ContentPasswords passwords;
+  private final List<Note> window = new ArrayList<>(WINDOW_SIZE);
+  private int position;
+
+
+  NotesIterator(DbHelper dbHelper, Cursor cursor, Projection projection,
+      ContentPasswords passwords) {
+    this.dbHelper = dbHelper;
+    this.cursor = cursor;
+    this.projection = projection;
+    this.passwords = passwords;
+  }
+
+
+  @Override
+  public boolean hasNext() {
+    if (position == window.size()) {
+      fillWindow();
+    }
+    return position < window.size();
+  }
+
+
+  @Override
+  public Note next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    // Released as soon as returned to let consumed notes be garbage collected
+    return window.set(position++, null);
+  }
+
+
+  private void fillWindow() {
+    window.clear();
+    position = 0;
+    if (cursor.isClosed()) {
+      return;
+    }
+    while (window.size() < WINDOW_SIZE && cursor.moveToNext()) {
+      window.add(dbHelper.readNote(cursor, false, passwords));
+    }
+    if (window.size() < WINDOW_SIZE) {
+      close();
+    }
+    if (projection == Projection.FULL && !window.isEmpty()) {
+      dbHelper.loadNotesAttachments(window);
+    } else {
+      for (Note note : window) {
+        note.setAttachmentsList(new ArrayList<>());
+      }
+    }
+  }
+
+
+  @Override
+  public void close() {
+    if (!cursor.isClosed()) {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import static it.feio.android.omninotes.db.DbHelper.KEY_ADDRESS;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ARCHIVED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ATTACHMENT_ID;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ATTACHMENT_LENGTH;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ATTACHMENT_MIME_TYPE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ATTACHMENT_NAME;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ATTACHMENT_NOTE_ID;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ATTACHMENT_SIZE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_ATTACHMENT_URI;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CATEGORY;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CHARS;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CHECKLIST;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CONTENT;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CONTENT_CODEC;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CONTENT_COMPRESSED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_CREATION;
+import static it.feio.android.omninotes.db.DbHelper.KEY_LAST_MODIFICATION;
+import static it.feio.android.omninotes.db.DbHelper.KEY_KEY_VERSION;
+import static it.feio.android.omninotes.db.DbHelper.KEY_LATITUDE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_LOCKED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_NOTE_TAGS_NOTE_ID;
+import static it.feio.android.omninotes.db.DbHelper.KEY_NOTE_TAGS_TAG;
+import static it.feio.android.omninotes.db.DbHelper.KEY_NOTE_TAGS_TRASHED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_LONGITUDE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_RECURRENCE_RULE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_REMINDER;
+import static it.feio.android.omninotes.db.DbHelper.KEY_REMINDER_FIRED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_TITLE;
+import static it.feio.android.omninotes.db.DbHelper.KEY_TITLE_SORT_KEY;
+import static it.feio.android.omninotes.db.DbHelper.KEY_TRASHED;
+import static it.feio.android.omninotes.db.DbHelper.KEY_WORDS;
+import static it.feio.android.omninotes.db.DbHelper.TABLE_ATTACHMENTS;
+import static it.feio.android.omninotes.db.DbHelper.TABLE_NOTES;
+import static it.feio.android.omninotes.db.DbHelper.TABLE_NOTES_FTS;
+import static it.feio.android.omninotes.db.DbHelper.TABLE_NOTE_TAGS;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import it.feio.android.omninotes.models.Attachment;
+import it.feio.android.omninotes.models.Note;
+import java.util.Calendar;
+import java.util.Collection;
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * Write path for notes and attachments. Statements are compiled once per database connection and
+ * then reused with primitive bindings, so bulk writes don't pay SQL parsing and ContentValues
+ * boxing for every row.
+ * <p>
+ * Not thread-safe: callers must synchronize on the instance and call {@link #prepare} first.
+ */
+class NotesWriter {
+
+  // Length of the key notes are sorted by title with, made of title and content when not locked
+  static final int TITLE_SORT_KEY_LENGTH = 100;
+
+  // Notes are never replaced, which wouldn't fire delete triggers maintaining counters and indexes
+  private static final String INSERT_NOTE = "INSERT INTO " + TABLE_NOTES + " ("
+      + KEY_CREATION + ","
+      + KEY_LAST_MODIFICATION + ","
+      + KEY_TITLE + ","
+      + KEY_CONTENT + ","
+      + KEY_ARCHIVED + ","
+      + KEY_TRASHED + ","
+      + KEY_REMINDER + ","
+      + KEY_REMINDER_FIRED + ","
+      + KEY_RECURRENCE_RULE + ","
+      + KEY_LATITUDE + ","
+      + KEY_LONGITUDE + ","
+      + KEY_ADDRESS + ","
+      + KEY_CATEGORY + ","
+      + KEY_LOCKED + ","
+      + KEY_CHECKLIST + ","
+      + KEY_WORDS + ","
+      + KEY_CHARS + ","
+      + KEY_KEY_VERSION + ","
+      + KEY_CONTENT_CODEC + ","
+      + KEY_CONTENT_COMPRESSED + ","
+      + KEY_TITLE_SORT_KEY
+      + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+  private static final String UPDATE_NOTE = "UPDATE " + TABLE_NOTES + " SET "
+      + KEY_LAST_MODIFICATION + " = ?,"
+      + KEY_TITLE + " = ?,"
+      + KEY_CONTENT + " = ?,"
+      + KEY_ARCHIVED + " = ?,"
+      + KEY_TRASHED + " = ?,"
+      + KEY_REMINDER + " = ?,"
+      + KEY_REMINDER_FIRED + " = ?,"
+      + KEY_RECURRENCE_RULE + " = ?,"
+      + KEY_LATITUDE + " = ?,"
+      + KEY_LONGITUDE + " = ?,"
+      + KEY_ADDRESS + " = ?,"
+      + KEY_CATEGORY + " = ?,"
+      + KEY_LOCKED + " = ?,"
+      + KEY_CHECKLIST + " = ?,"
+      + KEY_WORDS + " = ?,"
+      + KEY_CHARS + " = ?,"
+      + KEY_KEY_VERSION + " = ?,"
+      + KEY_CONTENT_CODEC + " = ?,"
+      + KEY_CONTENT_COMPRESSED + " = ?,"
+      + KEY_TITLE_SORT_KEY + " = ?"
+      + " WHERE " + KEY_CREATION + " = ?";
+
+  // Content and lock state (which content encryption depends on) are left untouched, as well as
+  // text counters computed on the whole content
+  private static final String UPDATE_NOTE_METADATA = "UPDATE " + TABLE_NOTES + " SET "
+      + KEY_LAST_MODIFICATION + " = ?,"
+      + KEY_TITLE + " = ?,"
+      + KEY_ARCHIVED + " = ?,"
+      + KEY_TRASHED + " = ?,"
+      + KEY_REMINDER + " = ?,"
+      + KEY_REMINDER_FIRED + " = ?,"
+      + KEY_RECURRENCE_RULE + " = ?,"
+      + KEY_LATITUDE + " = ?,"
+      + KEY_LONGITUDE + " = ?,"
+      + KEY_ADDRESS + " = ?,"
+      + KEY_CATEGORY + " = ?,"
+      + KEY_CHECKLIST + " = ?,"
+      + KEY_TITLE_SORT_KEY + " = substr(IFNULL(?, '') || CASE WHEN " + KEY_LOCKED + " = 1 THEN ''"
+      + " ELSE IFNULL(" + KEY_CONTENT + ", '') END, 1, " + TITLE_SORT_KEY_LENGTH + ")"
+      + " WHERE " + KEY_CREATION + " = ?";
+
+  // Full-text index of compressed notes, whose content column has just a preview for triggers
+  private static final String DELETE_NOTE_FTS = "DELETE FROM " + TABLE_NOTES_FTS
+      + " WHERE rowid = ?";
+
+  private static final String INSERT_NOTE_FTS = "INSERT INTO " + TABLE_NOTES_FTS + " (rowid,"
+      + KEY_TITLE + ","
+      + KEY_CONTENT
+      + ") VALUES (?,?,?)";
+
+  private static final String INSERT_ATTACHMENT = "INSERT OR REPLACE INTO " + TABLE_ATTACHMENTS
+      + " ("
+      + KEY_ATTACHMENT_ID + ","
+      + KEY_ATTACHMENT_NOTE_ID + ","
+      + KEY_ATTACHMENT_URI + ","
+      + KEY_ATTACHMENT_MIME_TYPE + ","
+      + KEY_ATTACHMENT_NAME + ","
+      + KEY_ATTACHMENT_SIZE + ","
+      + KEY_ATTACHMENT_LENGTH
+      + ") VALUES (?,?,?,?,?,?,?)";
+
+  private static final String DELETE_ATTACHMENT = "DELETE FROM " + TABLE_ATTACHMENTS
+      + " WHERE " + KEY_ATTACHMENT_ID + " = ?";
+
+  private static final String DELETE_NOTE_TAGS = "DELETE FROM " + TABLE_NOTE_TAGS
+      + " WHERE " + KEY_NOTE_TAGS_NOTE_ID + " = ?";
+
+  private static final String INSERT_NOTE_TAG = "INSERT OR IGNORE INTO " + TABLE_NOTE_TAGS + " ("
+      + KEY_NOTE_TAGS_NOTE_ID + ","
+      + KEY_NOTE_TAGS_TAG + ","
+      + KEY_NOTE_TAGS_TRASHED
+      + ") VALUES (?,?,?)";
+
+  private static final String UPDATE_NOTE_TAGS_TRASHED = "UPDATE " + TABLE_NOTE_TAGS + " SET "
+      + KEY_NOTE_TAGS_TRASHED + " = ? WHERE " + KEY_NOTE_TAGS_NOTE_ID + " = ?";
+
+  private SQLiteDatabase database;
+  private SQLiteStatement insertNote;
+  private SQLiteStatement updateNote;
+  private SQLiteStatement updateNoteMetadata;
+  private SQLiteStatement deleteNoteFts;
+  private SQLiteStatement insertNoteFts;
+  private SQLiteStatement insertAttachment;
+  private SQLiteStatement deleteAttachment;
+  private SQLiteStatement deleteNoteTags;
+  private SQLiteStatement insertNoteTag;
+  private SQLiteStatement updateNoteTagsTrashed;
+
+
+  /**
+   * Binds the writer to the given database, releasing statements compiled against a previous one.
+   * Statements are compiled on first use, so that upgrade steps running before the schema is
+   * complete can still write the tables they need.
+   */
+  void prepare(SQLiteDatabase db) {
+    if (db == database && db.isOpen()) {
+      return;
+    }
+    release();
+    database = db;
+  }
+
+
+  /**
+   * Closes compiled statements, must be called before the underlying database is closed
+   */
+  void release() {
+    closeQuietly(insertNote);
+    closeQuietly(updateNote);
+    closeQuietly(updateNoteMetadata);
+    closeQuietly(deleteNoteFts);
+    closeQuietly(insertNoteFts);
+    closeQuietly(insertAttachment);
+    closeQuietly(deleteAttachment);
+    closeQuietly(deleteNoteTags);
+    closeQuietly(insertNoteTag);
+    closeQuietly(updateNoteTagsTrashed);
+    insertNote = null;
+    updateNote = null;
+    updateNoteMetadata = null;
+    deleteNoteFts = null;
+    insertNoteFts = null;
+    insertAttachment = null;
+    deleteAttachment = null;
+    deleteNoteTags = null;
+    insertNoteTag = null;
+    updateNoteTagsTrashed = null;
+    database = null;
+  }
+
+
+  /**
+   * Updates the note row in place, or inserts it when missing
+   *
+   * @param content Content, or just its preview if compressed
+   * @param compressedContent Whole content compressed, null if stored plain
+   * @param keyVersion Version of the password content is encrypted with, if locked
+   * @return True if the note has been inserted
+   */
+  boolean saveNote(Note note, long creation, long lastModification, String content,
+      byte[] compressedContent, int words, int chars, int keyVersion) {
+    if (updateNote == null) {
+      updateNote = database.compileStatement(UPDATE_NOTE);
+      insertNote = database.compileStatement(INSERT_NOTE);
+    }
+    SQLiteStatement statement = updateNote;
+    statement.clearBindings();
+    statement.bindLong(1, lastModification);
+    bindString(statement, 2, note.getTitle());
+    bindString(statement, 3, content);
+    statement.bindLong(4, Boolean.TRUE.equals(note.isArchived()) ? 1 : 0);
+    statement.bindLong(5, Boolean.TRUE.equals(note.isTrashed()) ? 1 : 0);
+    bindString(statement, 6, note.getAlarm());
+    statement.bindLong(7, Boolean.TRUE.equals(note.isReminderFired()) ? 1 : 0);
+    bindString(statement, 8, note.getRecurrenceRule());
+    bindDouble(statement, 9, note.getLatitude());
+    bindDouble(statement, 10, note.getLongitude());
+    bindString(statement, 11, note.getAddress());
+    bindCategory(statement, 12, note);
+    statement.bindLong(13, Boolean.TRUE.equals(note.isLocked()) ? 1 : 0);
+    statement.bindLong(14, Boolean.TRUE.equals(note.isChecklist()) ? 1 : 0);
+    statement.bindLong(15, words);
+    statement.bindLong(16, chars);
+    statement.bindLong(17, keyVersion);
+    bindCompressedContent(statement, 18, compressedContent);
+    statement.bindString(20, getTitleSortKey(note, content));
+    statement.bindLong(21, creation);
+    if (statement.executeUpdateDelete() > 0) {
+      return false;
+    }
+
+    statement = insertNote;
+    statement.clearBindings();
+    statement.bindLong(1, creation);
+    statement.bindLong(2, lastModification);
+    bindString(statement, 3, note.getTitle());
+    bindString(statement, 4, content);
+    statement.bindLong(5, Boolean.TRUE.equals(note.isArchived()) ? 1 : 0);
+    statement.bindLong(6, Boolean.TRUE.equals(note.isTrashed()) ? 1 : 0);
+    // Column has integer affinity so the numeric string is stored as integer
+    bindString(statement, 7, note.getAlarm());
+    statement.bindLong(8, Boolean.TRUE.equals(note.isReminderFired()) ? 1 : 0);
+    bindString(statement, 9, note.getRecurrenceRule());
+    bindDouble(statement, 10, note.getLatitude());
+    bindDouble(statement, 11, note.getLongitude());
+    bindString(statement, 12, note.getAddress());
+    bindCategory(statement, 13, note);
+    statement.bindLong(14, Boolean.TRUE.equals(note.isLocked()) ? 1 : 0);
+    statement.bindLong(15, Boolean.TRUE.equals(note.isChecklist()) ? 1 : 0);
+    statement.bindLong(16, words);
+    statement.bindLong(17, chars);
+    statement.bindLong(18, keyVersion);
+    bindCompressedContent(statement, 19, compressedContent);
+    statement.bindString(21, getTitleSortKey(note, content));
+    statement.executeInsert();
+    return true;
+  }
+
+
+  void updateNoteMetadata(Note note, long creation, long lastModification) {
+    if (updateNoteMetadata == null) {
+      updateNoteMetadata = database.compileStatement(UPDATE_NOTE_METADATA);
+    }
+    SQLiteStatement statement = updateNoteMetadata;
+    statement.clearBindings();
+    statement.bindLong(1, lastModification);
+    bindString(statement, 2, note.getTitle());
+    statement.bindLong(3, Boolean.TRUE.equals(note.isArchived()) ? 1 : 0);
+    statement.bindLong(4, Boolean.TRUE.equals(note.isTrashed()) ? 1 : 0);
+    bindString(statement, 5, note.getAlarm());
+    statement.bindLong(6, Boolean.TRUE.equals(note.isReminderFired()) ? 1 : 0);
+    bindString(statement, 7, note.getRecurrenceRule());
+    bindDouble(statement, 8, note.getLatitude());
+    bindDouble(statement, 9, note.getLongitude());
+    bindString(statement, 10, note.getAddress());
+    bindCategory(statement, 11, note);
+    statement.bindLong(12, Boolean.TRUE.equals(note.isChecklist()) ? 1 : 0);
+    bindString(statement, 13, note.getTitle());
+    statement.bindLong(14, creation);
+    statement.executeUpdateDelete();
+  }
+
+
+  /**
+   * Indexes the whole content of a compressed note, replacing the preview indexed by triggers
+   */
+  void indexNoteContent(long creation, String title, String content) {
+    if (deleteNoteFts == null) {
+      deleteNoteFts = database.compileStatement(DELETE_NOTE_FTS);
+      insertNoteFts = database.compileStatement(INSERT_NOTE_FTS);
+    }
+    deleteNoteFts.bindLong(1, creation);
+    deleteNoteFts.executeUpdateDelete();
+    insertNoteFts.clearBindings();
+    insertNoteFts.bindLong(1, creation);
+    bindString(insertNoteFts, 2, title);
+    bindString(insertNoteFts, 3, content);
+    insertNoteFts.executeInsert();
+  }
+
+
+  void insertAttachment(long noteId, Attachment attachment) {
+    if (insertAttachment == null) {
+      insertAttachment = database.compileStatement(INSERT_ATTACHMENT);
+    }
+    SQLiteStatement statement = insertAttachment;
+    statement.clearBindings();
+    statement.bindLong(1, attachment.getId() != null
+        ? attachment.getId()
+        : Calendar.getInstance().getTimeInMillis());
+    statement.bindLong(2, noteId);
+    statement.bindString(3, attachment.getUri().toString());
+    bindString(statement, 4, attachment.getMime_type());
+    bindString(statement, 5, attachment.getName());
+    statement.bindLong(6, attachment.getSize());
+    statement.bindLong(7, attachment.getLength());
+    statement.executeInsert();
+  }
+
+
+  void deleteAttachment(long attachmentId) {
+    if (deleteAttachment == null) {
+      deleteAttachment = database.compileStatement(DELETE_ATTACHMENT);
+    }
+    deleteAttachment.bindLong(1, attachmentId);
+    deleteAttachment.executeUpdateDelete();
+  }
+
+
+  /**
+   * Replaces note hashtags, tags counters are kept updated by triggers
+   */
+  void replaceNoteTags(long noteId, Collection<String> tags, boolean trashed) {
+    if (deleteNoteTags == null) {
+      deleteNoteTags = database.compileStatement(DELETE_NOTE_TAGS);
+      insertNoteTag = database.compileStatement(INSERT_NOTE_TAG);
+    }
+    deleteNoteTags.bindLong(1, noteId);
+    deleteNoteTags.executeUpdateDelete();
+    for (String tag : tags) {
+      insertNoteTag.bindLong(1, noteId);
+      insertNoteTag.bindString(2, tag);
+      insertNoteTag.bindLong(3, trashed ? 1 : 0);
+      insertNoteTag.executeInsert();
+    }
+  }
+
+
+  void updateNoteTagsTrashed(long noteId, boolean trashed) {
+    if (updateNoteTagsTrashed == null) {
+      updateNoteTagsTrashed = database.compileStatement(UPDATE_NOTE_TAGS_TRASHED);
+    }
+    updateNoteTagsTrashed.bindLong(1, trashed ? 1 : 0);
+    updateNoteTagsTrashed.bindLong(2, noteId);
+    updateNoteTagsTrashed.executeUpdateDelete();
+  }
+
+
+  private static void bindString(SQLiteStatement statement, int index, String value) {
+    if (value != null) {
+      statement.bindString(index, value);
+    } else {
+      statement.bindNull(index);
+    }
+  }
+
+
+  /**
+   * Title sorting key, falling back on content for untitled notes. Content of locked notes is
+   * encrypted, so they're sorted by title only. Content preview of compressed notes is longer than
+   * the key, so it gives the same key as the whole content.
+   */
+  static String getTitleSortKey(Note note, String content) {
+    String key = StringUtils.defaultString(note.getTitle())
+        + (Boolean.TRUE.equals(note.isLocked()) ? "" : StringUtils.defaultString(content));
+    if (key.length() <= TITLE_SORT_KEY_LENGTH) {
+      return key;
+    }
+    return key.substring(0, Character.isHighSurrogate(key.charAt(TITLE_SORT_KEY_LENGTH - 1))
+        ? TITLE_SORT_KEY_LENGTH - 1
+        : TITLE_SORT_KEY_LENGTH);
+  }
+
+
+  private static void bindCompressedContent(SQLiteStatement statement, int index,
+      byte[] compressedContent) {
+    if (compressedContent != null) {
+      statement.bindLong(index, ContentCodec.CODEC_DEFLATE);
+      statement.bindBlob(index + 1, compressedContent);
+    } else {
+      statement.bindLong(index, ContentCodec.CODEC_NONE);
+      statement.bindNull(index + 1);
+    }
+  }
+
+
+  private static void bindDouble(SQLiteStatement statement, int index, Double value) {
+    if (value != null) {
+      statement.bindDouble(index, value);
+    } else {
+      statement.bindNull(index);
+    }
+  }
+
+
+  private static void bindCategory(SQLiteStatement statement, int index, Note note) {
+    if (note.getCategory() != null && note.getCategory().getId() != null) {
+      statement.bindLong(index, note.getCategory().getId());
+    } else {
+      statement.bindNull(index);
+    }
+  }
+
+
+  private static void closeQuietly(SQLiteStatement statement) {
+    if (statement != null) {
+      statement.close();
+    }
+  }
+
+}
@@ -23,10 +23,16 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 
 public class SqlParser {
 
+  private static final Pattern TRIGGER_START = Pattern
+      .compile("^CREATE\\s+(TEMP\\s+|TEMPORARY\\s+)?TRIGGER\\b.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+  private static final Pattern TRIGGER_END = Pattern
+      .compile(".*\\bEND$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
   public static List<String> parseSqlFile(String sqlFile,
       AssetManager assetManager) throws IOException {
     List<String> sqlIns = null;
@@ -103,7 +109,7 @@ public class SqlParser {
       if (content[i] == '\'') {
         inLiteral = !inLiteral;
       }
-      if (content[i] == delim && !inLiteral) {
+      if (content[i] == delim && !inLiteral && !isInsideTriggerBody(sb)) {
         if (sb.length() > 0) {
           statements.add(sb.toString().trim());
           sb = new StringBuilder();
@@ -118,4 +124,14 @@ public class SqlParser {
     return statements;
   }
 
+
+  /**
+   * Triggers bodies contain statements delimited by the same delimiter used for the script, so
+   * splitting must be suspended until the closing END keyword is reached
+   */
+  private static boolean isInsideTriggerBody(StringBuilder statement) {
+    String trimmed = statement.toString().trim();
+    return TRIGGER_START.matcher(trimmed).matches() && !TRIGGER_END.matcher(trimmed).matches();
+  }
+
 }
@@ -14,15 +14,12 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+package it.feio.android.omninotes.exceptions.unchecked;
 
-package it.feio.android.omninotes.exceptions;
+public class EncryptionException extends RuntimeException {
 
-public class NotesLoadingException extends RuntimeException {
-
-  private static final long serialVersionUID = 1288015037660807104L;
-
-  public NotesLoadingException(String message, Exception e) {
-    super(message, e);
+  public EncryptionException(String message, Throwable cause) {
+    super(message, cause);
   }
 
 }
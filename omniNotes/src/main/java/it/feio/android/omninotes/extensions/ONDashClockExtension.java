@@ -123,7 +123,7 @@ public class ONDashClockExtension extends DashClockExtension {
     List<Note> reminders = new ArrayList<>();
     List<Note> today = new ArrayList<>();
     List<Note> tomorrow = new ArrayList<>();
-    for (Note note : DbHelper.getInstance().getNotesActive()) {
+    for (Note note : DbHelper.getInstance().getNotesActiveSummaries()) {
       activeNotes.add(note);
       if (note.getAlarm() != null && !note.isReminderFired()) {
         reminders.add(note);
@@ -148,9 +148,18 @@ public class ONDashClockExtension extends DashClockExtension {
 
   public class DashClockUpdateReceiver extends BroadcastReceiver {
 
+    private long dataVersion = -1;
+
+    /**
+     * Notes are counted again only if they changed since last notification
+     */
     @Override
     public void onReceive(Context context, Intent intent) {
-      onUpdateData(UPDATE_REASON_MANUAL);
+      long currentDataVersion = DbHelper.getInstance().getDataVersion();
+      if (currentDataVersion != dataVersion) {
+        dataVersion = currentDataVersion;
+        onUpdateData(UPDATE_REASON_MANUAL);
+      }
     }
 
   }
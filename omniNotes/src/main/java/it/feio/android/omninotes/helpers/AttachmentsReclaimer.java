@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.helpers;
+
+import android.content.Context;
+import android.net.Uri;
+import it.feio.android.omninotes.utils.StorageHelper;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Deletes files of attachments no more referenced by any note. Files are deleted in parallel, and
+ * {@link #reclaim(List)} blocks until all of them are processed, so it must be used from a
+ * background thread.
+ */
+public class AttachmentsReclaimer {
+
+  private static final int THREADS = 4;
+
+  private final Context context;
+
+
+  public AttachmentsReclaimer(Context context) {
+    this.context = context.getApplicationContext();
+  }
+
+
+  /**
+   * @return Number of files actually deleted
+   */
+  public int reclaim(List<Uri> attachmentsUris) {
+    if (attachmentsUris.isEmpty() || !StorageHelper.checkStorage()) {
+      return 0;
+    }
+    int total = attachmentsUris.size();
+    AtomicInteger deleted = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREADS, total));
+    for (Uri uri : attachmentsUris) {
+      executor.execute(() -> {
+        if (StorageHelper.deleteExternalStoragePrivateFile(context, uri.getLastPathSegment())) {
+          deleted.incrementAndGet();
+        }
+      });
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      LogDelegate.w("Attachments reclaim interrupted", e);
+      Thread.currentThread().interrupt();
+    }
+    LogDelegate.i("Reclaimed " + deleted.get() + " of " + total + " attachments files");
+    return deleted.get();
+  }
+
+}
@@ -27,6 +27,7 @@ import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD;
 
 import android.content.Context;
 import android.content.Intent;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.text.TextUtils;
@@ -38,6 +39,7 @@ import com.pixplicity.easyprefs.library.Prefs;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.async.DataBackupIntentService;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.NoteQuery;
 import it.feio.android.omninotes.exceptions.checked.BackupAttachmentException;
 import it.feio.android.omninotes.helpers.notifications.NotificationsHelper;
 import it.feio.android.omninotes.models.Attachment;
@@ -52,8 +54,10 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.experimental.UtilityClass;
@@ -65,14 +69,19 @@ import rx.Observable;
 @UtilityClass
 public final class BackupHelper {
 
+  // Number of restored notes written to database within the same transaction
+  private static final int IMPORT_BATCH_SIZE = 200;
+
   public static void exportNotes(DocumentFileCompat backupDir) {
-    for (Note note : DbHelper.getInstance(true).getAllNotes(false)) {
-      exportNote(backupDir, note);
-    }
+    DbHelper.getInstance(true).forEachNote(new NoteQuery().unsorted(),
+        note -> exportNote(backupDir, note));
   }
 
   public static void exportNote(DocumentFileCompat backupDir, Note note) {
-    if (Boolean.TRUE.equals(note.isLocked())) {
+    if (note.isContentEncryptedWith(Prefs.getString(PREF_PASSWORD, ""))) {
+      // Stored ciphertext is exported as it is, without a useless decryption round trip
+      note.setContent(note.getStoredContent());
+    } else if (Boolean.TRUE.equals(note.isLocked())) {
       note.setContent(Security.encrypt(note.getContent(), Prefs.getString(PREF_PASSWORD, "")));
     }
     var noteFile = getBackupNoteFile(backupDir, note);
@@ -154,13 +163,27 @@ public final class BackupHelper {
   public static List<Note> importNotes(DocumentFileCompat backupDir) {
     return Observable.from(backupDir.listFiles())
         .filter(f -> f.getName().matches("\\d{13}.json"))
-        .map(BackupHelper::importNote)
+        .map(BackupHelper::readImportNote)
         .filter(n -> n != null)
+        .buffer(IMPORT_BATCH_SIZE)
+        .flatMapIterable(BackupHelper::storeImportedNotes)
         .toList().toBlocking().single();
   }
 
   @Nullable
   public static Note importNote(DocumentFileCompat file) {
+    Note note = readImportNote(file);
+    if (note != null) {
+      storeImportedNotes(Collections.singletonList(note));
+    }
+    return note;
+  }
+
+  /**
+   * Parses a backed up note decrypting its content, returns null if it can't be decrypted
+   */
+  @Nullable
+  private static Note readImportNote(DocumentFileCompat file) {
     Note note = getImportNote(file);
 
     if (Boolean.TRUE.equals(note.isLocked())) {
@@ -169,12 +192,20 @@ public final class BackupHelper {
       }
       note.setContent(Security.decrypt(note.getContent(), Prefs.getString(PREF_PASSWORD, "")));
     }
+    return note;
+  }
 
-    if (note.getCategory() != null) {
-      DbHelper.getInstance().updateCategory(note.getCategory());
+  /**
+   * Saves notes and their categories, notes are written within a single transaction
+   */
+  private static List<Note> storeImportedNotes(List<Note> notes) {
+    Set<Long> categoryIds = new HashSet<>();
+    for (Note note : notes) {
+      if (note.getCategory() != null && categoryIds.add(note.getCategory().getId())) {
+        DbHelper.getInstance().updateCategory(note.getCategory());
+      }
     }
-    DbHelper.getInstance().updateNote(note, false);
-    return note;
+    return DbHelper.getInstance().updateNotes(notes, false);
   }
 
   public static Note getImportNote(DocumentFileCompat file) {
@@ -263,8 +294,11 @@ public final class BackupHelper {
    */
   @Deprecated
   public static void importDB(Context context, File backupDir) throws IOException {
+    // Pending write-ahead log must be merged and discarded before replacing the database file
+    DbHelper.getInstance().checkpoint();
+    DbHelper.getInstance().close();
     File database = context.getDatabasePath(DATABASE_NAME);
-    if (database.exists() && database.delete()) {
+    if (database.exists() && SQLiteDatabase.deleteDatabase(database)) {
       StorageHelper.copyFile(new File(backupDir, DATABASE_NAME), database, true);
     }
   }
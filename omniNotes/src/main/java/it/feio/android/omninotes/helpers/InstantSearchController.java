@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.helpers;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import de.greenrobot.event.EventBus;
+import it.feio.android.omninotes.async.bus.NotesLoadedEvent;
+import it.feio.android.omninotes.async.notes.NoteLoaderTask;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.NoteQuery;
+import it.feio.android.omninotes.models.Note;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.apache.commons.lang3.StringUtils;
+
+
+/**
+ * Performs searches while user types. Searches start once typing pauses and a new keystroke aborts
+ * the running one. When the pattern just extends the previous one results are refined in memory,
+ * as word prefixes matching the longer pattern match the shorter one too. Results are notified as
+ * {@link NotesLoadedEvent}, and keystroke-to-results latency is measured.
+ * <p>
+ * Must be used from main thread.
+ */
+public class InstantSearchController {
+
+  static final long DEBOUNCE_DELAY = 250;
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Runnable searchRunnable = this::search;
+
+  private String pattern;
+  private long keystrokeTime;
+  private boolean awaitingResults;
+  private String resultsPattern;
+  private List<Note> results;
+
+  private int searches;
+  private int refinedSearches;
+  private long lastLatency;
+  private long maxLatency;
+  private long totalLatency;
+
+
+  public void onPatternChanged(String pattern) {
+    this.pattern = pattern;
+    keystrokeTime = SystemClock.elapsedRealtime();
+    handler.removeCallbacks(searchRunnable);
+    if (awaitingResults) {
+      awaitingResults = false;
+      NoteLoaderTask.cancelRunning();
+    }
+    handler.postDelayed(searchRunnable, DEBOUNCE_DELAY);
+  }
+
+
+  /**
+   * To be called with every loaded notes list, only the awaited search results are considered
+   */
+  public void onNotesLoaded(List<Note> notes) {
+    if (awaitingResults) {
+      awaitingResults = false;
+      onResults(notes, false);
+    }
+  }
+
+
+  /**
+   * Stops pending and running searches, i.e. when search is closed
+   */
+  public void cancel() {
+    handler.removeCallbacks(searchRunnable);
+    if (awaitingResults) {
+      awaitingResults = false;
+      NoteLoaderTask.cancelRunning();
+    }
+    invalidate();
+  }
+
+
+  /**
+   * Forgets previous results, that can't be refined anymore, i.e. when notes change
+   */
+  public void invalidate() {
+    resultsPattern = null;
+    results = null;
+  }
+
+
+  private void search() {
+    if (isRefinement(pattern)) {
+      List<Note> refinedResults = refine(results, DbHelper.getSearchWords(pattern));
+      onResults(refinedResults, true);
+      EventBus.getDefault().post(new NotesLoadedEvent(refinedResults));
+    } else {
+      awaitingResults = true;
+      NoteLoaderTask.load(NoteQuery.searchScope().text(pattern));
+    }
+  }
+
+
+  /**
+   * Refinement is possible only for word prefix matching of full-text index, where a longer pattern
+   * can only restrict results
+   */
+  private boolean isRefinement(String pattern) {
+    return results != null
+        && pattern.startsWith(resultsPattern)
+        && !DbHelper.getSearchWords(resultsPattern).isEmpty()
+        && DbHelper.getInstance().hasFullTextIndex();
+  }
+
+
+  private void onResults(List<Note> notes, boolean refined) {
+    resultsPattern = pattern;
+    results = new ArrayList<>(notes);
+
+    lastLatency = SystemClock.elapsedRealtime() - keystrokeTime;
+    maxLatency = Math.max(maxLatency, lastLatency);
+    totalLatency += lastLatency;
+    searches++;
+    if (refined) {
+      refinedSearches++;
+    }
+    LogDelegate.d("Instant search " + (refined ? "refined" : "performed") + " in " + lastLatency
+        + "ms with " + notes.size() + " results");
+  }
+
+
+  static List<Note> refine(List<Note> notes, List<String> patternWords) {
+    List<String> normalizedPatternWords = new ArrayList<>();
+    for (String patternWord : patternWords) {
+      normalizedPatternWords.add(normalize(patternWord));
+    }
+    List<Note> refinedNotes = new ArrayList<>();
+    for (Note note : notes) {
+      if (matches(note, normalizedPatternWords)) {
+        refinedNotes.add(note);
+      }
+    }
+    return refinedNotes;
+  }
+
+
+  /**
+   * Mimics full-text index matching: every pattern word must be prefix of a title or content word
+   * (title only for locked notes), ignoring case and diacritics
+   */
+  private static boolean matches(Note note, List<String> patternWords) {
+    String text = StringUtils.defaultString(note.getTitle()) + " "
+        + (Boolean.TRUE.equals(note.isLocked()) ? "" : StringUtils.defaultString(note.getContent()));
+    List<String> words = DbHelper.getSearchWords(normalize(text));
+    for (String patternWord : patternWords) {
+      boolean found = false;
+      for (String word : words) {
+        if (word.startsWith(patternWord)) {
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private static String normalize(String text) {
+    return Normalizer.normalize(text, Normalizer.Form.NFD)
+        .replaceAll("\\p{M}", "")
+        .toLowerCase(Locale.ROOT);
+  }
+
+
+  public int getSearches() {
+    return searches;
+  }
+
+
+  public int getRefinedSearches() {
+    return refinedSearches;
+  }
+
+
+  public long getLastLatency() {
+    return lastLatency;
+  }
+
+
+  public long getMaxLatency() {
+    return maxLatency;
+  }
+
+
+  public long getAverageLatency() {
+    return searches > 0 ? totalLatency / searches : 0;
+  }
+
+}
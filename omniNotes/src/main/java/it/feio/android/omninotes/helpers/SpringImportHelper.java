@@ -43,6 +43,7 @@ import it.feio.android.springpadimporter.models.SpringpadItem;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -51,6 +52,8 @@ public class SpringImportHelper {
 
   public static final String ACTION_DATA_IMPORT_SPRINGPAD = "action_data_import_springpad";
   public static final String EXTRA_SPRINGPAD_BACKUP = "extra_springpad_backup";
+  // Number of imported notes written to database within the same transaction
+  private static final int IMPORT_BATCH_SIZE = 200;
   private final Context context;
 
 
@@ -111,6 +114,7 @@ public class SpringImportHelper {
     DbHelper.getInstance().updateCategory(defaulCategory);
 
     // And then notes are created
+    List<Note> pendingNotes = new ArrayList<>();
     Note note;
     Attachment mAttachment = null;
     Uri uri;
@@ -297,14 +301,13 @@ public class SpringImportHelper {
         note.setCategory(defaulCategory);
       }
 
-      // The note is saved
-      DbHelper.getInstance().updateNote(note, false);
-      ReminderHelper.addReminder(context, note);
-
-      // Updating notification
-      importedSpringpadNotes++;
-      updateImportNotification(importer, mNotificationsHelper);
+      // Notes are saved in batches
+      pendingNotes.add(note);
+      if (pendingNotes.size() >= IMPORT_BATCH_SIZE) {
+        saveNotes(pendingNotes, importer, mNotificationsHelper);
+      }
     }
+    saveNotes(pendingNotes, importer, mNotificationsHelper);
 
     // Delete temp data
     try {
@@ -315,6 +318,23 @@ public class SpringImportHelper {
   }
 
 
+  private void saveNotes(List<Note> notes, Importer importer,
+      NotificationsHelper mNotificationsHelper) {
+    if (notes.isEmpty()) {
+      return;
+    }
+    DbHelper.getInstance().updateNotes(notes, false);
+    for (Note savedNote : notes) {
+      ReminderHelper.addReminder(context, savedNote);
+    }
+
+    // Updating notification
+    importedSpringpadNotes += notes.size();
+    updateImportNotification(importer, mNotificationsHelper);
+    notes.clear();
+  }
+
+
   private void updateImportNotification(Importer importer,
       NotificationsHelper mNotificationsHelper) {
     mNotificationsHelper.setMessage(
@@ -21,6 +21,7 @@ import android.os.Parcelable;
 import it.feio.android.omninotes.commons.models.BaseAttachment;
 import it.feio.android.omninotes.commons.models.BaseCategory;
 import it.feio.android.omninotes.commons.models.BaseNote;
+import it.feio.android.omninotes.utils.Security;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,6 +45,8 @@ public class Note extends BaseNote implements Parcelable {
   };
   // Not saved in DB
   private boolean passwordChecked = false;
+  // Password to decrypt content of locked notes on first access, null once decrypted
+  private transient String contentPassword;
 
 
   public Note() {
@@ -126,6 +129,48 @@ public class Note extends BaseNote implements Parcelable {
     super.setAttachmentsListOld(attachmentsListOld);
   }
 
+  /**
+   * Sets the content of a locked note as stored, it will be decrypted only when first accessed
+   * through {@link #getContent()}
+   */
+  public void setEncryptedContent(String encryptedContent, String password) {
+    super.setContent(encryptedContent);
+    contentPassword = encryptedContent != null ? password : null;
+  }
+
+  public boolean isContentEncrypted() {
+    return contentPassword != null;
+  }
+
+  /**
+   * Tells if the content is held still encrypted, and with the given password
+   */
+  public boolean isContentEncryptedWith(String password) {
+    return contentPassword != null && contentPassword.equals(password);
+  }
+
+  /**
+   * Content as it is held, still encrypted if the note is locked and it has never been accessed
+   */
+  public String getStoredContent() {
+    return super.getContent();
+  }
+
+  @Override
+  public String getContent() {
+    if (contentPassword != null) {
+      super.setContent(Security.decrypt(super.getContent(), contentPassword));
+      contentPassword = null;
+    }
+    return super.getContent();
+  }
+
+  @Override
+  public void setContent(String content) {
+    super.setContent(content);
+    contentPassword = null;
+  }
+
   public boolean isPasswordChecked() {
     return passwordChecked;
   }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.models;
+
+
+/**
+ * Lightweight note used to render lists: content is truncated (unless note is locked) and only the
+ * first attachment is retrieved. It must not be used to edit content or attachments, full note has
+ * to be retrieved with {@link it.feio.android.omninotes.db.DbHelper#getNote(long)} for that.
+ * When saved only its metadata is written, leaving stored content and attachments untouched.
+ */
+public class NoteSummary extends Note {
+
+  private int attachmentsCount;
+
+
+  public int getAttachmentsCount() {
+    return attachmentsCount;
+  }
+
+  public void setAttachmentsCount(int attachmentsCount) {
+    this.attachmentsCount = attachmentsCount;
+  }
+
+}
@@ -43,8 +43,14 @@ import it.feio.android.omninotes.models.holders.NoteViewHolder;
 import it.feio.android.omninotes.utils.BitmapHelper;
 import it.feio.android.omninotes.utils.Navigation;
 import it.feio.android.omninotes.utils.TextHelper;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.RejectedExecutionException;
 
 
@@ -271,12 +277,73 @@ public class NoteAdapter extends RecyclerView.Adapter<NoteViewHolder> {
     notifyItemInserted(index);
   }
 
+  public void addAll(@NonNull List<Note> newNotes) {
+    int positionStart = notes.size();
+    notes.addAll(newNotes);
+    notifyItemRangeInserted(positionStart, newNotes.size());
+  }
+
+  /**
+   * Removes notes having the given IDs with a single pass over the list
+   */
+  public void removeByIds(Collection<Long> ids) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    Set<Long> idsSet = new HashSet<>(ids);
+    for (int i = notes.size() - 1; i >= 0; i--) {
+      if (idsSet.contains(notes.get(i).get_id())) {
+        notes.remove(i);
+        notifyItemRemoved(i);
+      }
+    }
+  }
+
+  /**
+   * Replaces notes having the same IDs of the given ones, which are ignored if not in list
+   */
+  public void replaceByIds(List<Note> updatedNotes) {
+    Map<Long, Note> updatedById = new HashMap<>();
+    for (Note note : updatedNotes) {
+      updatedById.put(note.get_id(), note);
+    }
+    for (int i = 0; i < notes.size(); i++) {
+      Note updated = updatedById.get(notes.get(i).get_id());
+      if (updated != null) {
+        notes.set(i, updated);
+        notifyItemChanged(i);
+      }
+    }
+  }
+
+  /**
+   * @return IDs of the ones, among the given, currently shown in list
+   */
+  public List<Long> getShownIds(Collection<Long> ids) {
+    List<Long> shownIds = new ArrayList<>();
+    if (ids.isEmpty()) {
+      return shownIds;
+    }
+    Set<Long> idsSet = new HashSet<>(ids);
+    for (Note note : notes) {
+      if (idsSet.contains(note.get_id())) {
+        shownIds.add(note.get_id());
+      }
+    }
+    return shownIds;
+  }
+
   public void remove(List<Note> notes) {
     for (Note note : notes) {
       remove(note);
     }
   }
 
+  public void clear() {
+    notes.clear();
+    notifyDataSetChanged();
+  }
+
   public void remove(@NonNull Note note) {
     int pos = getPosition(note);
     if (pos >= 0) {
@@ -20,11 +20,10 @@ package it.feio.android.omninotes.models.misc;
 
 import de.greenrobot.event.EventBus;
 import it.feio.android.omninotes.async.bus.DynamicNavigationReadyEvent;
-import it.feio.android.omninotes.async.bus.NotesUpdatedEvent;
+import it.feio.android.omninotes.async.bus.NotesChangedEvent;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.helpers.LogDelegate;
-import it.feio.android.omninotes.models.Note;
-import java.util.List;
+import java.util.Map;
 
 
 public class DynamicNavigationLookupTable {
@@ -34,6 +33,7 @@ public class DynamicNavigationLookupTable {
   int trashed;
   int uncategorized;
   int reminders;
+  private boolean initialized;
 
 
   private DynamicNavigationLookupTable() {
@@ -52,27 +52,34 @@ public class DynamicNavigationLookupTable {
 
   public void update() {
     ((Runnable) () -> {
-      archived = trashed = uncategorized = reminders = 0;
-      List<Note> notes = DbHelper.getInstance().getAllNotes(false);
-      for (int i = 0; i < notes.size(); i++) {
-        if (notes.get(i).isTrashed()) {
-          trashed++;
-        } else if (notes.get(i).isArchived()) {
-          archived++;
-        } else if (notes.get(i).getAlarm() != null) {
-          reminders++;
-        }
-        if (notes.get(i).getCategory() == null || notes.get(i).getCategory().getId().equals(0L)) {
-          uncategorized++;
-        }
+      Map<String, Integer> counters = DbHelper.getInstance().getCounters();
+      int newArchived = getOrZero(counters, DbHelper.COUNTER_ARCHIVED);
+      int newTrashed = getOrZero(counters, DbHelper.COUNTER_TRASHED);
+      int newUncategorized = getOrZero(counters, DbHelper.COUNTER_UNCATEGORIZED);
+      int newReminders = getOrZero(counters, DbHelper.COUNTER_REMINDERS);
+      boolean changed = !initialized || newArchived != archived || newTrashed != trashed
+          || newUncategorized != uncategorized || newReminders != reminders;
+      archived = newArchived;
+      trashed = newTrashed;
+      uncategorized = newUncategorized;
+      reminders = newReminders;
+      initialized = true;
+      // Menu is rebuilt only when some counter actually changed
+      if (changed) {
+        EventBus.getDefault().post(new DynamicNavigationReadyEvent());
+        LogDelegate.d("Dynamic menu finished counting items");
       }
-      EventBus.getDefault().post(new DynamicNavigationReadyEvent());
-      LogDelegate.d("Dynamic menu finished counting items");
     }).run();
   }
 
 
-  public void onEventAsync(NotesUpdatedEvent event) {
+  private static int getOrZero(Map<String, Integer> counters, String name) {
+    Integer count = counters.get(name);
+    return count != null ? count : 0;
+  }
+
+
+  public void onEventAsync(NotesChangedEvent event) {
     update();
   }
 
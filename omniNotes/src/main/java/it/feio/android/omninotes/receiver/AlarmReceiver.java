@@ -61,12 +61,17 @@ public class AlarmReceiver extends BroadcastReceiver {
     }
   }
 
+  /**
+   * Note has been parcelled when reminder was scheduled, so just reminder related columns are
+   * updated to not overwrite changes made since then
+   */
   private void updateNote(Note note) {
+    boolean markFired = !NotificationListener.isRunning();
     note.setArchived(false);
-    if (!NotificationListener.isRunning()) {
+    if (markFired) {
       note.setReminderFired(true);
     }
-    DbHelper.getInstance().updateNote(note, false);
+    DbHelper.getInstance().updateFiredReminderAsync(note.get_id(), markFired);
   }
 
   private void createNotification(Context mContext, Note note) {
@@ -61,7 +61,7 @@ public class NotificationListener extends NotificationListenerService {
     long nodeId = Long.parseLong(event.getStatusBarNotification().getTag());
     Note note = DbHelper.getInstance().getNote(nodeId);
     if (!DateUtils.isFuture(note.getAlarm())) {
-      DbHelper.getInstance().setReminderFired(nodeId, true);
+      DbHelper.getInstance().setReminderFiredAsync(nodeId, true);
     }
   }
 
@@ -83,6 +83,10 @@ public interface ConstantsBase {
   String PREF_PASSWORD = "password";
   String PREF_PASSWORD_QUESTION = "password_question";
   String PREF_PASSWORD_ANSWER = "password_answer";
+  String PREF_PASSWORD_AEAD = "settings_password_aead";
+  String PREF_PASSWORD_PREVIOUS = "password_previous";
+  String PREF_PASSWORD_KEY_VERSION = "password_key_version";
+  String PREF_PASSWORD_SALT = "password_salt";
   String PREF_KEEP_CHECKED = "keep_checked";
   String PREF_KEEP_CHECKMARKS = "show_checkmarks";
   String PREF_EXPANDED_VIEW = "expanded_view";
@@ -104,6 +108,14 @@ public interface ConstantsBase {
   String PREF_ENABLE_AUTOBACKUP = "settings_enable_autobackup";
   String PREF_ENABLE_FILE_LOGGING = "settings_enable_file_logging";
   String PREF_BACKUP_FOLDER_URI = "backup_folder";
+  String PREF_DB_WAL = "settings_db_wal";
+  String PREF_DB_CACHE_SIZE = "settings_db_cache_size";
+  String PREF_DB_MMAP_SIZE = "settings_db_mmap_size";
+  String PREF_DB_SYNCHRONOUS = "settings_db_synchronous";
+  String PREF_DB_TEMP_STORE = "settings_db_temp_store";
+  String PREF_MIGRATED_VERSION = "data_migrated_version";
+  String PREF_MIGRATION_MARKER = "data_migration_marker";
+  String PREF_DB_MAINTENANCE_REPORT = "db_maintenance_report";
 
   String MIME_TYPE_IMAGE = "image/jpeg";
   String MIME_TYPE_AUDIO = "audio/amr";
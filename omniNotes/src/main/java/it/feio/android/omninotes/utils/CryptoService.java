@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.utils;
+
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_AEAD;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_SALT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import android.util.Base64;
+import android.util.LruCache;
+import androidx.annotation.Nullable;
+import com.pixplicity.easyprefs.library.Prefs;
+import it.feio.android.omninotes.exceptions.unchecked.EncryptionException;
+import it.feio.android.omninotes.helpers.LogDelegate;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.DESKeySpec;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.experimental.UtilityClass;
+
+
+/**
+ * Encryption of locked notes content. Keys derived from a password are cached and ciphers are
+ * reused within the same thread, so encrypting or decrypting many notes costs just the cipher work.
+ * <p>
+ * Payload formats handled are the legacy DES one, plain Base64, and the versioned AES-GCM ones
+ * whose header can't be confused with Base64. The first AES-GCM version derived keys with a fixed
+ * salt, the current one with a random salt generated once per install and carried by the payload,
+ * so content restored on another install can still be decrypted. Decryption detects the format,
+ * while encryption uses the current versioned one only if enabled in preferences. On failure
+ * single values are returned unchanged, while batches fail as a whole.
+ */
+@UtilityClass
+public class CryptoService {
+
+  static final String AEAD_FIXED_SALT_HEADER = "$on1$";
+  static final String AEAD_HEADER = "$on2$";
+
+  private static final String DES_ALGORITHM = "DES";
+  private static final String AEAD_TRANSFORMATION = "AES/GCM/NoPadding";
+  private static final String KEY_DERIVATION_ALGORITHM = "PBKDF2WithHmacSHA1";
+  private static final byte[] KEY_DERIVATION_FIXED_SALT = "it.feio.android.omninotes"
+      .getBytes(UTF_8);
+  private static final int KEY_DERIVATION_SALT_BYTES = 16;
+  private static final int KEY_DERIVATION_ITERATIONS = 10000;
+  private static final int AEAD_KEY_BITS = 256;
+  private static final int AEAD_IV_BYTES = 12;
+  private static final int AEAD_TAG_BITS = 128;
+  private static final int KEYS_CACHE_SIZE = 4;
+
+  private static final LruCache<String, SecretKey> desKeys = new LruCache<>(KEYS_CACHE_SIZE);
+  private static final LruCache<String, SecretKey> aeadKeys = new LruCache<>(KEYS_CACHE_SIZE);
+  // Cipher is not thread safe
+  private static final ThreadLocal<Cipher> desCipher = new ThreadLocal<>();
+  private static final ThreadLocal<Cipher> aeadCipher = new ThreadLocal<>();
+  private static final SecureRandom random = new SecureRandom();
+
+
+  public static String encrypt(String value, String password) {
+    return encrypt(value, password, Prefs.getBoolean(PREF_PASSWORD_AEAD, false));
+  }
+
+
+  public static String encrypt(String value, String password, boolean aead) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return aead
+          ? encryptAead(value, getSalt(), password)
+          : encryptDes(value, getDesKey(password));
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      LogDelegate.e("Something is gone wrong encrypting", e);
+      return value;
+    }
+  }
+
+
+  /**
+   * Encrypts many values deriving the key and reading preferences just once
+   *
+   * @throws EncryptionException if any value can't be encrypted, so that none is stored plain
+   */
+  public static List<String> encrypt(List<String> values, String password) {
+    boolean aead = Prefs.getBoolean(PREF_PASSWORD_AEAD, false);
+    List<String> encryptedValues = new ArrayList<>(values.size());
+    try {
+      byte[] salt = aead ? getSalt() : null;
+      SecretKey key = aead ? getAeadKey(password, salt) : getDesKey(password);
+      for (String value : values) {
+        encryptedValues.add(value == null ? null
+            : aead ? encryptAead(value, salt, key) : encryptDes(value, key));
+      }
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      throw new EncryptionException("Something is gone wrong encrypting", e);
+    }
+    return encryptedValues;
+  }
+
+
+  public static String decrypt(String value, String password) {
+    if (value == null) {
+      return null;
+    }
+    String decryptedValue = tryDecrypt(value, password);
+    return decryptedValue != null ? decryptedValue : value;
+  }
+
+
+  /**
+   * @return Decrypted value, or null if it can't be decrypted with the given password
+   */
+  @Nullable
+  public static String tryDecrypt(String value, String password) {
+    try {
+      if (value.startsWith(AEAD_HEADER)) {
+        return decryptAead(value, password);
+      }
+      return value.startsWith(AEAD_FIXED_SALT_HEADER)
+          ? decryptAeadFixedSalt(value, getAeadKey(password, KEY_DERIVATION_FIXED_SALT))
+          : decryptDes(value, getDesKey(password));
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      LogDelegate.e("Error decrypting", e);
+      return null;
+    }
+  }
+
+
+  /**
+   * Decrypts many values, each one in its own format
+   */
+  public static List<String> decrypt(List<String> values, String password) {
+    List<String> decryptedValues = new ArrayList<>(values.size());
+    for (String value : values) {
+      decryptedValues.add(decrypt(value, password));
+    }
+    return decryptedValues;
+  }
+
+
+  public static boolean isAead(String value) {
+    return value.startsWith(AEAD_HEADER) || value.startsWith(AEAD_FIXED_SALT_HEADER);
+  }
+
+
+  /**
+   * Forgets derived keys, to be called when the password is removed
+   */
+  public static void clearKeys() {
+    desKeys.evictAll();
+    aeadKeys.evictAll();
+  }
+
+
+  private static String encryptDes(String value, SecretKey key) throws GeneralSecurityException {
+    Cipher cipher = getCipher(desCipher, DES_ALGORITHM);
+    cipher.init(Cipher.ENCRYPT_MODE, key);
+    return Base64.encodeToString(cipher.doFinal(value.getBytes(UTF_8)), Base64.DEFAULT);
+  }
+
+
+  private static String decryptDes(String value, SecretKey key) throws GeneralSecurityException {
+    Cipher cipher = getCipher(desCipher, DES_ALGORITHM);
+    cipher.init(Cipher.DECRYPT_MODE, key);
+    return new String(cipher.doFinal(Base64.decode(value, Base64.DEFAULT)), UTF_8);
+  }
+
+
+  private static String encryptAead(String value, byte[] salt, String password)
+      throws GeneralSecurityException {
+    return encryptAead(value, salt, getAeadKey(password, salt));
+  }
+
+
+  /**
+   * Payload is the header followed by Base64 of key derivation salt, IV and ciphertext, with
+   * authentication tag
+   */
+  private static String encryptAead(String value, byte[] salt, SecretKey key)
+      throws GeneralSecurityException {
+    byte[] iv = new byte[AEAD_IV_BYTES];
+    random.nextBytes(iv);
+    Cipher cipher = getCipher(aeadCipher, AEAD_TRANSFORMATION);
+    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(AEAD_TAG_BITS, iv));
+    cipher.updateAAD(AEAD_HEADER.getBytes(UTF_8));
+    byte[] cipherText = cipher.doFinal(value.getBytes(UTF_8));
+    byte[] payload = ByteBuffer.allocate(salt.length + iv.length + cipherText.length).put(salt)
+        .put(iv).put(cipherText).array();
+    return AEAD_HEADER + Base64.encodeToString(payload, Base64.NO_WRAP);
+  }
+
+
+  private static String decryptAead(String value, String password)
+      throws GeneralSecurityException {
+    byte[] payload = Base64.decode(value.substring(AEAD_HEADER.length()), Base64.NO_WRAP);
+    if (payload.length < KEY_DERIVATION_SALT_BYTES + AEAD_IV_BYTES) {
+      throw new IllegalArgumentException("Truncated payload");
+    }
+    byte[] salt = new byte[KEY_DERIVATION_SALT_BYTES];
+    System.arraycopy(payload, 0, salt, 0, salt.length);
+    return decryptAead(payload, salt.length, AEAD_HEADER, getAeadKey(password, salt));
+  }
+
+
+  /**
+   * Payloads of the first versioned format have no salt, as the fixed one was used
+   */
+  private static String decryptAeadFixedSalt(String value, SecretKey key)
+      throws GeneralSecurityException {
+    byte[] payload = Base64.decode(value.substring(AEAD_FIXED_SALT_HEADER.length()),
+        Base64.NO_WRAP);
+    if (payload.length < AEAD_IV_BYTES) {
+      throw new IllegalArgumentException("Truncated payload");
+    }
+    return decryptAead(payload, 0, AEAD_FIXED_SALT_HEADER, key);
+  }
+
+
+  private static String decryptAead(byte[] payload, int ivOffset, String header, SecretKey key)
+      throws GeneralSecurityException {
+    Cipher cipher = getCipher(aeadCipher, AEAD_TRANSFORMATION);
+    cipher.init(Cipher.DECRYPT_MODE, key,
+        new GCMParameterSpec(AEAD_TAG_BITS, payload, ivOffset, AEAD_IV_BYTES));
+    cipher.updateAAD(header.getBytes(UTF_8));
+    int cipherTextOffset = ivOffset + AEAD_IV_BYTES;
+    return new String(cipher.doFinal(payload, cipherTextOffset, payload.length - cipherTextOffset),
+        UTF_8);
+  }
+
+
+  private static SecretKey getDesKey(String password) throws GeneralSecurityException {
+    SecretKey key = desKeys.get(password);
+    if (key == null) {
+      key = SecretKeyFactory.getInstance(DES_ALGORITHM)
+          .generateSecret(new DESKeySpec(password.getBytes(UTF_8)));
+      desKeys.put(password, key);
+    }
+    return key;
+  }
+
+
+  /**
+   * Key derivation is deliberately slow, so it's done once for each password and salt
+   */
+  private static SecretKey getAeadKey(String password, byte[] salt)
+      throws GeneralSecurityException {
+    String cacheKey = Base64.encodeToString(salt, Base64.NO_WRAP) + password;
+    SecretKey key = aeadKeys.get(cacheKey);
+    if (key == null) {
+      PBEKeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt,
+          KEY_DERIVATION_ITERATIONS, AEAD_KEY_BITS);
+      byte[] keyBytes = SecretKeyFactory.getInstance(KEY_DERIVATION_ALGORITHM)
+          .generateSecret(keySpec).getEncoded();
+      keySpec.clearPassword();
+      key = new SecretKeySpec(keyBytes, "AES");
+      aeadKeys.put(cacheKey, key);
+    }
+    return key;
+  }
+
+
+  /**
+   * Salt of this install, generated on first encryption
+   */
+  private static synchronized byte[] getSalt() {
+    String salt = Prefs.getString(PREF_PASSWORD_SALT, null);
+    if (salt == null) {
+      byte[] saltBytes = new byte[KEY_DERIVATION_SALT_BYTES];
+      random.nextBytes(saltBytes);
+      salt = Base64.encodeToString(saltBytes, Base64.NO_WRAP);
+      Prefs.edit().putString(PREF_PASSWORD_SALT, salt).commit();
+    }
+    return Base64.decode(salt, Base64.NO_WRAP);
+  }
+
+
+  private static Cipher getCipher(ThreadLocal<Cipher> ciphers, String transformation)
+      throws GeneralSecurityException {
+    Cipher cipher = ciphers.get();
+    if (cipher == null) {
+      cipher = Cipher.getInstance(transformation);
+      ciphers.set(cipher);
+    }
+    return cipher;
+  }
+}
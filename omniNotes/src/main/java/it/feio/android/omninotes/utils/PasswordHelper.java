@@ -19,14 +19,18 @@ package it.feio.android.omninotes.utils;
 
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_ANSWER;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_KEY_VERSION;
+import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_PREVIOUS;
 import static it.feio.android.omninotes.utils.ConstantsBase.PREF_PASSWORD_QUESTION;
 
 import android.app.Activity;
+import android.content.SharedPreferences;
 import android.os.Handler;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.inputmethod.EditorInfo;
 import android.widget.EditText;
+import androidx.annotation.Nullable;
 import com.afollestad.materialdialogs.DialogAction;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.pixplicity.easyprefs.library.Prefs;
@@ -34,16 +38,22 @@ import de.greenrobot.event.EventBus;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.async.bus.PasswordRemovedEvent;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.helpers.LogDelegate;
 import it.feio.android.omninotes.models.PasswordValidator;
 import lombok.experimental.UtilityClass;
+import rx.Emitter.BackpressureMode;
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
 import rx.schedulers.Schedulers;
 
 
 @UtilityClass
 public class PasswordHelper {
 
+  private static final int REENCRYPTION_CHUNK_SIZE = 200;
+  // Password changes and their resumption must not overlap
+  private static final Object reencryptionLock = new Object();
 
   public static void requestPassword(final Activity mActivity,
       final PasswordValidator mPasswordValidator) {
@@ -138,22 +148,94 @@ public class PasswordHelper {
   }
 
 
+  /**
+   * Sets a new password re-encrypting locked notes with it. The previous password is kept until all
+   * of them are re-encrypted, chunk by chunk together with their key version, so that an
+   * interrupted change is resumed by {@link #resumePasswordChange()} without unreadable notes.
+   *
+   * @return Observable emitting re-encryption progress percentage
+   */
+  public static Observable<Integer> changePassword(String password, String question,
+      String answer) {
+    return Observable.create(emitter -> {
+      try {
+        synchronized (reencryptionLock) {
+          resumePasswordChange();
+          String previousPassword = Prefs.getString(PREF_PASSWORD, "");
+          SharedPreferences.Editor editor = Prefs.edit()
+              .putString(PREF_PASSWORD, Security.md5(password))
+              .putString(PREF_PASSWORD_QUESTION, question)
+              .putString(PREF_PASSWORD_ANSWER, Security.md5(answer))
+              .putInt(PREF_PASSWORD_KEY_VERSION, Prefs.getInt(PREF_PASSWORD_KEY_VERSION, 0) + 1);
+          if (!previousPassword.isEmpty()) {
+            editor.putString(PREF_PASSWORD_PREVIOUS, previousPassword);
+          }
+          // Must be persisted before any note is encrypted with the new password
+          editor.commit();
+          reencryptNotes(emitter::onNext);
+        }
+        emitter.onCompleted();
+      } catch (RuntimeException e) {
+        emitter.onError(e);
+      }
+    }, BackpressureMode.LATEST);
+  }
+
+
+  public static boolean isPasswordChangePending() {
+    return Prefs.getString(PREF_PASSWORD_PREVIOUS, null) != null;
+  }
+
+
+  /**
+   * Completes an interrupted password change, if any. Must not be called on main thread.
+   */
+  public static void resumePasswordChange() {
+    synchronized (reencryptionLock) {
+      if (isPasswordChangePending()) {
+        LogDelegate.i("Resuming interrupted password change");
+        reencryptNotes(null);
+      }
+    }
+  }
+
+
+  private static void reencryptNotes(@Nullable Action1<Integer> onProgress) {
+    DbHelper dbHelper = DbHelper.getInstance();
+    int total = Math.max(dbHelper.countNotesToReencrypt(), 1);
+    long lastId = 0;
+    while ((lastId = dbHelper.reencryptNotes(lastId, REENCRYPTION_CHUNK_SIZE)) > 0) {
+      if (onProgress != null) {
+        onProgress.call(Math.max(total - dbHelper.countNotesToReencrypt(), 0) * 100 / total);
+      }
+    }
+    // Notes left are the ones that couldn't be decrypted with the previous password either
+    int skipped = dbHelper.countNotesToReencrypt();
+    Prefs.edit().remove(PREF_PASSWORD_PREVIOUS).commit();
+    dbHelper.clearCache();
+    LogDelegate.i("Re-encrypted locked notes, " + skipped + " skipped");
+  }
+
+
   public static void removePassword() {
     Observable
         .from(DbHelper.getInstance().getNotesWithLock(true))
         .subscribeOn(Schedulers.newThread())
-        .observeOn(AndroidSchedulers.mainThread())
         .doOnNext(note -> {
           note.setLocked(false);
           DbHelper.getInstance().updateNote(note, false);
         })
+        .observeOn(AndroidSchedulers.mainThread())
         .doOnCompleted(() -> {
           Prefs.edit()
               .remove(PREF_PASSWORD)
+              .remove(PREF_PASSWORD_PREVIOUS)
               .remove(PREF_PASSWORD_QUESTION)
               .remove(PREF_PASSWORD_ANSWER)
               .remove("settings_password_access")
               .apply();
+          DbHelper.getInstance().clearCache();
+          CryptoService.clearKeys();
           EventBus.getDefault().post(new PasswordRemovedEvent());
         })
         .subscribe();
@@ -36,6 +36,8 @@ import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.receiver.AlarmReceiver;
 import it.feio.android.omninotes.utils.date.DateUtils;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
 
 
 public class ReminderHelper {
@@ -52,15 +54,31 @@ public class ReminderHelper {
 
   public static void addReminder(Context context, Note note, long reminder) {
     if (DateUtils.isFuture(reminder)) {
-      Intent intent = new Intent(context, AlarmReceiver.class);
-      intent.putExtra(INTENT_NOTE, ParcelableUtil.marshall(note));
-      PendingIntent sender = PendingIntent.getBroadcast(context, getRequestCode(note), intent,
-          immutablePendingIntentFlag(FLAG_CANCEL_CURRENT));
       AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-      am.setExact(AlarmManager.RTC_WAKEUP, reminder, sender);
+      addReminder(context, am, note, reminder);
     }
   }
 
+  /**
+   * Schedules reminders of many notes, skipping the ones without a future reminder
+   */
+  public static void addReminders(Context context, List<Note> notes) {
+    AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    for (Note note : notes) {
+      if (note.getAlarm() != null && DateUtils.isFuture(Long.parseLong(note.getAlarm()))) {
+        addReminder(context, am, note, Long.parseLong(note.getAlarm()));
+      }
+    }
+  }
+
+  private static void addReminder(Context context, AlarmManager am, Note note, long reminder) {
+    Intent intent = new Intent(context, AlarmReceiver.class);
+    intent.putExtra(INTENT_NOTE, ParcelableUtil.marshall(note));
+    PendingIntent sender = PendingIntent.getBroadcast(context, getRequestCode(note), intent,
+        immutablePendingIntentFlag(FLAG_CANCEL_CURRENT));
+    am.setExact(AlarmManager.RTC_WAKEUP, reminder, sender);
+  }
+
   /**
    * Checks if exists any reminder for given note
    */
@@ -77,13 +95,22 @@ public class ReminderHelper {
   }
 
   public static void removeReminder(Context context, Note note) {
-    if (!TextUtils.isEmpty(note.getAlarm())) {
-      AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-      Intent intent = new Intent(context, AlarmReceiver.class);
-      PendingIntent p = PendingIntent.getBroadcast(context, getRequestCode(note), intent,
-          immutablePendingIntentFlag(0));
-      am.cancel(p);
-      p.cancel();
+    removeReminders(context, Collections.singletonList(note));
+  }
+
+  /**
+   * Cancels reminders of many notes, skipping the ones without a reminder
+   */
+  public static void removeReminders(Context context, List<Note> notes) {
+    AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    Intent intent = new Intent(context, AlarmReceiver.class);
+    for (Note note : notes) {
+      if (!TextUtils.isEmpty(note.getAlarm())) {
+        PendingIntent p = PendingIntent.getBroadcast(context, getRequestCode(note), intent,
+            immutablePendingIntentFlag(0));
+        am.cancel(p);
+        p.cancel();
+      }
     }
   }
 
@@ -17,13 +17,9 @@
 
 package it.feio.android.omninotes.utils
 
-import android.util.Base64
 import it.feio.android.omninotes.helpers.LogDelegate
-import java.nio.charset.StandardCharsets
 import java.security.MessageDigest
 import java.security.NoSuchAlgorithmException
-import javax.crypto.*
-import javax.crypto.spec.DESKeySpec
 
 class Security private constructor(){
 
@@ -49,38 +45,13 @@ class Security private constructor(){
 
         @JvmStatic
         fun encrypt(value: String, password: String): String? {
-            return try {
-                val keySpec = DESKeySpec(password.toByteArray(StandardCharsets.UTF_8))
-                val keyFactory = SecretKeyFactory.getInstance("DES")
-                val key = keyFactory.generateSecret(keySpec)
-                val clearText = value.toByteArray(StandardCharsets.UTF_8)
-                // Cipher is not thread safe
-                val cipher = Cipher.getInstance("DES")
-                cipher.init(Cipher.ENCRYPT_MODE, key)
-                Base64.encodeToString(cipher.doFinal(clearText), Base64.DEFAULT)
-            } catch (e: Exception) {
-                LogDelegate.e("Something is gone wrong encrypting", e)
-                value
-            }
+            return CryptoService.encrypt(value, password)
         }
 
         @JvmStatic
         fun decrypt(value: String?, password: String): String? {
-            return try {
-                val keySpec = DESKeySpec(password.toByteArray(StandardCharsets.UTF_8))
-                val keyFactory = SecretKeyFactory.getInstance("DES")
-                val key = keyFactory.generateSecret(keySpec)
-                val encryptedPwdBytes = Base64.decode(value, Base64.DEFAULT)
-                // cipher is not thread safe
-                val cipher = Cipher.getInstance("DES")
-                cipher.init(Cipher.DECRYPT_MODE, key)
-                val decrypedValueBytes = cipher.doFinal(encryptedPwdBytes)
-                String(decrypedValueBytes)
-            } catch (e: Exception) {
-                LogDelegate.e("Error decrypting", e)
-                value
-            }
+            return CryptoService.decrypt(value, password)
         }
 
     }
-}
\ No newline at end of file
+}
@@ -38,6 +38,9 @@ import it.feio.android.omninotes.MainActivity;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.helpers.date.DateHelper;
 import it.feio.android.omninotes.models.Note;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
@@ -118,20 +121,35 @@ public class ShortcutHelper {
    * Removes note shortcut from home launcher
    */
   public static void removeShortcut(Context context, Note note) {
+    removeShortcuts(context, singletonList(note));
+  }
+
+  /**
+   * Removes shortcuts of many notes from home launcher, pinned shortcuts are retrieved just once
+   */
+  public static void removeShortcuts(Context context, List<Note> notes) {
     if (Build.VERSION.SDK_INT < 26) {
-      removeShortcutPreOreo(context, note);
+      for (Note note : notes) {
+        removeShortcutPreOreo(context, note);
+      }
     } else {
-      removeShortcutPostOreo(context, note);
+      removeShortcutsPostOreo(context, notes);
     }
   }
 
   @TargetApi(VERSION_CODES.O)
-  private static void removeShortcutPostOreo(Context context, Note note) {
+  private static void removeShortcutsPostOreo(Context context, List<Note> notes) {
+    Set<String> noteIds = notes.stream()
+        .map(note -> String.valueOf(note.get_id()))
+        .collect(Collectors.toSet());
     ShortcutManager shortcutManager = context.getSystemService(ShortcutManager.class);
-    shortcutManager.getPinnedShortcuts().stream()
-        .filter(ps -> ps.getId().equals(String.valueOf(note.get_id())))
-        .forEach(ps -> shortcutManager.disableShortcuts(singletonList(ps.getId()),
-            context.getString(R.string.shortcut_disabled)));
+    List<String> shortcutIds = shortcutManager.getPinnedShortcuts().stream()
+        .map(ShortcutInfo::getId)
+        .filter(noteIds::contains)
+        .collect(Collectors.toList());
+    if (!shortcutIds.isEmpty()) {
+      shortcutManager.disableShortcuts(shortcutIds, context.getString(R.string.shortcut_disabled));
+    }
   }
 
   private static void removeShortcutPreOreo(Context context, Note note) {
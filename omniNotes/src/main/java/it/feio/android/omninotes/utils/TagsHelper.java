@@ -132,10 +132,20 @@ public class TagsHelper {
     return t.toArray(new Integer[]{});
   }
 
+  /**
+   * Saved notes tags are retrieved from hashtags index, listed notes may not carry whole content
+   */
   public static Integer[] getPreselectedTagsArray(List<Note> notes, List<Tag> tags) {
     HashSet<Integer> set = new HashSet<>();
     for (Note note : notes) {
-      set.addAll(Arrays.asList(getPreselectedTagsArray(note, tags)));
+      for (Tag noteTag : DbHelper.getInstance().getTags(note)) {
+        for (Tag tag : tags) {
+          if (tag.getText().equals(noteTag.getText())) {
+            set.add(tags.indexOf(tag));
+            break;
+          }
+        }
+      }
     }
     return set.toArray(new Integer[]{});
   }
@@ -49,9 +49,10 @@ public class TextHelper {
     final int CONTENT_SUBSTRING_LENGTH = 300;
 
     String titleText = note.getTitle();
-    String contentText = limit(note.getContent().trim(), CONTENT_SUBSTRING_LENGTH, false, true);
+    String contentText;
 
-    // Masking title and content string if note is locked
+    // Masking title and content string if note is locked, content is not even accessed to avoid
+    // its decryption
     if (note.isLocked() && !Prefs.getBoolean(
         "settings_password_access", false)) {
       // This checks if a part of content is used as title and should be partially masked
@@ -59,6 +60,8 @@ public class TextHelper {
         titleText = limit(titleText, 4, false, false);
       }
       contentText = "";
+    } else {
+      contentText = limit(note.getContent().trim(), CONTENT_SUBSTRING_LENGTH, false, true);
     }
 
     // Replacing checkmarks symbols with html entities
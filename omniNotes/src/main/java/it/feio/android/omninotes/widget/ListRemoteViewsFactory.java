@@ -35,6 +35,7 @@ import com.pixplicity.easyprefs.library.Prefs;
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.NoteQuery;
 import it.feio.android.omninotes.helpers.LogDelegate;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Note;
@@ -62,18 +63,33 @@ public class ListRemoteViewsFactory implements RemoteViewsFactory {
         .getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, AppWidgetManager.INVALID_APPWIDGET_ID);
   }
 
-  static void updateConfiguration(int mAppWidgetId, String sqlCondition, boolean thumbnails, boolean timestamps) {
+  static void updateConfiguration(int mAppWidgetId, NoteQuery query, boolean thumbnails, boolean timestamps) {
     LogDelegate.d("Widget configuration updated");
-    Prefs.edit().putString(PREF_WIDGET_PREFIX + mAppWidgetId, sqlCondition).apply();
+    Prefs.edit().putString(PREF_WIDGET_PREFIX + mAppWidgetId, query.toJson()).apply();
     showThumbnails = thumbnails;
     showTimestamps = timestamps;
   }
 
+  /**
+   * Retrieves the query of notes shown by a widget. Widgets configured by previous versions stored
+   * an SQL condition, whose category (if any) is kept.
+   */
+  public static NoteQuery getWidgetQuery(String widgetId) {
+    String configuration = Prefs.getString(PREF_WIDGET_PREFIX + widgetId, "");
+    NoteQuery query = NoteQuery.fromJson(configuration);
+    if (query == null) {
+      String categoryId = TextHelper.checkIntentCategory(configuration);
+      query = categoryId != null
+          ? new NoteQuery().category(Long.parseLong(categoryId)).archived(false).trashed(false)
+          : NoteQuery.navigation(Navigation.NOTES);
+    }
+    return query;
+  }
+
   @Override
   public void onCreate() {
     LogDelegate.d("Created widget " + appWidgetId);
-    String condition = Prefs.getString(PREF_WIDGET_PREFIX + appWidgetId, "");
-    notes = DbHelper.getInstance().getNotes(condition, true);
+    notes = DbHelper.getInstance().getNoteSummaries(getWidgetQuery(String.valueOf(appWidgetId)));
   }
 
   @Override
@@ -81,8 +97,7 @@ public class ListRemoteViewsFactory implements RemoteViewsFactory {
     LogDelegate.d("onDataSetChanged widget " + appWidgetId);
     navigation = Navigation.getNavigation();
 
-    String condition = Prefs.getString(PREF_WIDGET_PREFIX + appWidgetId, "");
-    notes = DbHelper.getInstance().getNotes(condition, true);
+    notes = DbHelper.getInstance().getNoteSummaries(getWidgetQuery(String.valueOf(appWidgetId)));
   }
 
   @Override
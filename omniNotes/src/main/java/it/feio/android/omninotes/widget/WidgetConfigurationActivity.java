@@ -28,9 +28,11 @@ import android.widget.RadioGroup;
 import android.widget.Spinner;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.NoteQuery;
 import it.feio.android.omninotes.helpers.LogDelegate;
 import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.adapters.CategoryBaseAdapter;
+import it.feio.android.omninotes.utils.Navigation;
 import java.util.ArrayList;
 
 
@@ -38,7 +40,7 @@ public class WidgetConfigurationActivity extends Activity {
 
   private Spinner categorySpinner;
   private int mAppWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
-  private String sqlCondition;
+  private NoteQuery query;
   private RadioGroup mRadioGroup;
 
 
@@ -76,16 +78,11 @@ public class WidgetConfigurationActivity extends Activity {
     configOkButton.setOnClickListener(v -> {
 
       if (mRadioGroup.getCheckedRadioButtonId() == R.id.widget_config_notes) {
-        sqlCondition =
-            " WHERE " + DbHelper.KEY_ARCHIVED + " IS NOT 1 AND " + DbHelper.KEY_TRASHED + " IS" +
-                " NOT 1 ";
+        query = NoteQuery.navigation(Navigation.NOTES);
 
       } else {
         Category tag = (Category) categorySpinner.getSelectedItem();
-        sqlCondition = " WHERE " + DbHelper.TABLE_NOTES + "."
-            + DbHelper.KEY_CATEGORY + " = " + tag.getId()
-            + " AND " + DbHelper.KEY_ARCHIVED + " IS NOT 1"
-            + " AND " + DbHelper.KEY_TRASHED + " IS NOT 1";
+        query = new NoteQuery().category(tag.getId()).archived(false).trashed(false);
       }
 
       CheckBox showThumbnailsCheckBox = findViewById(R.id.show_thumbnails);
@@ -93,7 +90,7 @@ public class WidgetConfigurationActivity extends Activity {
 
       // Updating the ListRemoteViewsFactory parameter to get the list of notes
       ListRemoteViewsFactory.updateConfiguration(mAppWidgetId,
-          sqlCondition, showThumbnailsCheckBox.isChecked(), showTimestampsCheckBox.isChecked());
+          query, showThumbnailsCheckBox.isChecked(), showTimestampsCheckBox.isChecked());
 
       Intent resultValue = new Intent();
       resultValue.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, mAppWidgetId);
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+
+public class DbHelperMatchExpressionTest {
+
+  @Test
+  public void buildsPrefixPhrasesForFts5() {
+    assertEquals("\"hello\"* \"wor\"*", DbHelper.buildMatchExpression("hello wor", true));
+  }
+
+  @Test
+  public void buildsPrefixPhrasesForFts4() {
+    assertEquals("\"hello*\" \"wor*\"", DbHelper.buildMatchExpression("hello wor", false));
+  }
+
+  @Test
+  public void neutralizesQuerySyntax() {
+    assertEquals("\"a\"* \"OR\"* \"b\"*", DbHelper.buildMatchExpression("a OR \"b\" -", true));
+    assertEquals("\"привет\"*", DbHelper.buildMatchExpression("#привет", true));
+  }
+
+  @Test
+  public void returnsNullWithoutWords() {
+    assertNull(DbHelper.buildMatchExpression("%", true));
+    assertNull(DbHelper.buildMatchExpression(" _ ", false));
+    assertNull(DbHelper.buildMatchExpression(null, true));
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+
+public class NoteQueryTest {
+
+  @Test
+  public void compilesValuesAsParameters() {
+    NoteQuery.Compiled compiled = new NoteQuery()
+        .trashed(false)
+        .category(123L)
+        .reminderBetween(1000L, 2000L)
+        .tags("#a", "#b", "#a")
+        .text("hello wor")
+        .compile("fts5");
+
+    assertFalse(compiled.whereCondition.contains("123"));
+    assertFalse(compiled.whereCondition.contains("1000"));
+    assertFalse(compiled.joinCondition.contains("#a"));
+    assertFalse(compiled.joinCondition.contains("hello"));
+    assertTrue(compiled.ranked);
+    assertEquals(Arrays.asList("#a", "#b", "\"hello\"* \"wor\"*", "123", "1000", "2000"),
+        compiled.args);
+  }
+
+  @Test
+  public void sameCriteriaCompileToSameSql() {
+    NoteQuery.Compiled first = new NoteQuery().category(1L).text("first").compile(null);
+    NoteQuery.Compiled second = new NoteQuery().category(2L).text("second").compile(null);
+
+    assertEquals(first.joinCondition, second.joinCondition);
+    assertEquals(first.whereCondition, second.whereCondition);
+    assertFalse(first.ranked);
+  }
+
+  @Test
+  public void escapesLikePatternWithoutFullTextIndex() {
+    NoteQuery.Compiled compiled = new NoteQuery().text("50%_off").compile(null);
+
+    assertEquals(Arrays.asList("%50\\%\\_off%", "%50\\%\\_off%", "%50\\%\\_off%"), compiled.args);
+  }
+
+}
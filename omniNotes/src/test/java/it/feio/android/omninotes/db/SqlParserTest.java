@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+
+
+public class SqlParserTest {
+
+  @Test
+  public void splitsStatements() throws IOException {
+    List<String> statements = parse("-- comment\nCREATE TABLE a (b TEXT);\nINSERT INTO a VALUES ('x;y');");
+    assertEquals(2, statements.size());
+    assertEquals("INSERT INTO a VALUES ('x;y')", statements.get(1));
+  }
+
+  @Test
+  public void keepsTriggerBodyTogether() throws IOException {
+    List<String> statements = parse("CREATE TRIGGER t AFTER INSERT ON a\nBEGIN\n"
+        + "DELETE FROM b WHERE rowid = new.rowid;\n"
+        + "INSERT INTO b(rowid, c) VALUES (new.rowid, CASE WHEN new.d = 1 THEN NULL ELSE new.c END);\n"
+        + "END;\n"
+        + "DROP TABLE c;");
+    assertEquals(2, statements.size());
+    assertTrue(statements.get(0).startsWith("CREATE TRIGGER"));
+    assertTrue(statements.get(0).endsWith("END"));
+    assertEquals("DROP TABLE c", statements.get(1));
+  }
+
+  private List<String> parse(String script) throws IOException {
+    return SqlParser.parseSqlFile(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+  }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013-2023 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import it.feio.android.omninotes.models.Note;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+
+public class InstantSearchControllerTest {
+
+  @Test
+  public void refinesByWordPrefixesIgnoringCaseAndDiacritics() {
+    Note apple = getNote("Apple pie", "with cinnamon", false);
+    Note cafe = getNote("Menu", "Café au lait", false);
+    Note locked = getNote("Secret", "apple", true);
+    List<Note> notes = Arrays.asList(apple, cafe, locked);
+
+    assertEquals(Arrays.asList(apple), InstantSearchController.refine(notes, Arrays.asList("app")));
+    assertEquals(Arrays.asList(cafe), InstantSearchController.refine(notes, Arrays.asList("cafe")));
+    assertEquals(Arrays.asList(apple),
+        InstantSearchController.refine(notes, Arrays.asList("pie", "CINN")));
+    assertEquals(0, InstantSearchController.refine(notes, Arrays.asList("pie", "lait")).size());
+  }
+
+  private Note getNote(String title, String content, boolean locked) {
+    Note note = new Note();
+    note.setTitle(title);
+    note.setContent(content);
+    note.setLocked(locked);
+    return note;
+  }
+
+}